@@ -24,6 +24,8 @@ import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.Decoder;
 import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.io.ResolvingDecoder;
+import org.apache.avro.util.Utf8;
+import org.apache.avro.util.Utf8Cache;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -39,6 +41,8 @@ public class GenericDatumReader<D> implements DatumReader<D> {
 
   private ResolvingDecoder creatorResolver = null;
   private final Thread creator;
+  private Map<String, Utf8Cache> stringCaches = null;
+  private final Utf8 scratchUtf8 = new Utf8();
 
   /** Construct where the writer's and reader's schemas are the same. */
   public GenericDatumReader(Schema schema) {
@@ -82,6 +86,44 @@ public class GenericDatumReader<D> implements DatumReader<D> {
     creatorResolver = null;
   }
 
+  /**
+   * Cache the decoded values of string fields with given names, so repeated
+   * values are not decoded again and are returned as the same String instance.
+   * Use this for fields with few distinct values, like identifiers. The reader
+   * should then only be used from a single thread.
+   *
+   * @param fieldNames names of fields of type string, or null to disable caching.
+   * @param maxSize    maximum number of distinct values to cache per field.
+   */
+  public void setCachedStringFields(Collection<String> fieldNames, int maxSize) {
+    if (fieldNames == null || fieldNames.isEmpty()) {
+      stringCaches = null;
+    } else {
+      stringCaches = new HashMap<>();
+      for (String name : fieldNames) {
+        stringCaches.put(name, new Utf8Cache(maxSize));
+      }
+    }
+  }
+
+  /**
+   * Read a field value from the string cache, if the field is configured with
+   * {@link #setCachedStringFields(Collection, int)}.
+   *
+   * @return the field value, or null if the field is not cached.
+   */
+  protected final Object readCachedString(Field field, ResolvingDecoder in) throws IOException {
+    Map<String, Utf8Cache> caches = stringCaches;
+    if (caches == null || field.schema().getType() != Schema.Type.STRING) {
+      return null;
+    }
+    Utf8Cache cache = caches.get(field.name());
+    if (cache == null) {
+      return null;
+    }
+    return cache.get(in.readString(scratchUtf8));
+  }
+
   /**
    * Gets a resolving decoder for use by this GenericDatumReader. Unstable API.
    * Currently uses a thread local cache to prevent constructing the resolvers too
@@ -182,7 +224,11 @@ public class GenericDatumReader<D> implements DatumReader<D> {
    */
   protected void readField(Object record, Field field, Object oldDatum, ResolvingDecoder in)
       throws IOException {
-    data.setField(record, field.name(), field.pos(), read(oldDatum, field.schema(), in));
+    Object datum = readCachedString(field, in);
+    if (datum == null) {
+      datum = read(oldDatum, field.schema(), in);
+    }
+    data.setField(record, field.name(), field.pos(), datum);
   }
 
   /**
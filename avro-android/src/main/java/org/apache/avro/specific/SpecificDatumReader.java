@@ -54,8 +54,10 @@ public class SpecificDatumReader<T> extends GenericDatumReader<T> {
   protected void readField(Object record, Schema.Field field, Object oldDatum, ResolvingDecoder in)
       throws IOException {
     if (record instanceof SpecificRecordBase) {
-      Object datum;
-      datum = readWithoutConversion(oldDatum, field.schema(), in);
+      Object datum = readCachedString(field, in);
+      if (datum == null) {
+        datum = readWithoutConversion(oldDatum, field.schema(), in);
+      }
       getData().setField(record, field.name(), field.pos(), datum);
     } else {
       super.readField(record, field, oldDatum, in);
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Small dictionary of decoded strings. Repeated values are returned as the same
+ * String instance, without decoding them again. It is meant for fields with few
+ * distinct values, like identifiers. If more than the maximum number of distinct
+ * values is read, the dictionary is cleared. This class is not thread-safe.
+ */
+public class Utf8Cache {
+  private final int maxSize;
+  private final Map<Utf8, String> values;
+
+  public Utf8Cache(int maxSize) {
+    this.maxSize = maxSize;
+    this.values = new HashMap<>(maxSize * 2);
+  }
+
+  /**
+   * Get the string value of given UTF-8 bytes. The given value is not stored, so
+   * it may be reused by the caller.
+   */
+  public String get(Utf8 utf8) {
+    String value = values.get(utf8);
+    if (value == null) {
+      if (values.size() >= maxSize) {
+        values.clear();
+      }
+      value = utf8.toString();
+      values.put(new Utf8(utf8), value);
+    }
+    return value;
+  }
+}
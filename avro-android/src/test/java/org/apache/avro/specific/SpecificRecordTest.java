@@ -1,6 +1,8 @@
 package org.apache.avro.specific;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.radarbase.producer.rest.AvroDataMapperFactory.IDENTITY_MAPPER;
 
 import org.apache.avro.Schema;
@@ -30,6 +32,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -68,6 +71,35 @@ public class SpecificRecordTest {
         assertEquals(record.value, actual.value);
     }
 
+    @Test
+    public void serializationSharesKeysTest() throws IOException {
+        TapeAvroSerializer<ObservationKey, PhoneAcceleration> avroSerializer = new TapeAvroSerializer<>(topic, SpecificData.get());
+        TapeAvroDeserializer<ObservationKey, PhoneAcceleration> avroDeserializer = new TapeAvroDeserializer<>(topic, SpecificData.get());
+        Record<ObservationKey, PhoneAcceleration> otherRecord = new Record<>(
+                new ObservationKey("p", "u", "s2"), record.value);
+
+        List<byte[]> serialized = new ArrayList<>();
+        for (Record<ObservationKey, PhoneAcceleration> r : Arrays.asList(record, record, otherRecord)) {
+            try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+                avroSerializer.serialize(r, out);
+                serialized.add(out.toByteArray());
+            }
+        }
+
+        List<Record<ObservationKey, PhoneAcceleration>> actual = new ArrayList<>();
+        for (byte[] bytes : serialized) {
+            try (ByteArrayInputStream input = new ByteArrayInputStream(bytes)) {
+                actual.add(avroDeserializer.deserialize(input));
+            }
+        }
+
+        assertEquals(record.key, actual.get(0).key);
+        assertSame(actual.get(0).key, actual.get(1).key);
+        assertEquals(otherRecord.key, actual.get(2).key);
+        assertNotSame(actual.get(0).key, actual.get(2).key);
+        assertSame(actual.get(0).key.getProjectId(), actual.get(2).key.getProjectId());
+    }
+
     @Test
     public void avroBinaryEncodingTest() throws IOException, SchemaValidationException {
         AvroEncoder encoder = new RemoteSchemaEncoder(true);
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarbase.monitor.application
+
+import org.apache.avro.Schema
+import org.apache.avro.specific.SpecificRecordBase
+
+/**
+ * Value of a single data pipeline metric over an update interval. The schema is defined here,
+ * because the RADAR schemas do not contain a record for app-internal metrics.
+ */
+class ApplicationPipelineMetric(
+    /** Time of the measurement in seconds since the Unix Epoch. */
+    var time: Double,
+    /** Metric name. */
+    var name: String,
+    /** Counter increase or gauge value in the interval, or the number of histogram values. */
+    var count: Long,
+    /** Mean of histogram values in the interval. */
+    var mean: Double?,
+    /** Median of histogram values in the interval. */
+    var p50: Double?,
+    /** 95th percentile of histogram values in the interval. */
+    var p95: Double?,
+    /** 99th percentile of histogram values in the interval. */
+    var p99: Double?,
+    /** Maximum histogram value in the interval. */
+    var max: Double?,
+) : SpecificRecordBase() {
+    constructor() : this(0.0, "", 0L, null, null, null, null, null)
+
+    override fun getSchema(): Schema = `SCHEMA$`
+
+    override fun get(field: Int): Any? = when (field) {
+        0 -> time
+        1 -> name
+        2 -> count
+        3 -> mean
+        4 -> p50
+        5 -> p95
+        6 -> p99
+        7 -> max
+        else -> throw IndexOutOfBoundsException("Invalid field index $field")
+    }
+
+    override fun put(field: Int, value: Any?) {
+        when (field) {
+            0 -> time = value as Double
+            1 -> name = value.toString()
+            2 -> count = value as Long
+            3 -> mean = value as Double?
+            4 -> p50 = value as Double?
+            5 -> p95 = value as Double?
+            6 -> p99 = value as Double?
+            7 -> max = value as Double?
+            else -> throw IndexOutOfBoundsException("Invalid field index $field")
+        }
+    }
+
+    companion object {
+        @JvmField
+        val `SCHEMA$`: Schema = Schema.Parser().parse("""
+            {
+              "type": "record",
+              "name": "ApplicationPipelineMetric",
+              "namespace": "org.radarbase.monitor.application",
+              "doc": "Value of a single data pipeline metric over an update interval. Durations are in nanoseconds and sizes in bytes.",
+              "fields": [
+                {"name": "time", "type": "double", "doc": "Time of the measurement in seconds since the Unix Epoch."},
+                {"name": "name", "type": "string", "doc": "Metric name."},
+                {"name": "count", "type": "long", "doc": "Counter increase or gauge value in the interval, or the number of histogram values."},
+                {"name": "mean", "type": ["null", "double"], "doc": "Mean of histogram values in the interval.", "default": null},
+                {"name": "p50", "type": ["null", "double"], "doc": "Median of histogram values in the interval.", "default": null},
+                {"name": "p95", "type": ["null", "double"], "doc": "95th percentile of histogram values in the interval.", "default": null},
+                {"name": "p99", "type": ["null", "double"], "doc": "99th percentile of histogram values in the interval.", "default": null},
+                {"name": "max", "type": ["null", "double"], "doc": "Maximum histogram value in the interval.", "default": null}
+              ]
+            }
+        """.trimIndent())
+
+        @JvmStatic
+        fun getClassSchema(): Schema = `SCHEMA$`
+    }
+}
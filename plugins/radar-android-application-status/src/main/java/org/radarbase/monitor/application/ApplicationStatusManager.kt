@@ -24,6 +24,8 @@ import android.os.SystemClock
 import androidx.localbroadcastmanager.content.LocalBroadcastManager
 import org.radarbase.android.data.DataCache
 import org.radarbase.android.kafka.ServerStatusListener
+import org.radarbase.android.metrics.MetricsSnapshot
+import org.radarbase.android.metrics.PipelineMetrics
 import org.radarbase.android.source.AbstractSourceManager
 import org.radarbase.android.source.SourceService.Companion.CACHE_RECORDS_UNSENT_NUMBER
 import org.radarbase.android.source.SourceService.Companion.CACHE_TOPIC
@@ -52,6 +54,10 @@ class ApplicationStatusManager(
     private val ntpTopic: DataCache<ObservationKey, ApplicationExternalTime> = createCache("application_external_time", ApplicationExternalTime())
     private val timeZoneTopic: DataCache<ObservationKey, ApplicationTimeZone> = createCache("application_time_zone", ApplicationTimeZone())
     private val deviceInfoTopic: DataCache<ObservationKey, ApplicationDeviceInfo> = createCache("application_device_info", ApplicationDeviceInfo())
+    /** Only created when pipeline metrics are sent, so no empty cache is kept otherwise. */
+    private val pipelineMetricsTopic: DataCache<ObservationKey, ApplicationPipelineMetric> by lazy {
+        createCache("application_pipeline_metrics", ApplicationPipelineMetric())
+    }
 
     private val processor: OfflineProcessor
     private val creationTimeStamp: Long = SystemClock.elapsedRealtime()
@@ -70,7 +76,12 @@ class ApplicationStatusManager(
             field = value?.takeTrimmedIfNotEmpty()
         }
 
+    @get:Synchronized
+    @set:Synchronized
+    var isSendingPipelineMetrics: Boolean = false
+
     private var previousInetAddress: InetAddress? = null
+    private var previousMetrics: MetricsSnapshot? = null
 
     private lateinit var tzOffsetCache: ChangeRunner<Int>
     private lateinit var deviceInfoCache: ChangeRunner<ApplicationInfo>
@@ -87,6 +98,7 @@ class ApplicationStatusManager(
                 ::processRecordsSent,
                 ::processReferenceTime,
                 ::processDeviceInfo,
+                ::processPipelineMetrics,
             )
             requestCode = APPLICATION_PROCESSOR_REQUEST_CODE
             requestName = APPLICATION_PROCESSOR_REQUEST_NAME
@@ -264,6 +276,42 @@ class ApplicationStatusManager(
             recordsCached, recordsSent, recordsCached.toIntCapped()))
     }
 
+    private fun processPipelineMetrics() {
+        val snapshot = PipelineMetrics.snapshot()
+        val previous = previousMetrics
+        previousMetrics = snapshot
+        // the first snapshot only serves as a reference for the next interval
+        if (previous == null || !isSendingPipelineMetrics) return
+
+        val interval = snapshot - previous
+        val time = interval.time / 1000.0
+        interval.counters.forEach { (name, count) ->
+            if (count != 0L) {
+                send(pipelineMetricsTopic, ApplicationPipelineMetric(time, name, count, null, null, null, null, null))
+            }
+        }
+        interval.gauges.forEach { (name, value) ->
+            send(pipelineMetricsTopic, ApplicationPipelineMetric(time, name, value, null, null, null, null, null))
+        }
+        interval.histograms.forEach { (name, histogram) ->
+            if (histogram.count > 0L) {
+                send(
+                    pipelineMetricsTopic,
+                    ApplicationPipelineMetric(
+                        time,
+                        name,
+                        histogram.count,
+                        histogram.mean,
+                        histogram.percentile(0.5).toDouble(),
+                        histogram.percentile(0.95).toDouble(),
+                        histogram.percentile(0.99).toDouble(),
+                        histogram.max.toDouble(),
+                    ),
+                )
+            }
+        }
+    }
+
     override fun onClose() {
         this.processor.close()
         cacheReceiver?.unregister()
@@ -34,12 +34,14 @@ class ApplicationStatusService : SourceService<ApplicationState>() {
         manager.setTzUpdateRate(config.getLong(TZ_UPDATE_RATE, TZ_UPDATE_RATE_DEFAULT), TimeUnit.SECONDS)
         manager.ntpServer = config.optString(NTP_SERVER_CONFIG)
         manager.isProcessingIp = config.getBoolean(SEND_IP, false)
+        manager.isSendingPipelineMetrics = config.getBoolean(SEND_PIPELINE_METRICS, false)
     }
 
     companion object {
         private const val UPDATE_RATE = "application_status_update_rate"
         private const val TZ_UPDATE_RATE = "application_time_zone_update_rate"
         private const val SEND_IP = "application_send_ip"
+        private const val SEND_PIPELINE_METRICS = "application_send_pipeline_metrics"
         internal const val UPDATE_RATE_DEFAULT = 300L // seconds == 5 minutes
         internal const val TZ_UPDATE_RATE_DEFAULT = 86400L // seconds == 1 day
         private const val NTP_SERVER_CONFIG = "ntp_server"
@@ -42,6 +42,7 @@ class OpenSmileAudioService : SourceService<BaseSourceState>() {
             config.getString(AUDIO_CONFIG_FILE, "ComParE_2016.conf"),
             config.getLong(AUDIO_DURATION_S, 15L),
             TimeUnit.SECONDS,
+            config.getInt(AUDIO_CHUNK_SIZE, OpensmileAudioManager.DEFAULT_CHUNK_SIZE),
         )
     }
 
@@ -49,6 +50,7 @@ class OpenSmileAudioService : SourceService<BaseSourceState>() {
         private const val AUDIO_DURATION_S = "audio_duration"
         private const val AUDIO_RECORD_RATE_S = "audio_record_rate"
         private const val AUDIO_CONFIG_FILE = "audio_config_file"
+        private const val AUDIO_CHUNK_SIZE = "audio_chunk_size_bytes"
         const val DEFAULT_RECORD_RATE = 3600L
     }
 }
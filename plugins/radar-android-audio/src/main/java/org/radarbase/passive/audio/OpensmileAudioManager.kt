@@ -31,6 +31,7 @@ import org.radarcns.passive.opensmile.OpenSmile2PhoneAudio
 import org.slf4j.LoggerFactory
 import java.io.File
 import java.io.IOException
+import java.io.InputStream
 import java.util.concurrent.TimeUnit
 
 /** Manages Phone sensors  */
@@ -98,11 +99,7 @@ class OpensmileAudioManager(service: OpenSmileAudioService) : AbstractSourceMana
 
         try {
             if (dataPath.exists()) {
-                send(audioTopic, OpenSmile2PhoneAudio(
-                        startTime,
-                        currentTime,
-                        localConfig.configFile,
-                        Base64.encodeToString(dataPath.readBytes(), Base64.DEFAULT)))
+                sendAudioChunks(dataPath, startTime, currentTime, localConfig)
                 dataPath.delete()
                 status = SourceStatusListener.Status.READY
             } else {
@@ -113,6 +110,36 @@ class OpensmileAudioManager(service: OpenSmileAudioService) : AbstractSourceMana
         }
     }
 
+    /**
+     * Send the contents of [dataPath] as a sequence of records of at most
+     * [AudioConfiguration.chunkSize] bytes each. The chunk size is a multiple of three, so every
+     * record contains independently decodable base64 data and the original file is obtained by
+     * concatenating the decoded records with the same start time, in order. Only a single chunk
+     * is kept in memory at a time.
+     */
+    @Throws(IOException::class)
+    private fun sendAudioChunks(dataPath: File, startTime: Double, endTime: Double, localConfig: AudioConfiguration) {
+        val chunkSize = localConfig.chunkSizeBytes
+        val numberOfChunks = ((dataPath.length() + chunkSize - 1) / chunkSize).toInt().coerceAtLeast(1)
+        val buffer = ByteArray(chunkSize)
+
+        dataPath.inputStream().use { input ->
+            var chunkIndex = 0
+            do {
+                val length = input.readChunk(buffer)
+                if (length <= 0 && chunkIndex > 0) break
+
+                send(audioTopic, OpenSmile2PhoneAudio(
+                        startTime,
+                        endTime,
+                        localConfig.configFile,
+                        Base64.encodeToString(buffer, 0, length.coerceAtLeast(0), Base64.DEFAULT)))
+                chunkIndex++
+                logger.debug("Sent audio chunk {}/{} of {} bytes", chunkIndex, numberOfChunks, length)
+            } while (length == chunkSize)
+        }
+    }
+
     override fun onClose() {
         if (isRunning) {
             processor.close()
@@ -124,9 +151,19 @@ class OpensmileAudioManager(service: OpenSmileAudioService) : AbstractSourceMana
         processor.interval(audioRecordRateMs, TimeUnit.SECONDS)
     }
 
-    data class AudioConfiguration(val configFile: String, val recordDuration: Long, val unit: TimeUnit) {
+    data class AudioConfiguration(
+        val configFile: String,
+        val recordDuration: Long,
+        val unit: TimeUnit,
+        /** Maximum number of bytes of the result file to send in a single record. */
+        val chunkSize: Int = DEFAULT_CHUNK_SIZE,
+    ) {
         val recordDurationMillis: Long
             get() = unit.toMillis(recordDuration)
+
+        /** Chunk size rounded down to a multiple of three, to avoid base64 padding. */
+        internal val chunkSizeBytes: Int
+            get() = (chunkSize - chunkSize % 3).coerceAtLeast(3)
     }
 
     private fun clearDataDirectory() {
@@ -144,5 +181,17 @@ class OpensmileAudioManager(service: OpenSmileAudioService) : AbstractSourceMana
         private val logger = LoggerFactory.getLogger(OpensmileAudioManager::class.java)
         private const val AUDIO_REQUEST_CODE = 130102
         private const val AUDIO_REQUEST_NAME = "org.radarcns.audio.AudioDeviceManager"
+        const val DEFAULT_CHUNK_SIZE = 98_304
+
+        /** Fill [buffer] as far as possible, returning the number of bytes read or -1 at EOF. */
+        private fun InputStream.readChunk(buffer: ByteArray): Int {
+            var offset = 0
+            while (offset < buffer.size) {
+                val numRead = read(buffer, offset, buffer.size - offset)
+                if (numRead == -1) break
+                offset += numRead
+            }
+            return if (offset == 0) -1 else offset
+        }
     }
 }
@@ -58,6 +58,10 @@ class E4Manager(
     private val sensorStatusTopic = createCache("android_empatica_e4_sensor_status", EmpaticaE4SensorStatus())
     private val tagTopic = createCache("android_empatica_e4_tag", EmpaticaE4Tag())
 
+    init {
+        addDeadbandFilter(temperatureTopic, EmpaticaE4Temperature::getTime, { it.temperature.toDouble() })
+    }
+
     private val isScanning = AtomicBoolean(false)
     private var hasBeenConnecting = false
     private var apiKey: String? = null
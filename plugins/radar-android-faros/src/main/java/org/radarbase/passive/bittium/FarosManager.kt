@@ -45,6 +45,10 @@ class FarosManager internal constructor(
     private val temperatureTopic: DataCache<ObservationKey, BittiumFarosTemperature> = createCache("android_bittium_faros_temperature", BittiumFarosTemperature())
     private val batteryTopic: DataCache<ObservationKey, BittiumFarosBatteryLevel> = createCache("android_bittium_faros_battery_level", BittiumFarosBatteryLevel())
 
+    init {
+        addDeadbandFilter(temperatureTopic, BittiumFarosTemperature::getTime, { it.temperature.toDouble() })
+    }
+
     private lateinit var acceptableIds: Array<Pattern>
     private lateinit var apiManager: FarosSdkManager
     private var settings: FarosSettings = farosFactory.defaultSettingsBuilder().build()
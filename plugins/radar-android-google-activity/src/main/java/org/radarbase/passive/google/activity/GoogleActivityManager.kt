@@ -44,7 +44,7 @@ import org.slf4j.LoggerFactory
 class GoogleActivityManager(context: GoogleActivityService) : AbstractSourceManager<GoogleActivityService, BaseSourceState>(context) {
     private val activityTransitionEventTopic: DataCache<ObservationKey, GoogleActivityTransitionEvent> = createCache("android_google_activity_transition_event", GoogleActivityTransitionEvent())
 
-    private val activityHandler = SafeHandler.getInstance("Google Activity", Process.THREAD_PRIORITY_BACKGROUND)
+    private val activityHandler = SafeHandler.getInstance("Google Activity", Process.THREAD_PRIORITY_BACKGROUND, isPooled = true)
     private val activityPendingIntent: PendingIntent
     private val activityTransitionReceiver: ActivityTransitionReceiver
 
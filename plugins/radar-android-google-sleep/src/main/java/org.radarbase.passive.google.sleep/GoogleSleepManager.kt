@@ -50,7 +50,7 @@ class GoogleSleepManager(context: GoogleSleepService) : AbstractSourceManager<Go
     private val classifyEventTopic: DataCache<ObservationKey, GoogleSleepClassifyEvent> = createCache("android_google_sleep_classify_event", GoogleSleepClassifyEvent())
 
     private val sleepBroadcastReceiver: BroadcastReceiver
-    private val sleepHandler = SafeHandler.getInstance("Google Sleep", Process.THREAD_PRIORITY_BACKGROUND)
+    private val sleepHandler = SafeHandler.getInstance("Google Sleep", Process.THREAD_PRIORITY_BACKGROUND, isPooled = true)
     private val sleepPendingIntent: PendingIntent
     private val isPermissionGranted
     get() = ContextCompat.checkSelfPermission(service,ACTIVITY_RECOGNITION_COMPAT) == PackageManager.PERMISSION_GRANTED
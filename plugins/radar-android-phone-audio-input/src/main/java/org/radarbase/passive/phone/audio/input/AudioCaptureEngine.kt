@@ -0,0 +1,247 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarbase.passive.phone.audio.input
+
+import android.media.AudioRecord
+import android.os.Process
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.math.abs
+import kotlin.math.max
+import kotlin.math.sqrt
+
+/**
+ * Captures PCM audio from an [AudioRecord] into a WAV file. A dedicated capture thread does
+ * blocking reads into direct buffers, while a writer thread writes filled buffers to the file
+ * with a [FileChannel]. Two buffers alternate between both threads, so reads are never delayed by
+ * file I/O. If the writer cannot keep up, the capture thread keeps draining the recorder into a
+ * scratch buffer and counts an overrun. Reads that return less data than requested are counted
+ * as underruns. The RMS and peak level of each read are computed from the capture buffer itself.
+ *
+ * @param readSize number of bytes to read from the recorder at a time.
+ * @param header WAV header to write at the start of the file. Its sizes are updated on [stop].
+ * @param isPaused whether captured audio should be discarded instead of written.
+ * @param onStatistics called on the writer thread after every write.
+ */
+internal class AudioCaptureEngine(
+    private val audioRecord: AudioRecord,
+    file: File,
+    header: ByteArray,
+    private val readSize: Int,
+    private val bitsPerSample: Int,
+    private val isPaused: () -> Boolean,
+    private val onStatistics: (Statistics) -> Unit,
+) {
+    private val channel: FileChannel
+    private val freeBuffers = ArrayBlockingQueue<ByteBuffer>(NUMBER_OF_BUFFERS)
+    private val filledBuffers = ArrayBlockingQueue<ByteBuffer>(NUMBER_OF_BUFFERS + 1)
+    private val scratchBuffer = newBuffer(readSize)
+
+    private val captureThread = Thread(::capture, "PhoneAudioInputCapture")
+    private val writerThread = Thread(::write, "PhoneAudioInputWriter")
+
+    @Volatile
+    private var isCapturing = false
+
+    private val overruns = AtomicLong(0L)
+    private val underruns = AtomicLong(0L)
+
+    @Volatile
+    private var payloadSize: Long = 0L
+
+    @Volatile
+    private var rms: Float = 0f
+
+    @Volatile
+    private var peak: Float = 0f
+
+    /** Current capture statistics. */
+    val statistics: Statistics
+        get() = Statistics(overruns.get(), underruns.get(), payloadSize, rms, peak)
+
+    init {
+        repeat(NUMBER_OF_BUFFERS) { freeBuffers.add(newBuffer(readSize)) }
+        channel = RandomAccessFile(file, "rw").channel
+        try {
+            channel.truncate(0L)
+            writeFully(ByteBuffer.wrap(header))
+        } catch (ex: IOException) {
+            channel.close()
+            throw ex
+        }
+    }
+
+    /** Start recording and capturing. */
+    fun start() {
+        isCapturing = true
+        audioRecord.startRecording()
+        writerThread.start()
+        captureThread.start()
+    }
+
+    /**
+     * Stop recording, write all captured audio and update the WAV header sizes. This blocks until
+     * the capture and writer threads have finished.
+     */
+    fun stop() {
+        isCapturing = false
+        try {
+            audioRecord.stop()
+        } catch (ex: IllegalStateException) {
+            logger.warn("Failed to stop audio recording: {}", ex.toString())
+        }
+        try {
+            captureThread.join()
+            writerThread.join()
+        } catch (ex: InterruptedException) {
+            Thread.currentThread().interrupt()
+        }
+
+        try {
+            val sizes = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN)
+            sizes.putInt(0, (WAV_HEADER_CHUNK_SIZE + payloadSize).toInt())
+            channel.write(sizes, WAV_CHUNK_SIZE_POSITION)
+            sizes.clear()
+            sizes.putInt(0, payloadSize.toInt())
+            channel.write(sizes, WAV_DATA_SIZE_POSITION)
+        } catch (ex: IOException) {
+            logger.error("Failed to update WAV header", ex)
+        } finally {
+            channel.close()
+        }
+        logger.info("Stopped audio capture: {}", statistics)
+    }
+
+    private fun capture() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO)
+        try {
+            while (isCapturing) {
+                val paused = isPaused()
+                val buffer = if (paused) null else freeBuffers.poll()
+                if (!paused && buffer == null) {
+                    overruns.incrementAndGet()
+                }
+                val target = buffer ?: scratchBuffer
+                target.clear()
+
+                val numRead = audioRecord.read(target, readSize, AudioRecord.READ_BLOCKING)
+                if (numRead < 0) {
+                    logger.error("Failed to read audio: error code {}", numRead)
+                    buffer?.let { freeBuffers.add(it) }
+                    break
+                }
+                if (numRead < readSize && isCapturing) {
+                    underruns.incrementAndGet()
+                }
+                target.limit(numRead)
+                updateLevels(target)
+
+                if (buffer != null) {
+                    filledBuffers.add(buffer)
+                }
+            }
+        } finally {
+            filledBuffers.add(END_OF_STREAM)
+        }
+    }
+
+    private fun write() {
+        try {
+            while (true) {
+                val buffer = filledBuffers.take()
+                if (buffer === END_OF_STREAM) break
+                payloadSize += writeFully(buffer)
+                freeBuffers.add(buffer)
+                onStatistics(statistics)
+            }
+        } catch (ex: IOException) {
+            logger.error("Failed to write audio", ex)
+            isCapturing = false
+        } catch (ex: InterruptedException) {
+            logger.warn("Audio writer interrupted")
+            isCapturing = false
+        }
+    }
+
+    private fun writeFully(buffer: ByteBuffer): Int {
+        val size = buffer.remaining()
+        while (buffer.hasRemaining()) {
+            channel.write(buffer)
+        }
+        return size
+    }
+
+    /** Compute the RMS and peak level of [buffer] in range [0, 1], without moving its position. */
+    private fun updateLevels(buffer: ByteBuffer) {
+        var sumSquares = 0.0
+        var max = 0
+        val numSamples: Int
+        if (bitsPerSample == 16) {
+            numSamples = buffer.limit() / 2
+            for (i in 0 until numSamples) {
+                val sample = buffer.getShort(i * 2).toInt()
+                sumSquares += sample * sample
+                max = max(max, abs(sample))
+            }
+        } else {
+            numSamples = buffer.limit()
+            for (i in 0 until numSamples) {
+                val sample = (buffer.get(i).toInt() and 0xFF) - 128
+                sumSquares += sample * sample
+                max = max(max, abs(sample))
+            }
+        }
+        if (numSamples == 0) return
+        val fullScale = if (bitsPerSample == 16) 32768f else 128f
+        rms = (sqrt(sumSquares / numSamples) / fullScale).toFloat()
+        peak = max / fullScale
+    }
+
+    data class Statistics(
+        /** Number of reads that were discarded because the writer could not keep up. */
+        val overruns: Long,
+        /** Number of reads that returned less data than requested. */
+        val underruns: Long,
+        /** Number of audio bytes written to file. */
+        val bytesWritten: Long,
+        /** RMS level of the last read, in range [0, 1]. */
+        val rms: Float,
+        /** Peak level of the last read, in range [0, 1]. */
+        val peak: Float,
+    )
+
+    companion object {
+        private val logger: Logger = LoggerFactory.getLogger(AudioCaptureEngine::class.java)
+
+        private const val NUMBER_OF_BUFFERS = 2
+        private const val WAV_HEADER_CHUNK_SIZE = 36
+        private const val WAV_CHUNK_SIZE_POSITION = 4L
+        private const val WAV_DATA_SIZE_POSITION = 40L
+        private val END_OF_STREAM: ByteBuffer = ByteBuffer.allocate(0)
+
+        private fun newBuffer(size: Int): ByteBuffer = ByteBuffer.allocateDirect(size)
+            .order(ByteOrder.LITTLE_ENDIAN)
+    }
+}
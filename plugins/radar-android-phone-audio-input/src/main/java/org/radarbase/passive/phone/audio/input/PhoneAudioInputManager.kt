@@ -50,19 +50,17 @@ import org.radarcns.passive.audio.PhoneAudioInput
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import java.io.File
-import java.io.RandomAccessFile
+import java.io.IOException
 
 class PhoneAudioInputManager(service: PhoneAudioInputService) : AbstractSourceManager<PhoneAudioInputService,
         PhoneAudioInputState>(service), PhoneAudioInputState.AudioRecordManager, PhoneAudioInputState.AudioRecordingManager {
     private val audioInputTopic: DataCache<ObservationKey, PhoneAudioInput> = createCache("android_phone_audio_input", PhoneAudioInput())
 
     private var audioRecord: AudioRecord? = null
-    private var randomAccessWriter: RandomAccessFile? = null
-    private var buffer: ByteArray = byteArrayOf()
+    private var captureEngine: AudioCaptureEngine? = null
+    private var readSize: Int = 0
     private val audioRecordingHandler = SafeHandler.getInstance(
         "PHONE-AUDIO-INPUT", Process.THREAD_PRIORITY_BACKGROUND)
-    private val recordProcessingHandler: SafeHandler = SafeHandler.getInstance(
-        "AUDIO-RECORD-PROCESSING", Process.THREAD_PRIORITY_AUDIO)
     private val mainHandler = Handler(Looper.getMainLooper())
     private val preferences: SharedPreferences =
         service.getSharedPreferences(PHONE_AUDIO_INPUT_SHARED_PREFS, Context.MODE_PRIVATE)
@@ -95,9 +93,6 @@ class PhoneAudioInputManager(service: PhoneAudioInputService) : AbstractSourceMa
     private var numChannels: Short
     private val audioDir: File?
     private var recordingFile: File? = null
-    private var payloadSize: Int = 0
-    @Volatile
-    private var currentlyRecording: Boolean = false
 
     private val connectedMicrophonesObserver: Observer<List<AudioDeviceInfo>> = Observer { connectedMicrophones ->
         audioRecordingHandler.execute {
@@ -142,7 +137,6 @@ class PhoneAudioInputManager(service: PhoneAudioInputService) : AbstractSourceMa
     override fun start(acceptableIds: Set<String>) {
         register()
         audioRecordingHandler.start()
-        recordProcessingHandler.start()
         createRecorder()
         state.audioRecordManager = this
         state.audioRecordingManager = this
@@ -173,7 +167,7 @@ class PhoneAudioInputManager(service: PhoneAudioInputService) : AbstractSourceMa
                         framePeriod = bufferSize / (2 * bitsPerSample * numChannels / 8)
                         logger.info("Updating buffer size to: $bufferSize, and frame period to: $framePeriod")
                     }
-                    buffer = ByteArray(framePeriod * bitsPerSample / 8 * numChannels)
+                    readSize = framePeriod * bitsPerSample / 8 * numChannels
                     try {
                         audioRecord = AudioRecord(
                             audioSource, sampleRate, channel, audioFormat, bufferSize
@@ -282,7 +276,6 @@ class PhoneAudioInputManager(service: PhoneAudioInputService) : AbstractSourceMa
         }
 
     private fun clearAudioDirectory() {
-        payloadSize = 0
         audioDir?.let { audioDir ->
             audioDir.parentFile
                 ?.list { _, name -> name.startsWith("phone_audio_input") && name.endsWith(".wav") }
@@ -302,80 +295,56 @@ class PhoneAudioInputManager(service: PhoneAudioInputService) : AbstractSourceMa
 
     private fun startAudioRecording() {
         audioRecordingHandler.execute {
-            setupRecording()
-            if ((audioRecord?.state == STATE_INITIALIZED) && (recordingFile != null)) {
+            val recorder = audioRecord
+            if (captureEngine != null) {
+                logger.warn("Audio recording already started")
+                return@execute
+            }
+            val engine = if (recorder?.state == STATE_INITIALIZED) setupRecording(recorder) else null
+            if (recorder != null && engine != null) {
                 if (!state.microphonePrioritized) {
                     state.connectedMicrophones.value?.also(::runDeviceSelectionLogic)
                 } else {
                     state.finalizedMicrophone.value?.let(setPreferredDeviceAndUpdate)
                 }
-                audioRecord?.startRecording()
+                captureEngine = engine
+                engine.start()
                 mainHandler.post { state.isRecording.value = true }
-                recordProcessingHandler.execute{
-                    audioRecord?.read(buffer, 0, buffer.size)
-                    currentlyRecording = true
-                    state.finalizedMicrophone.postValue(audioRecord?.routedDevice)
-                    logger.info("Finalized routed device: {}", state.finalizedMicrophone.value?.productName)
-                }
+                state.finalizedMicrophone.postValue(recorder.routedDevice)
+                logger.info("Finalized routed device: {}", recorder.routedDevice?.productName)
                 logger.trace("Started recording")
-                audioRecord?.setRecordPositionUpdateListener(updateListener)
-                audioRecord?.setPositionNotificationPeriod(framePeriod)
             } else {
-                logger.error("Trying to start recording on uninitialized AudioRecord or filePath is null, state: ${audioRecord?.state}, $recordingFile")
+                logger.error("Trying to start recording on uninitialized AudioRecord or filePath is null, state: ${recorder?.state}, $recordingFile")
                 disconnect()
             }
         }
     }
 
-    private fun setupRecording() {
-            clearAudioDirectory()
-            setRecordingPath()
-            writeFileHeaders()
-    }
-
-    private fun setRecordingPath() {
-        recordingFile = File(audioDir, "phone_audio_input" + System.currentTimeMillis() + ".wav")
+    private fun setupRecording(recorder: AudioRecord): AudioCaptureEngine? {
+        clearAudioDirectory()
+        val file = File(audioDir, "phone_audio_input" + System.currentTimeMillis() + ".wav")
+        recordingFile = file
 
         preferences.edit()
-            .putString(LAST_RECORDED_AUDIO_FILE, recordingFile!!.absolutePath)
+            .putString(LAST_RECORDED_AUDIO_FILE, file.absolutePath)
             .apply()
-        randomAccessWriter = RandomAccessFile(recordingFile, "rw")
-    }
-
-    private fun writeFileHeaders() {
 
-        randomAccessWriter?.apply {
-            setLength(0) // Set file length to 0, to prevent unexpected behavior in case the file already existed
-
-            val header = ByteArray(44)
-            AudioDeviceUtils.setWavHeaders(header, numChannels, sampleRate, bitsPerSample)
-            write(header, 0, 44)
-        }
-    }
-
-    private val updateListener = object : AudioRecord.OnRecordPositionUpdateListener {
-        override fun onMarkerReached(recorder: AudioRecord?) {
-            // No Action
-        }
-
-        override fun onPeriodicNotification(recorder: AudioRecord?) {
-            if (currentlyRecording && !state.isPaused.value!!) {
-                audioRecordingHandler.execute {
-                    audioRecord?.let {
-                        val dataRead = it.read(buffer, 0, buffer.size)
-                        randomAccessWriter?.write(buffer)
-                        payloadSize += dataRead
-                        logger.debug("onPeriodicNotification: Recording Audio")
-                    }
-                }
-            } else if (state.isPaused.value!!) {
-                // Triggering a dummy read to keep the callback active
-                audioRecordingHandler.execute { audioRecord?.read(buffer, 0, buffer.size) }
-                logger.debug("Callback: onPeriodicNotification: recording is paused.")
-            }
-            else {
-                logger.debug("Callback: onPeriodicNotification after recording is stopped.")
-            }
+        val header = ByteArray(44)
+        AudioDeviceUtils.setWavHeaders(header, numChannels, sampleRate, bitsPerSample)
+
+        return try {
+            AudioCaptureEngine(
+                recorder,
+                file,
+                header,
+                readSize,
+                bitsPerSample.toInt(),
+                isPaused = { state.isPaused.value == true },
+                onStatistics = state.captureStatistics::postValue,
+            )
+        } catch (ex: IOException) {
+            logger.error("Failed to create audio file {}", file, ex)
+            null
         }
     }
 
@@ -383,37 +352,22 @@ class PhoneAudioInputManager(service: PhoneAudioInputService) : AbstractSourceMa
         logger.debug("Stopping Recording: Saving data")
         mainHandler.post { state.isRecording.value = false }
         audioRecordingHandler.execute {
-            currentlyRecording = false
-            audioRecord?.apply {
-                setRecordPositionUpdateListener(null)
-                stop()
-            }
-            randomAccessWriter?.apply {
-                val chunkSize = 36 + payloadSize
-                seek(4)
-                write(chunkSize and 0xff)
-                write((chunkSize shr 8) and 0xff)
-                write((chunkSize shr 16) and 0xff)
-                write((chunkSize shr 24) and 0xff)
-
-                seek(40)
-                write(payloadSize and 0xff)
-                write((payloadSize shr 8) and 0xff)
-                write((payloadSize shr 16) and 0xff)
-                write((payloadSize shr 24) and 0xff)
-                close()
-                payloadSize = 0
+            captureEngine?.let {
+                it.stop()
+                state.captureStatistics.postValue(it.statistics)
+                captureEngine = null
             }
         }
     }
 
     override fun onClose() {
         audioRecordingHandler.stop{
+            captureEngine?.stop()
+            captureEngine = null
             audioRecord?.release()
             clearAudioDirectory()
         }
         mainHandler.post { state.connectedMicrophones.removeObserver(connectedMicrophonesObserver) }
-        recordProcessingHandler.stop()
     }
     companion object {
         private val logger: Logger = LoggerFactory.getLogger(PhoneAudioInputManager::class.java)
@@ -35,6 +35,8 @@ class PhoneAudioInputState: BaseSourceState() {
     val finalizedMicrophone: MutableLiveData<AudioDeviceInfo> = MutableLiveData()
     var microphonePrioritized:Boolean = false
     var isRecordingPlayed: Boolean = false
+    /** Overrun and underrun counters and audio levels of the current recording. */
+    internal val captureStatistics: MutableLiveData<AudioCaptureEngine.Statistics> = MutableLiveData()
 
     var audioSource: AtomicInteger = AtomicInteger(MediaRecorder.AudioSource.MIC)
     var sampleRate: AtomicInteger = AtomicInteger(PHONE_AUDIO_INPUT_CURRENT_SAMPLE_RATE_DEFAULT)
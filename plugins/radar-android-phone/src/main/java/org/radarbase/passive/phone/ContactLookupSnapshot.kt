@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarbase.passive.phone
+
+import org.slf4j.LoggerFactory
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+
+/**
+ * Compact set of contact lookup keys. Only 64-bit hashes of the lookup keys are stored, in a
+ * sorted array, so that membership checks do not need to keep the lookup keys in memory.
+ */
+internal class ContactLookupSnapshot(hashes: LongArray = LongArray(0)) {
+    private var hashes: LongArray = hashes.sortedDistinct()
+
+    val size: Int
+        get() = hashes.size
+
+    fun isEmpty(): Boolean = hashes.isEmpty()
+
+    operator fun contains(hash: Long): Boolean = hashes.binarySearch(hash) >= 0
+
+    /**
+     * Add given hashes to the snapshot.
+     * @return number of hashes that were not yet in the snapshot.
+     */
+    fun addAll(newHashes: LongArray): Int {
+        val added = newHashes.sortedDistinct().filter { it !in this }
+        if (added.isNotEmpty()) {
+            hashes = (hashes + added).apply { sort() }
+        }
+        return added.size
+    }
+
+    /** Number of hashes in this snapshot that are not in [other]. */
+    fun differenceSize(other: ContactLookupSnapshot): Int = hashes.count { it !in other }
+
+    /** Contacts that were added and removed since [previous]. */
+    fun changesSince(previous: ContactLookupSnapshot): Changes =
+        Changes(added = differenceSize(previous), removed = previous.differenceSize(this))
+
+    data class Changes(val added: Int, val removed: Int)
+
+    @Throws(IOException::class)
+    fun writeTo(file: File) {
+        val tmpFile = File(file.parentFile, file.name + ".tmp")
+        DataOutputStream(tmpFile.outputStream().buffered()).use { output ->
+            output.writeInt(hashes.size)
+            hashes.forEach { output.writeLong(it) }
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw IOException("Cannot replace contact snapshot $file")
+        }
+    }
+
+    /**
+     * Builder for a snapshot from a stream of lookup keys.
+     */
+    class Builder(initialCapacity: Int = 256) {
+        private var hashes = LongArray(initialCapacity)
+        private var size = 0
+
+        fun add(lookup: String) {
+            if (size == hashes.size) {
+                hashes = hashes.copyOf(hashes.size * 2)
+            }
+            hashes[size++] = hash(lookup)
+        }
+
+        fun toLongArray(): LongArray = hashes.copyOf(size)
+
+        fun build() = ContactLookupSnapshot(toLongArray())
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(ContactLookupSnapshot::class.java)
+
+        private const val FNV_OFFSET_BASIS = -0x340d631b7bdddcdbL
+        private const val FNV_PRIME = 0x100000001b3L
+
+        /** FNV-1a hash of a lookup key. */
+        fun hash(lookup: String): Long {
+            var hash = FNV_OFFSET_BASIS
+            for (c in lookup) {
+                hash = (hash xor c.code.toLong()) * FNV_PRIME
+            }
+            return hash
+        }
+
+        /**
+         * Read a snapshot from file.
+         * @return snapshot or null if the file does not exist or cannot be read.
+         */
+        fun readFrom(file: File): ContactLookupSnapshot? {
+            if (!file.exists()) return null
+            return try {
+                DataInputStream(file.inputStream().buffered()).use { input ->
+                    ContactLookupSnapshot(LongArray(input.readInt()) { input.readLong() })
+                }
+            } catch (ex: IOException) {
+                logger.warn("Failed to read contact snapshot {}", file, ex)
+                null
+            }
+        }
+
+        private fun LongArray.sortedDistinct(): LongArray {
+            if (isEmpty()) return this
+            val sorted = copyOf().apply { sort() }
+            var n = 1
+            for (i in 1 until sorted.size) {
+                if (sorted[i] != sorted[n - 1]) {
+                    sorted[n++] = sorted[i]
+                }
+            }
+            return if (n == sorted.size) sorted else sorted.copyOf(n)
+        }
+    }
+}
@@ -121,45 +121,21 @@ class PhoneBluetoothManager(service: PhoneBluetoothService) : AbstractSourceMana
                                 intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE)
                             } ?: return
 
-                            val macAddress = device.address
-                            val macAddressHash: ByteBuffer = hashGenerator.createHashByteBuffer(macAddress + "$hashSaltReference")
-
-                            val scannedTopicBuilder = PhoneBluetoothDeviceScanned.newBuilder().apply {
-                                time = currentTime
-                                timeReceived = currentTime
-                            }
-
-                            val pairedDevices: Set<BluetoothDevice> = if (hasConnectPermission) bluetoothAdapter.bondedDevices else emptySet()
-
-                            pairedDevices.forEach { bd ->
-                                val mac = bd.address
-                                val hash = hashGenerator.createHashByteBuffer(mac + "$hashSaltReference")
-
-                                send(bluetoothScannedTopic, scannedTopicBuilder.apply {
-                                        this.macAddressHash = hash
-                                        this.pairedState = bd.bondState.toPairedState()
-                                        this.hashSaltReference = hashSaltReference
-                                    }.build())
-                                }
-
-                            send(bluetoothScannedTopic, scannedTopicBuilder.apply {
-                                this.macAddressHash = macAddressHash
-                                this.pairedState = device.bondState.toPairedState()
-                                this.hashSaltReference = hashSaltReference
-                            }.build())
-
+                            sendScannedDevice(device, currentTime)
                         }
 
                         BluetoothAdapter.ACTION_DISCOVERY_FINISHED -> {
                             service.unregisterReceiver(this)
                             bluetoothBroadcastReceiver = null
 
-                            val bondedDevices = if (hasConnectPermission) bluetoothAdapter.bondedDevices.size else -1
+                            val pairedDevices: Set<BluetoothDevice>? = if (hasConnectPermission) bluetoothAdapter.bondedDevices else null
 
                             if (!isClosed) {
                                 val time = currentTime
+                                // Bonded devices are sent once per discovery.
+                                pairedDevices?.forEach { sendScannedDevice(it, time) }
                                 send(bluetoothDevicesTopic, PhoneBluetoothDevices(
-                                        time, time, bondedDevices, numberOfDevices, true))
+                                        time, time, pairedDevices?.size ?: -1, numberOfDevices, true))
                             }
                         }
                     }
@@ -175,6 +151,19 @@ class PhoneBluetoothManager(service: PhoneBluetoothService) : AbstractSourceMana
         }
     }
 
+    @SuppressLint("MissingPermission")
+    private fun sendScannedDevice(device: BluetoothDevice, time: Double) {
+        val macAddressHash: ByteBuffer = hashGenerator.createHashByteBuffer(device.address + "$hashSaltReference")
+
+        send(bluetoothScannedTopic, PhoneBluetoothDeviceScanned.newBuilder().apply {
+            this.time = time
+            this.timeReceived = time
+            this.macAddressHash = macAddressHash
+            this.pairedState = device.bondState.toPairedState()
+            this.hashSaltReference = this@PhoneBluetoothManager.hashSaltReference
+        }.build())
+    }
+
     override fun onClose() {
         processor.close()
         bluetoothBroadcastReceiver?.let {
@@ -19,6 +19,7 @@ package org.radarbase.passive.phone
 import android.content.ContentResolver
 import android.content.Context
 import android.content.SharedPreferences
+import android.database.ContentObserver
 import android.database.Cursor
 import android.os.Build
 import android.os.Bundle
@@ -30,17 +31,35 @@ import org.radarbase.android.source.SourceStatusListener
 import org.radarbase.android.util.OfflineProcessor
 import org.radarcns.kafka.ObservationKey
 import org.radarcns.passive.phone.PhoneContactList
-import java.util.*
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.io.IOException
 import java.util.concurrent.TimeUnit
-import kotlin.collections.ArrayList
-import kotlin.collections.LinkedHashSet
 
 class PhoneContactListManager(service: PhoneContactsListService) : AbstractSourceManager<PhoneContactsListService, BaseSourceState>(service) {
     private val preferences: SharedPreferences = service.getSharedPreferences(PhoneContactListManager::class.java.name, Context.MODE_PRIVATE)
     private val contactsTopic: DataCache<ObservationKey, PhoneContactList> = createCache("android_phone_contacts", PhoneContactList())
     private val processor: OfflineProcessor
     private val db: ContentResolver = service.contentResolver
-    private var savedContactLookups: Set<String> = emptySet()
+    private val snapshotFile = File(service.filesDir, SNAPSHOT_FILE_NAME)
+    private var snapshot: ContactLookupSnapshot? = null
+    private var lastUpdated: Long = 0L
+
+    /**
+     * Whether to only query contacts that were updated since the last run. If false, all
+     * contacts are queried on every run.
+     */
+    @Volatile
+    var isIncremental: Boolean = true
+
+    @Volatile
+    private var hasChanges = true
+    private var isObserving = false
+    private val contactsObserver = object : ContentObserver(null) {
+        override fun onChange(selfChange: Boolean) {
+            hasChanges = true
+        }
+    }
 
     init {
         name = service.getString(R.string.contact_list)
@@ -62,14 +81,47 @@ class PhoneContactListManager(service: PhoneContactsListService) : AbstractSourc
                     .remove(CONTACT_IDS)
                     .apply()
 
-            savedContactLookups = preferences.getStringSet(CONTACT_LOOKUPS, emptySet()) ?: emptySet()
+            snapshot = loadSnapshot()
+            lastUpdated = preferences.getLong(CONTACTS_LAST_UPDATED, 0L)
+
+            try {
+                db.registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, contactsObserver)
+                isObserving = true
+            } catch (ex: SecurityException) {
+                logger.warn("Cannot observe contact changes: {}", ex.toString())
+            }
         }
 
         status = SourceStatusListener.Status.CONNECTED
     }
 
-    private fun queryContacts(): Set<String>? {
-        val contactIds = LinkedHashSet<String>()
+    private fun loadSnapshot(): ContactLookupSnapshot? {
+        ContactLookupSnapshot.readFrom(snapshotFile)?.let { return it }
+
+        // migrate lookup keys stored in preferences.
+        val legacyLookups = preferences.getStringSet(CONTACT_LOOKUPS, null)
+            ?: return null
+        val legacySnapshot = ContactLookupSnapshot.Builder(legacyLookups.size)
+            .apply { legacyLookups.forEach(::add) }
+            .build()
+        storeSnapshot(legacySnapshot)
+        preferences.edit()
+            .remove(CONTACT_LOOKUPS)
+            .apply()
+        return legacySnapshot
+    }
+
+    private fun storeSnapshot(value: ContactLookupSnapshot) {
+        snapshot = value
+        try {
+            value.writeTo(snapshotFile)
+        } catch (ex: IOException) {
+            logger.error("Failed to store contact snapshot", ex)
+        }
+    }
+
+    private fun queryContacts(): ContactLookupSnapshot? {
+        val contactIds = ContactLookupSnapshot.Builder()
         val limit = 1000
         var where: String? = null
         var whereArgs: Array<String>? = null
@@ -103,15 +155,56 @@ class PhoneContactListManager(service: PhoneContactsListService) : AbstractSourc
                 } else {
                     whereArgs[0] = currentIds.last()
                 }
-                contactIds.addAll(currentIds)
+                currentIds.forEach(contactIds::add)
             }
         } while (currentIds.size == limit && !processor.isDone)
 
-        return contactIds
+        return contactIds.build()
     }
 
+    /** Query the lookup keys of contacts that were updated after [since]. */
+    private fun queryUpdatedContacts(since: Long): LongArray? {
+        val contactIds = ContactLookupSnapshot.Builder(16)
+        db.query(
+            ContactsContract.Contacts.CONTENT_URI,
+            LOOKUP_COLUMNS,
+            ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP + " > ?",
+            arrayOf(since.toString()),
+            null,
+        )?.use { cursor ->
+            while (cursor.moveToNext()) {
+                cursor.getString(0)?.let(contactIds::add)
+            }
+        } ?: return null
+        return contactIds.toLongArray()
+    }
+
+    /**
+     * Whether any contacts were deleted after [since]. Deleted contacts cannot be found by their
+     * update timestamp, so their removal from the snapshot needs a full query.
+     */
+    private fun hasDeletedContacts(since: Long): Boolean? = db.query(
+        ContactsContract.DeletedContacts.CONTENT_URI,
+        DELETED_COLUMNS,
+        ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP + " > ?",
+        arrayOf(since.toString()),
+        null,
+    )?.use { it.count > 0 }
+
+    private fun countContacts(): Int? = db.query(
+        ContactsContract.Contacts.CONTENT_URI,
+        COUNT_COLUMNS,
+        null,
+        null,
+        null,
+    )?.use { it.count }
+
     override fun onClose() {
         processor.close()
+        if (isObserving) {
+            db.unregisterContentObserver(contactsObserver)
+            isObserving = false
+        }
     }
 
     private fun makeQuery(
@@ -136,23 +229,69 @@ class PhoneContactListManager(service: PhoneContactsListService) : AbstractSourc
     }
 
     private fun processContacts() {
-        val newContactLookups = queryContacts() ?: return
+        val previousSnapshot = snapshot
+        if (!isIncremental || previousSnapshot == null || previousSnapshot.isEmpty()) {
+            processAllContacts(previousSnapshot)
+            return
+        }
 
-        var added: Int? = null
-        var removed: Int? = null
+        if (isObserving && !hasChanges) {
+            logger.debug("No contact changes observed")
+            sendContacts(0, 0, previousSnapshot.size)
+            return
+        }
+        hasChanges = false
+
+        val queryTime = System.currentTimeMillis()
+        val hasDeleted = hasDeletedContacts(lastUpdated)
+        val numberOfContacts = countContacts()
+        val updatedHashes = queryUpdatedContacts(lastUpdated)
+        if (hasDeleted == null || numberOfContacts == null || updatedHashes == null) {
+            hasChanges = true
+            return
+        }
 
-        if (savedContactLookups.isNotEmpty()) {
-            added = differenceSize(newContactLookups, savedContactLookups)
-            removed = differenceSize(savedContactLookups, newContactLookups)
+        val added = updatedHashes.count { it !in previousSnapshot }
+        if (hasDeleted || previousSnapshot.size + added != numberOfContacts) {
+            // Contacts were removed or merged, which cannot be tracked by timestamp. Their
+            // removal is found by comparing a full snapshot with the previous one.
+            processAllContacts(previousSnapshot)
+            return
         }
 
-        savedContactLookups = newContactLookups
+        if (added > 0) {
+            previousSnapshot.addAll(updatedHashes)
+            storeSnapshot(previousSnapshot)
+        }
+        updateLastUpdated(queryTime)
+
+        sendContacts(added, 0, numberOfContacts)
+    }
+
+    private fun processAllContacts(previousSnapshot: ContactLookupSnapshot?) {
+        val queryTime = System.currentTimeMillis()
+        val newSnapshot = queryContacts() ?: return
+
+        val changes = previousSnapshot
+            ?.takeUnless { it.isEmpty() }
+            ?.let { newSnapshot.changesSince(it) }
+
+        storeSnapshot(newSnapshot)
+        updateLastUpdated(queryTime)
+
+        sendContacts(changes?.added, changes?.removed, newSnapshot.size)
+    }
+
+    private fun updateLastUpdated(time: Long) {
+        lastUpdated = time
         preferences.edit()
-                .putStringSet(CONTACT_LOOKUPS, savedContactLookups)
-                .apply()
+            .putLong(CONTACTS_LAST_UPDATED, time)
+            .apply()
+    }
 
+    private fun sendContacts(added: Int?, removed: Int?, numberOfContacts: Int) {
         val timestamp = currentTime
-        send(contactsTopic, PhoneContactList(timestamp, timestamp, added, removed, newContactLookups.size))
+        send(contactsTopic, PhoneContactList(timestamp, timestamp, added, removed, numberOfContacts))
     }
 
     internal fun setCheckInterval(checkInterval: Long, unit: TimeUnit) {
@@ -160,14 +299,16 @@ class PhoneContactListManager(service: PhoneContactsListService) : AbstractSourc
     }
 
     companion object {
+        private val logger = LoggerFactory.getLogger(PhoneContactListManager::class.java)
+
         private const val CONTACTS_LIST_UPDATE_REQUEST_CODE = 15765692
         private const val ACTION_UPDATE_CONTACTS_LIST = "org.radarbase.passive.phone.PhoneContactListManager.ACTION_UPDATE_CONTACTS_LIST"
         private val LOOKUP_COLUMNS = arrayOf(ContactsContract.Contacts.LOOKUP_KEY)
+        private val COUNT_COLUMNS = arrayOf(ContactsContract.Contacts._ID)
+        private val DELETED_COLUMNS = arrayOf(ContactsContract.DeletedContacts.CONTACT_ID)
+        private const val SNAPSHOT_FILE_NAME = "contact_lookups.bin"
         const val CONTACT_IDS = "contact_ids"
         const val CONTACT_LOOKUPS = "contact_lookups"
-
-        private fun differenceSize(collectionA: Collection<*>, collectionB: Collection<*>): Int {
-            return collectionA.count { it !in collectionB }
-        }
+        const val CONTACTS_LAST_UPDATED = "contacts_last_updated"
     }
 }
@@ -37,10 +37,12 @@ class PhoneContactsListService : SourceService<BaseSourceState>() {
         manager.setCheckInterval(
                 config.getLong(PHONE_CONTACTS_LIST_INTERVAL, PHONE_CONTACTS_LIST_INTERVAL_DEFAULT),
                 TimeUnit.SECONDS)
+        manager.isIncremental = config.getBoolean(PHONE_CONTACTS_LIST_INCREMENTAL, true)
     }
 
     companion object {
         private const val PHONE_CONTACTS_LIST_INTERVAL = "phone_contacts_list_interval_seconds"
         internal const val PHONE_CONTACTS_LIST_INTERVAL_DEFAULT = 86400L
+        private const val PHONE_CONTACTS_LIST_INCREMENTAL = "phone_contacts_list_incremental"
     }
 }
@@ -50,6 +50,7 @@ class PhoneLocationManager(context: PhoneLocationService) : AbstractSourceManage
     private val locationTopic: DataCache<ObservationKey, PhoneRelativeLocation> = createCache("android_phone_relative_location", PhoneRelativeLocation())
     private val locationManager = service.getSystemService(Context.LOCATION_SERVICE) as LocationManager?
     private val handler = SafeHandler.getInstance("PhoneLocation", Process.THREAD_PRIORITY_BACKGROUND)
+    private val dutyCycle = createDutyCycle("phone_location", handler, ::startLocationUpdates, ::stopLocationUpdates)
     private val batteryLevelReceiver = BatteryStageReceiver(context, StageLevels(0.1f, 0.3f), ::onBatteryLevelChanged)
     private var latitudeReference: BigDecimal? = null
     private var longitudeReference: BigDecimal? = null
@@ -112,6 +113,20 @@ class PhoneLocationManager(context: PhoneLocationService) : AbstractSourceManage
             batteryLevelReceiver.register()
             status = SourceStatusListener.Status.CONNECTED
         }
+        dutyCycle.start()
+    }
+
+    private fun startLocationUpdates() {
+        try {
+            resetPollingIntervals()
+        } catch (ex: IllegalStateException) {
+            // Battery stage is not known yet, polling will start once it is received.
+            logger.debug("Waiting for battery stage before requesting location updates")
+        }
+    }
+
+    private fun stopLocationUpdates() {
+        locationManager?.removeUpdates(this)
     }
 
     override fun onLocationChanged(location: Location) {
@@ -156,7 +171,7 @@ class PhoneLocationManager(context: PhoneLocationService) : AbstractSourceManage
     @SuppressLint("MissingPermission")
     fun setLocationUpdateRate(periodGPS: Long, periodNetwork: Long) {
         handler.executeReentrant {
-            if (!isStarted || locationManager == null) {
+            if (!isStarted || !dutyCycle.isSampling || locationManager == null) {
                 return@executeReentrant
             }
 
@@ -50,6 +50,17 @@ class PhoneSensorManager(context: PhoneSensorService) : AbstractSourceManager<Ph
     private val magneticFieldTopic: DataCache<ObservationKey, PhoneMagneticField> = createCache("android_phone_magnetic_field", PhoneMagneticField())
     private val batteryTopic: DataCache<ObservationKey, PhoneBatteryLevel> = createCache("android_phone_battery_level", PhoneBatteryLevel())
 
+    init {
+        addDeadbandFilter(lightTopic, PhoneLight::getTime, { it.light.toDouble() })
+        addDeadbandFilter(
+            batteryTopic,
+            PhoneBatteryLevel::getTime,
+            { it.batteryLevel.toDouble() },
+            { if (it.isPlugged) 1.0 else 0.0 },
+            { it.status.ordinal.toDouble() },
+        )
+    }
+
     var sensorDelays: SparseIntArray = SparseIntArray()
         set(value) {
             mHandler.execute(defaultToCurrentThread = true) {
@@ -58,7 +69,7 @@ class PhoneSensorManager(context: PhoneSensorService) : AbstractSourceManager<Ph
                 }
 
                 field = value
-                if (state.status == SourceStatusListener.Status.CONNECTED) {
+                if (dutyCycle.isSampling) {
                     registerSensors()
                 }
             }
@@ -69,6 +80,7 @@ class PhoneSensorManager(context: PhoneSensorService) : AbstractSourceManager<Ph
     private val mHandler = SafeHandler.getInstance("Phone sensors", THREAD_PRIORITY_BACKGROUND)
 
     private val sensorManager: SensorManager? = context.getSystemService(Context.SENSOR_SERVICE) as SensorManager?
+    private val dutyCycle = createDutyCycle("phone_sensor", mHandler, ::startSampling, ::stopSampling)
     private val batteryProcessor: OfflineProcessor
     private var lastStepCount = -1
     private var wakeLock: PowerManager.WakeLock? = null
@@ -94,13 +106,9 @@ class PhoneSensorManager(context: PhoneSensorService) : AbstractSourceManager<Ph
         register()
         mHandler.start()
         mHandler.execute {
-            wakeLock = (service.getSystemService(POWER_SERVICE) as PowerManager?)?.let { pm ->
-                pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "org.radarcns.phone:PhoneSensorManager")
-                    .also { it.acquire() }
-            }
-            registerSensors()
             status = SourceStatusListener.Status.CONNECTED
         }
+        dutyCycle.start()
 
         batteryProcessor.start {
             batteryProcessor.trigger()
@@ -111,13 +119,32 @@ class PhoneSensorManager(context: PhoneSensorService) : AbstractSourceManager<Ph
         batteryProcessor.interval(period, batteryIntervalUnit)
     }
 
+    @SuppressLint("WakelockTimeout")
+    private fun startSampling() {
+        if (wakeLock == null) {
+            wakeLock = (service.getSystemService(POWER_SERVICE) as PowerManager?)?.let { pm ->
+                pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "org.radarcns.phone:PhoneSensorManager")
+                    .also { it.acquire() }
+            }
+        }
+        registerSensors()
+    }
+
+    private fun stopSampling() {
+        sensorManager?.unregisterListener(this)
+        wakeLock?.let {
+            it.release()
+            wakeLock = null
+        }
+    }
+
     /**
      * Register all sensors supplied in SENSOR_TYPES_TO_REGISTER constant.
      */
     private fun registerSensors() {
         sensorManager ?: return
         mHandler.executeReentrant {
-            if (state.status == SourceStatusListener.Status.CONNECTED) {
+            if (dutyCycle.isSampling) {
                 sensorManager.unregisterListener(this)
             }
 
@@ -269,6 +296,7 @@ class PhoneSensorManager(context: PhoneSensorService) : AbstractSourceManager<Ph
         mHandler.stop {
             sensorManager?.unregisterListener(this)
             wakeLock?.release()
+            wakeLock = null
         }
     }
 
@@ -0,0 +1,42 @@
+package org.radarbase.passive.phone
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+internal class ContactLookupSnapshotTest {
+    private fun snapshot(vararg lookups: String) = ContactLookupSnapshot.Builder(2)
+        .apply { lookups.forEach(::add) }
+        .build()
+
+    @Test
+    fun changesSince() {
+        val previous = snapshot("a", "b", "c")
+        val current = snapshot("a", "b", "c", "d", "e")
+        assertEquals(ContactLookupSnapshot.Changes(added = 2, removed = 0), current.changesSince(previous))
+        assertEquals(ContactLookupSnapshot.Changes(added = 0, removed = 2), previous.changesSince(current))
+    }
+
+    @Test
+    fun netZeroChanges() {
+        val previous = snapshot("a", "b", "c")
+        val current = snapshot("a", "b", "d")
+        assertEquals(previous.size, current.size)
+        assertEquals(ContactLookupSnapshot.Changes(added = 1, removed = 1), current.changesSince(previous))
+    }
+
+    @Test
+    fun addAll() {
+        val snapshot = snapshot("a", "b")
+        val added = snapshot.addAll(longArrayOf(
+            ContactLookupSnapshot.hash("b"),
+            ContactLookupSnapshot.hash("c"),
+            ContactLookupSnapshot.hash("c"),
+        ))
+        assertEquals(1, added)
+        assertEquals(3, snapshot.size)
+        assertTrue(ContactLookupSnapshot.hash("c") in snapshot)
+        assertFalse(ContactLookupSnapshot.hash("d") in snapshot)
+    }
+}
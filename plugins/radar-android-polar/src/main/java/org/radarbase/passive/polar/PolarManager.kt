@@ -41,12 +41,15 @@ class PolarManager(
         createCache("android_polar_ppg", PolarPpg())
 
     private val mHandler = SafeHandler.getInstance("Polar sensors", THREAD_PRIORITY_BACKGROUND)
+    private val dutyCycle = createDutyCycle("polar", mHandler, ::startStreams, ::stopStreams)
     private var wakeLock: PowerManager.WakeLock? = null
 
     private lateinit var api: PolarBleApi
 
     private var deviceId: String? = null
     private var isDeviceConnected: Boolean = false
+    @Volatile
+    private var isStreamingReady: Boolean = false
 
     private var autoConnectDisposable: Disposable? = null
     private var hrDisposable: Disposable? = null
@@ -75,7 +78,32 @@ class PolarManager(
                     .also { it.acquire() }
             }
         }
+        dutyCycle.start()
+    }
+
+    /** Start all streams that are not running yet. */
+    private fun startStreams() {
+        if (!isDeviceConnected || !isStreamingReady) return
+        if (hrDisposable?.isDisposed != false) streamHR()
+        if (ecgDisposable?.isDisposed != false) streamEcg()
+        if (accDisposable?.isDisposed != false) streamAcc()
+        if (ppiDisposable?.isDisposed != false) streamPpi()
+        if (ppgDisposable?.isDisposed != false) streamPpg()
+    }
 
+    /** Stop all running streams. */
+    private fun stopStreams() {
+        logger.debug("Stopping streams for {}", deviceId)
+        hrDisposable?.dispose()
+        hrDisposable = null
+        ecgDisposable?.dispose()
+        ecgDisposable = null
+        accDisposable?.dispose()
+        accDisposable = null
+        ppiDisposable?.dispose()
+        ppiDisposable = null
+        ppgDisposable?.dispose()
+        ppgDisposable = null
     }
 
     private fun connectToPolarSDK() {
@@ -123,6 +151,7 @@ class PolarManager(
             override fun deviceDisconnected(polarDeviceInfo: PolarDeviceInfo) {
                 logger.debug("Device disconnected ${polarDeviceInfo.deviceId}")
                 isDeviceConnected = false
+                isStreamingReady = false
                 disconnect()
             }
 
@@ -139,11 +168,12 @@ class PolarManager(
                             setDeviceTime(deviceId)
 
                         PolarBleApi.PolarBleSdkFeature.FEATURE_POLAR_ONLINE_STREAMING -> {
-                            streamHR()
-                            streamEcg()
-                            streamAcc()
-                            streamPpi()
-                            streamPpg()
+                            isStreamingReady = true
+                            mHandler.execute {
+                                if (dutyCycle.isSampling) {
+                                    startStreams()
+                                }
+                            }
                         }
 
                         else -> {
@@ -53,13 +53,11 @@ class PhonePpgActivity : AppCompatActivity(), Runnable {
             for (provider in radarService.connections) {
                 if (provider is PhonePpgProvider) {
                     ppgProvider = provider
-                    state?.stateChangeListener?.acquire()
                 }
             }
         }
 
         override fun onServiceDisconnected(name: ComponentName) {
-            state?.stateChangeListener?.release()
             ppgProvider = null
         }
     }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarbase.passive.ppg
+
+import org.apache.avro.Schema
+import org.apache.avro.specific.SpecificRecordBase
+
+/**
+ * Heart rate estimate from phone camera PPG. The schema is defined here, because the RADAR
+ * schemas do not contain a record for on-device PPG heart rate estimates.
+ */
+class PhonePpgHeartRate(
+    /** Time of the last detected beat in seconds since the Unix Epoch. */
+    var time: Double,
+    /** Time that the estimate was computed in seconds since the Unix Epoch. */
+    var timeReceived: Double,
+    /** Heart rate in beats per minute. */
+    var heartRate: Float,
+    /** Root mean square of successive inter-beat interval differences in milliseconds. */
+    var rmssd: Float,
+    /** Signal quality in range [0, 1]. */
+    var quality: Float,
+) : SpecificRecordBase() {
+    constructor() : this(0.0, 0.0, 0f, 0f, 0f)
+
+    override fun getSchema(): Schema = `SCHEMA$`
+
+    override fun get(field: Int): Any = when (field) {
+        0 -> time
+        1 -> timeReceived
+        2 -> heartRate
+        3 -> rmssd
+        4 -> quality
+        else -> throw IndexOutOfBoundsException("Invalid field index $field")
+    }
+
+    override fun put(field: Int, value: Any?) {
+        when (field) {
+            0 -> time = value as Double
+            1 -> timeReceived = value as Double
+            2 -> heartRate = value as Float
+            3 -> rmssd = value as Float
+            4 -> quality = value as Float
+            else -> throw IndexOutOfBoundsException("Invalid field index $field")
+        }
+    }
+
+    companion object {
+        @JvmField
+        val `SCHEMA$`: Schema = Schema.Parser().parse("""
+            {
+              "type": "record",
+              "name": "PhonePpgHeartRate",
+              "namespace": "org.radarbase.passive.ppg",
+              "doc": "Heart rate estimate from phone camera PPG.",
+              "fields": [
+                {"name": "time", "type": "double", "doc": "Time of the last detected beat in seconds since the Unix Epoch."},
+                {"name": "timeReceived", "type": "double", "doc": "Time that the estimate was computed in seconds since the Unix Epoch."},
+                {"name": "heartRate", "type": "float", "doc": "Heart rate in beats per minute."},
+                {"name": "rmssd", "type": "float", "doc": "Root mean square of successive inter-beat interval differences in milliseconds."},
+                {"name": "quality", "type": "float", "doc": "Signal quality in range [0, 1]."}
+              ]
+            }
+        """.trimIndent())
+
+        @JvmStatic
+        fun getClassSchema(): Schema = `SCHEMA$`
+    }
+}
@@ -17,18 +17,19 @@
 package org.radarbase.passive.ppg
 
 import android.content.Context
+import android.graphics.ImageFormat
 import android.hardware.camera2.*
 import android.hardware.camera2.CameraCharacteristics.LENS_FACING
+import android.hardware.camera2.CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE
+import android.hardware.camera2.CameraMetadata.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME
 import android.hardware.camera2.CameraDevice.TEMPLATE_PREVIEW
 import android.hardware.camera2.CameraMetadata.LENS_FACING_BACK
 import android.os.Process.THREAD_PRIORITY_FOREGROUND
-import android.renderscript.Allocation
 import android.util.Size
 import org.radarbase.android.data.DataCache
 import org.radarbase.android.source.AbstractSourceManager
 import org.radarbase.android.source.SourceStatusListener.Status.*
 import org.radarbase.android.util.SafeHandler
-import org.radarbase.passive.ppg.RenderContext.Companion.RENDER_CONTEXT_RELEASER
 import org.radarcns.kafka.ObservationKey
 import org.radarcns.passive.ppg.PhoneCameraPpg
 import org.slf4j.LoggerFactory
@@ -43,6 +44,7 @@ import java.util.concurrent.TimeUnit
  */
 class PhonePpgManager(service: PhonePpgService) : AbstractSourceManager<PhonePpgService, PhonePpgState>(service), PhonePpgState.OnActionListener {
     private val ppgTopic: DataCache<ObservationKey, PhoneCameraPpg> = createCache("android_phone_ppg", PhoneCameraPpg())
+    private val heartRateTopic: DataCache<ObservationKey, PhonePpgHeartRate> = createCache("android_phone_ppg_heart_rate", PhonePpgHeartRate())
     private val cameraManager: CameraManager = checkNotNull(service.getSystemService(Context.CAMERA_SERVICE) as CameraManager?)
 
     @get:Synchronized
@@ -53,24 +55,20 @@ class PhonePpgManager(service: PhonePpgService) : AbstractSourceManager<PhonePpg
     private var doStop: Boolean = false
     private val mProcessor: SafeHandler
     private val cameraOpenCloseLock = Semaphore(1)
-    private var mRenderContext: RenderContext? = null
+    private var mFrameProcessor: YuvFrameProcessor? = null
     @get:Synchronized
     private var measurementTime = 60_000L
+    @get:Synchronized
+    private var frameConfig = YuvFrameProcessor.Configuration()
+    @get:Synchronized
+    private var earlyStopTime = -1L
+    /** Only accessed from the mProcessor thread. */
+    private val heartRateEstimator = PpgHeartRateEstimator()
 
     init {
         name = service.getString(R.string.ppg_display_name)
         status = READY
 
-        state.stateChangeListener = object : PhonePpgState.OnStateChangeListener {
-            override fun release() {
-                RENDER_CONTEXT_RELEASER.release()
-            }
-
-            override fun acquire() {
-                RENDER_CONTEXT_RELEASER.acquire()
-            }
-        }
-
         mHandler = SafeHandler.getInstance("PPG", THREAD_PRIORITY_FOREGROUND)
         mProcessor = SafeHandler.getInstance("PPG processing", THREAD_PRIORITY_FOREGROUND)
     }
@@ -106,7 +104,14 @@ class PhonePpgManager(service: PhonePpgService) : AbstractSourceManager<PhonePpg
                 return false
             }
 
-            mRenderContext = RenderContext(service, videoSize).apply {
+            val isRealtimeTimestamp = cameraManager.getCameraCharacteristics(cameraId)
+                .get(SENSOR_INFO_TIMESTAMP_SOURCE) == SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME
+
+            val previousProcessor = mFrameProcessor
+            mProcessor.execute {
+                previousProcessor?.close()
+            }
+            mFrameProcessor = YuvFrameProcessor(videoSize, frameConfig, isRealtimeTimestamp).apply {
                 setImageHandler(mProcessor, this@PhonePpgManager::updatePreview)
             }
 
@@ -151,7 +156,7 @@ class PhonePpgManager(service: PhonePpgService) : AbstractSourceManager<PhonePpg
     /** Start the preview session. This should only be called once the camera is open.  */
     private fun startPreview() {
         val camera = mCameraDevice ?: return
-        val context = mRenderContext ?: return
+        val context = mFrameProcessor ?: return
 
         try {
             logger.debug("Starting capture session")
@@ -164,7 +169,7 @@ class PhonePpgManager(service: PhonePpgService) : AbstractSourceManager<PhonePpg
                             logger.info("Started PPG capture session")
 
                             try {
-                                // Make a capture request, sending images to the RenderContext and enabling the torch
+                                // Make a capture request, sending images to the frame processor and enabling the torch
                                 val captureRequest = camera.createCaptureRequest(TEMPLATE_PREVIEW).apply {
                                     addTarget(context.surface)
                                     set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_TORCH)
@@ -209,33 +214,33 @@ class PhonePpgManager(service: PhonePpgService) : AbstractSourceManager<PhonePpg
     }
 
     /**
-     * Process an image and send it.
+     * Send the mean color of a preview image.
      * @param time time in milliseconds since the Unix Epoch that the preview image was captured.
-     * @param rgba a linear array of RGBA values. Index 4*i + 0 = r, 4*i + 1 = g, 4*i + 2 = b,
-     * 4*i + 3 = a.
+     * @param sampleSize number of pixels that were sampled.
+     * @param r mean red value in range [0, 1].
+     * @param g mean green value in range [0, 1].
+     * @param b mean blue value in range [0, 1].
      */
-    private fun updatePreview(time: Long, rgba: ByteArray) {
-        var totalR: Long = 0
-        var totalG: Long = 0
-        var totalB: Long = 0
-
-        var i = 0
-        while (i < rgba.size) {
-            totalR += (rgba[i].toInt() and 0xFF).toLong()
-            totalG += (rgba[i + 1].toInt() and 0xFF).toLong()
-            totalB += (rgba[i + 2].toInt() and 0xFF).toLong()
-            i += 4
-        }
-
-        val sampleSize = rgba.size / 4
-
-        val range = 255.0 * sampleSize
-
-        val r = (totalR / range).toFloat()
-        val g = (totalG / range).toFloat()
-        val b = (totalB / range).toFloat()
-
+    private fun updatePreview(time: Long, sampleSize: Int, r: Float, g: Float, b: Float) {
         send(ppgTopic, PhoneCameraPpg(time / 1000.0, currentTime, sampleSize, r, g, b))
+
+        val estimate = heartRateEstimator.add(time / 1000.0, r.toDouble()) ?: return
+        send(heartRateTopic, PhonePpgHeartRate(
+            estimate.time,
+            currentTime,
+            estimate.heartRate,
+            estimate.rmssd,
+            estimate.quality,
+        ))
+
+        val minimumTime = earlyStopTime
+        if (minimumTime >= 0L
+            && state.recordingTime >= minimumTime
+            && estimate.isStable(EARLY_STOP_QUALITY)
+        ) {
+            logger.info("Stopping PPG measurement early with a stable heart rate estimate")
+            stopCamera()
+        }
     }
 
     /** Get the first back-facing camera in the list of cameras returned by the camera manager.  */
@@ -258,7 +263,7 @@ class PhonePpgManager(service: PhonePpgService) : AbstractSourceManager<PhonePpg
     private fun getImageSize(cameraId: String): Size? {
         val sizes = cameraManager.getCameraCharacteristics(cameraId)
                 .get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP)
-                ?.getOutputSizes(Allocation::class.java)
+                ?.getOutputSizes(ImageFormat.YUV_420_888)
                 ?: emptyArray()
 
         return if (sizes.isNotEmpty()) {
@@ -307,8 +312,8 @@ class PhonePpgManager(service: PhonePpgService) : AbstractSourceManager<PhonePpg
             mCameraDevice?.close()
 
             mProcessor.stop {
-                mRenderContext?.close()
-                mRenderContext = null
+                mFrameProcessor?.close()
+                mFrameProcessor = null
             }
         }
     }
@@ -316,6 +321,7 @@ class PhonePpgManager(service: PhonePpgService) : AbstractSourceManager<PhonePpg
     override fun startCamera() {
         mHandler.execute {
             doStop = false
+            mProcessor.execute { heartRateEstimator.reset() }
             if (!openCamera()) {
                 disconnect()
             }
@@ -327,12 +333,22 @@ class PhonePpgManager(service: PhonePpgService) : AbstractSourceManager<PhonePpg
     }
 
     @Synchronized
-    internal fun configure(measurementTime: Long, measurementDimensions: Size) {
+    internal fun configure(
+        measurementTime: Long,
+        measurementDimensions: Size,
+        frameConfig: YuvFrameProcessor.Configuration,
+        earlyStopTime: Long,
+    ) {
         this.measurementTime = TimeUnit.SECONDS.toMillis(measurementTime)
         this.preferredDimensions = measurementDimensions
+        this.frameConfig = frameConfig
+        this.earlyStopTime = if (earlyStopTime >= 0L) TimeUnit.SECONDS.toMillis(earlyStopTime) else -1L
     }
 
     companion object {
         private val logger = LoggerFactory.getLogger(PhonePpgManager::class.java)
+
+        /** Minimum heart rate estimate quality to stop a measurement early. */
+        private const val EARLY_STOP_QUALITY = 0.8f
     }
 }
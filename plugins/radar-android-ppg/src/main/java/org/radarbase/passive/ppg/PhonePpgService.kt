@@ -33,16 +33,26 @@ class PhonePpgService : SourceService<PhonePpgState>() {
         manager.configure(
                 config.getLong(PPG_MEASUREMENT_TIME_NAME, PPG_MEASUREMENT_TIME_DEFAULT),
                 Size(config.getInt(PPG_MEASUREMENT_WIDTH_NAME, PPG_MEASUREMENT_WIDTH_DEFAULT),
-                        config.getInt(PPG_MEASUREMENT_HEIGHT_NAME, PPG_MEASUREMENT_HEIGHT_DEFAULT)))
+                        config.getInt(PPG_MEASUREMENT_HEIGHT_NAME, PPG_MEASUREMENT_HEIGHT_DEFAULT)),
+                YuvFrameProcessor.Configuration(
+                        roiFraction = config.getFloat(PPG_ROI_FRACTION_NAME, PPG_ROI_FRACTION_DEFAULT),
+                        subsample = config.getInt(PPG_SUBSAMPLE_NAME, PPG_SUBSAMPLE_DEFAULT)),
+                config.getLong(PPG_EARLY_STOP_NAME, PPG_EARLY_STOP_DEFAULT))
     }
 
     companion object {
         const val PPG_MEASUREMENT_TIME_NAME = "phone_ppg_measurement_seconds"
         private const val PPG_MEASUREMENT_WIDTH_NAME = "phone_ppg_measurement_width"
         private const val PPG_MEASUREMENT_HEIGHT_NAME = "phone_ppg_measurement_height"
+        private const val PPG_ROI_FRACTION_NAME = "phone_ppg_roi_fraction"
+        private const val PPG_SUBSAMPLE_NAME = "phone_ppg_subsample"
+        private const val PPG_EARLY_STOP_NAME = "phone_ppg_early_stop_seconds"
 
         const val PPG_MEASUREMENT_TIME_DEFAULT = 60L
         private const val PPG_MEASUREMENT_WIDTH_DEFAULT = 200
         private const val PPG_MEASUREMENT_HEIGHT_DEFAULT = 200
+        private const val PPG_ROI_FRACTION_DEFAULT = 1.0f
+        private const val PPG_SUBSAMPLE_DEFAULT = 1
+        private const val PPG_EARLY_STOP_DEFAULT = -1L
     }
 }
@@ -22,7 +22,6 @@ import org.radarbase.android.source.BaseSourceState
 class PhonePpgState : BaseSourceState() {
     private var recordingStarted: Long = 0
     var actionListener: OnActionListener? = null
-    var stateChangeListener: OnStateChangeListener? = null
 
     val recordingTime: Long
         get() = SystemClock.elapsedRealtime() - recordingStarted
@@ -35,9 +34,4 @@ class PhonePpgState : BaseSourceState() {
         fun startCamera()
         fun stopCamera()
     }
-
-    interface OnStateChangeListener {
-        fun release()
-        fun acquire()
-    }
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2018 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarbase.passive.ppg
+
+import kotlin.math.abs
+import kotlin.math.sqrt
+
+/**
+ * Streaming heart rate estimator for camera PPG. Each frame is band-pass filtered with a pair of
+ * one-pole filters whose coefficients follow the actual frame interval, so a variable frame rate
+ * is handled. Beats are detected as local maxima of the inverted signal above an adaptive
+ * threshold. Heart rate and RMSSD are computed over a fixed number of the most recent
+ * inter-beat intervals, so memory use does not depend on the measurement length.
+ *
+ * This class is not thread-safe.
+ */
+internal class PpgHeartRateEstimator {
+    private var lastTime = Double.NaN
+    private var baseline = Double.NaN
+    private var smoothed = 0.0
+    private var amplitude = 0.0
+    private var previous = 0.0
+    private var beforePrevious = 0.0
+    private var previousTime = Double.NaN
+
+    private var lastBeatTime = Double.NaN
+    private val intervals = DoubleArray(NUMBER_OF_INTERVALS)
+    private var intervalIndex = 0
+    private var numberOfIntervals = 0
+    private var numberOfRejected = 0
+
+    /**
+     * Add a frame.
+     * @param time time of the frame in seconds.
+     * @param value mean red value of the frame.
+     * @return a new estimate if a beat was detected and enough beats are known, null otherwise.
+     */
+    fun add(time: Double, value: Double): Estimate? {
+        if (lastTime.isNaN() || time <= lastTime || time - lastTime > MAX_FRAME_GAP) {
+            reset()
+            lastTime = time
+            baseline = value
+            return null
+        }
+        val dt = time - lastTime
+        lastTime = time
+
+        // high-pass by subtracting a slow moving average, then low-pass the result.
+        baseline += (value - baseline) * dt / (HIGH_PASS_TIME_CONSTANT + dt)
+        // blood volume increases light absorption, so invert the signal to get a pulse wave.
+        val highPassed = baseline - value
+        smoothed += (highPassed - smoothed) * dt / (LOW_PASS_TIME_CONSTANT + dt)
+        amplitude += (abs(smoothed) - amplitude) * dt / (AMPLITUDE_TIME_CONSTANT + dt)
+
+        val isPeak = previous > beforePrevious
+            && previous >= smoothed
+            && previous > PEAK_THRESHOLD * amplitude
+
+        val peakTime = previousTime
+        beforePrevious = previous
+        previous = smoothed
+        previousTime = time
+
+        return if (isPeak) addBeat(peakTime) else null
+    }
+
+    private fun addBeat(time: Double): Estimate? {
+        if (!lastBeatTime.isNaN() && time - lastBeatTime < MIN_INTERVAL) {
+            // within refractory period
+            return null
+        }
+        val interval = time - lastBeatTime
+        lastBeatTime = time
+        if (interval.isNaN()) return null
+        if (interval > MAX_INTERVAL) {
+            numberOfRejected++
+            return null
+        }
+
+        intervals[intervalIndex] = interval
+        intervalIndex = (intervalIndex + 1) % NUMBER_OF_INTERVALS
+        if (numberOfIntervals < NUMBER_OF_INTERVALS) numberOfIntervals++
+
+        return if (numberOfIntervals >= MIN_INTERVALS) estimate(time) else null
+    }
+
+    private fun estimate(time: Double): Estimate {
+        var sum = 0.0
+        var sumSquaredDifferences = 0.0
+        // oldest interval in the ring buffer
+        val start = (intervalIndex - numberOfIntervals + NUMBER_OF_INTERVALS) % NUMBER_OF_INTERVALS
+        var last = Double.NaN
+        for (i in 0 until numberOfIntervals) {
+            val interval = intervals[(start + i) % NUMBER_OF_INTERVALS]
+            sum += interval
+            if (!last.isNaN()) {
+                val difference = interval - last
+                sumSquaredDifferences += difference * difference
+            }
+            last = interval
+        }
+        val mean = sum / numberOfIntervals
+        var sumSquares = 0.0
+        for (i in 0 until numberOfIntervals) {
+            val deviation = intervals[(start + i) % NUMBER_OF_INTERVALS] - mean
+            sumSquares += deviation * deviation
+        }
+        val coefficientOfVariation = sqrt(sumSquares / numberOfIntervals) / mean
+        val acceptedFraction = numberOfIntervals.toDouble() / (numberOfIntervals + numberOfRejected)
+        val quality = (1.0 - coefficientOfVariation / MAX_COEFFICIENT_OF_VARIATION)
+            .coerceIn(0.0, 1.0) * acceptedFraction
+
+        return Estimate(
+            time = time,
+            heartRate = (60.0 / mean).toFloat(),
+            rmssd = (sqrt(sumSquaredDifferences / (numberOfIntervals - 1)) * 1000.0).toFloat(),
+            quality = quality.toFloat(),
+            isComplete = numberOfIntervals == NUMBER_OF_INTERVALS,
+        )
+    }
+
+    /** Forget all previous frames and beats. */
+    fun reset() {
+        lastTime = Double.NaN
+        baseline = Double.NaN
+        smoothed = 0.0
+        amplitude = 0.0
+        previous = 0.0
+        beforePrevious = 0.0
+        previousTime = Double.NaN
+        lastBeatTime = Double.NaN
+        intervalIndex = 0
+        numberOfIntervals = 0
+        numberOfRejected = 0
+    }
+
+    data class Estimate(
+        /** Time of the last beat in seconds. */
+        val time: Double,
+        /** Heart rate in beats per minute. */
+        val heartRate: Float,
+        /** Root mean square of successive inter-beat interval differences in milliseconds. */
+        val rmssd: Float,
+        /** Signal quality in range [0, 1]. */
+        val quality: Float,
+        /** Whether the estimate is based on the maximum number of intervals. */
+        val isComplete: Boolean,
+    ) {
+        /** Whether the estimate is reliable enough to end the measurement. */
+        fun isStable(minQuality: Float): Boolean = isComplete && quality >= minQuality
+    }
+
+    companion object {
+        /** Maximum time in seconds between frames before the signal is reset. */
+        private const val MAX_FRAME_GAP = 1.0
+        private const val HIGH_PASS_TIME_CONSTANT = 1.0
+        private const val LOW_PASS_TIME_CONSTANT = 0.05
+        private const val AMPLITUDE_TIME_CONSTANT = 2.0
+        /** Fraction of the mean absolute amplitude that a peak should exceed. */
+        private const val PEAK_THRESHOLD = 0.5
+        /** Minimum inter-beat interval in seconds, corresponding to 200 bpm. */
+        private const val MIN_INTERVAL = 0.3
+        /** Maximum inter-beat interval in seconds, corresponding to 40 bpm. */
+        private const val MAX_INTERVAL = 1.5
+        private const val NUMBER_OF_INTERVALS = 16
+        private const val MIN_INTERVALS = 5
+        private const val MAX_COEFFICIENT_OF_VARIATION = 0.25
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2018 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarbase.passive.ppg
+
+import android.graphics.ImageFormat
+import android.media.Image
+import android.media.ImageReader
+import android.os.SystemClock
+import android.util.Size
+import android.view.Surface
+import org.radarbase.android.util.SafeHandler
+import org.slf4j.LoggerFactory
+import java.io.Closeable
+
+/**
+ * Accepts images from a camera preview and computes the mean red, green and blue values of each
+ * image. The camera should record image data in [ImageFormat.YUV_420_888] format. Each sampled
+ * pixel is read directly from the Y, U and V image buffers and converted to RGB with the JFIF
+ * transform, without copying the image.
+ *
+ * Only the latest available image is processed. Images that arrived while the previous image was
+ * being processed are dropped and counted in [statistics].
+ *
+ * @param dimensions preview image dimension size.
+ * @param config region of interest and subsampling to use.
+ * @param isRealtimeTimestamp whether image timestamps use the
+ *      [SystemClock.elapsedRealtimeNanos] time base, so that frame latency can be computed.
+ */
+internal class YuvFrameProcessor(
+    dimensions: Size,
+    private val config: Configuration,
+    private val isRealtimeTimestamp: Boolean,
+) : Closeable {
+    private val reader = ImageReader.newInstance(
+        dimensions.width,
+        dimensions.height,
+        ImageFormat.YUV_420_888,
+        MAX_IMAGES,
+    )
+
+    private var numberOfFrames = 0L
+    private var numberOfDroppedFrames = 0L
+    private var totalProcessingNanos = 0L
+    private var maxLatencyNanos = 0L
+
+    /**
+     * Get surface to write YUV data to.
+     */
+    val surface: Surface
+        get() = reader.surface
+
+    /** Frame statistics since this processor was created. */
+    @get:Synchronized
+    val statistics: FrameStatistics
+        get() = FrameStatistics(
+            numberOfFrames,
+            numberOfDroppedFrames,
+            if (numberOfFrames > 0) totalProcessingNanos / numberOfFrames / 1_000_000.0 else 0.0,
+            maxLatencyNanos / 1_000_000.0,
+        )
+
+    /**
+     * Set callback to handle the mean color of each image.
+     *
+     * Receives the time in milliseconds since the Unix Epoch that the preview image was captured,
+     * the number of pixels sampled and the mean red, green and blue values in range [0, 1].
+     *
+     * @param listener callback
+     * @param handler thread to process images and call the callback on.
+     */
+    fun setImageHandler(
+        handler: SafeHandler,
+        listener: (time: Long, sampleSize: Int, r: Float, g: Float, b: Float) -> Unit,
+    ) {
+        reader.setOnImageAvailableListener({ processLatestImage(listener) }, handler.handler)
+    }
+
+    private fun processLatestImage(listener: (time: Long, sampleSize: Int, r: Float, g: Float, b: Float) -> Unit) {
+        val processingStart = SystemClock.elapsedRealtimeNanos()
+        val time = System.currentTimeMillis()
+
+        var image = acquireNextImage() ?: return
+        var dropped = 0
+        while (true) {
+            val next = acquireNextImage() ?: break
+            image.close()
+            image = next
+            dropped++
+        }
+
+        image.use {
+            val latency = if (isRealtimeTimestamp) processingStart - it.timestamp else 0L
+            computeMeans(it, time, listener)
+            updateStatistics(dropped, SystemClock.elapsedRealtimeNanos() - processingStart, latency)
+        }
+    }
+
+    private fun acquireNextImage(): Image? = try {
+        reader.acquireNextImage()
+    } catch (ex: IllegalStateException) {
+        logger.warn("Cannot acquire PPG image: {}", ex.toString())
+        null
+    }
+
+    @Synchronized
+    private fun updateStatistics(dropped: Int, processingNanos: Long, latencyNanos: Long) {
+        numberOfFrames++
+        numberOfDroppedFrames += dropped
+        totalProcessingNanos += processingNanos
+        if (latencyNanos > maxLatencyNanos) {
+            maxLatencyNanos = latencyNanos
+        }
+    }
+
+    private fun computeMeans(
+        image: Image,
+        time: Long,
+        listener: (time: Long, sampleSize: Int, r: Float, g: Float, b: Float) -> Unit,
+    ) {
+        val roiWidth = (image.width * config.roiFraction).toInt().coerceIn(2, image.width)
+        val roiHeight = (image.height * config.roiFraction).toInt().coerceIn(2, image.height)
+        // align to even pixels so that the chroma planes cover the same region
+        val left = ((image.width - roiWidth) / 2) and 1.inv()
+        val top = ((image.height - roiHeight) / 2) and 1.inv()
+        val step = config.subsample.coerceAtLeast(1)
+
+        val (yPlane, uPlane, vPlane) = image.planes
+        val yBuffer = yPlane.buffer
+        val uBuffer = uPlane.buffer
+        val vBuffer = vPlane.buffer
+        val yLimit = yBuffer.limit()
+        val uLimit = uBuffer.limit()
+        val vLimit = vBuffer.limit()
+
+        var totalR = 0L
+        var totalG = 0L
+        var totalB = 0L
+        var sampleSize = 0
+
+        var y = top
+        while (y < top + roiHeight) {
+            val yRow = y * yPlane.rowStride
+            val uRow = (y / 2) * uPlane.rowStride
+            val vRow = (y / 2) * vPlane.rowStride
+            var x = left
+            while (x < left + roiWidth) {
+                val yIndex = yRow + x * yPlane.pixelStride
+                val uIndex = uRow + (x / 2) * uPlane.pixelStride
+                val vIndex = vRow + (x / 2) * vPlane.pixelStride
+                if (yIndex >= yLimit || uIndex >= uLimit || vIndex >= vLimit) break
+
+                val luma = yBuffer.get(yIndex).toInt() and 0xFF
+                val u = (uBuffer.get(uIndex).toInt() and 0xFF) - 128
+                val v = (vBuffer.get(vIndex).toInt() and 0xFF) - 128
+
+                // JFIF transform with fixed-point math, clamped per pixel. The transform is
+                // linear, but with the torch on many pixels saturate, so it cannot be applied to
+                // the plane means instead.
+                totalR += (luma + (v * 1436 shr 10)).coerceIn(0, 255)
+                totalG += (luma - (u * 46549 shr 17) - (v * 93604 shr 17)).coerceIn(0, 255)
+                totalB += (luma + (u * 1814 shr 10)).coerceIn(0, 255)
+                sampleSize++
+                x += step
+            }
+            y += step
+        }
+
+        if (sampleSize == 0) return
+
+        val range = 255.0 * sampleSize
+        listener(
+            time,
+            sampleSize,
+            (totalR / range).toFloat(),
+            (totalG / range).toFloat(),
+            (totalB / range).toFloat(),
+        )
+    }
+
+    /**
+     * Close the processor and destroy any resources associated.
+     */
+    override fun close() {
+        reader.setOnImageAvailableListener(null, null)
+        reader.close()
+        logger.info("PPG frame statistics: {}", statistics)
+    }
+
+    data class Configuration(
+        /** Fraction of the image width and height to analyze, centered in the image. */
+        val roiFraction: Float = 1.0f,
+        /** Analyze only every n-th pixel in both directions. */
+        val subsample: Int = 1,
+    )
+
+    data class FrameStatistics(
+        val numberOfFrames: Long,
+        val numberOfDroppedFrames: Long,
+        val meanProcessingMillis: Double,
+        val maxLatencyMillis: Double,
+    )
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(YuvFrameProcessor::class.java)
+
+        /** One image is processed while the next one is being written. */
+        private const val MAX_IMAGES = 2
+    }
+}
@@ -0,0 +1,53 @@
+package org.radarbase.passive.ppg
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.math.PI
+import kotlin.math.sin
+
+internal class PpgHeartRateEstimatorTest {
+    private fun PpgHeartRateEstimator.addPulse(
+        heartRate: Double,
+        duration: Double,
+        frameRate: Double = 30.0,
+    ): List<PpgHeartRateEstimator.Estimate> {
+        val frequency = heartRate / 60.0
+        return (0 until (duration * frameRate).toInt()).mapNotNull { i ->
+            val time = 1_000.0 + i / frameRate
+            add(time, 0.8 + 0.01 * sin(2 * PI * frequency * time))
+        }
+    }
+
+    @Test
+    fun estimateHeartRate() {
+        val estimates = PpgHeartRateEstimator().addPulse(72.0, 30.0)
+        val last = estimates.last()
+        assertEquals(72.0f, last.heartRate, 1.0f)
+        assertTrue(last.isComplete)
+        assertTrue(last.isStable(0.8f))
+    }
+
+    @Test
+    fun estimateFastHeartRate() {
+        val estimates = PpgHeartRateEstimator().addPulse(150.0, 20.0)
+        assertEquals(150.0f, estimates.last().heartRate, 3.0f)
+    }
+
+    @Test
+    fun noPulse() {
+        val estimator = PpgHeartRateEstimator()
+        val estimates = (0 until 300).mapNotNull { estimator.add(it / 30.0, 0.8) }
+        assertTrue(estimates.isEmpty())
+    }
+
+    @Test
+    fun resetAfterGap() {
+        val estimator = PpgHeartRateEstimator()
+        assertNotNull(estimator.addPulse(72.0, 15.0).lastOrNull())
+        assertNull(estimator.add(2_000.0, 0.8))
+        assertTrue(estimator.addPulse(72.0, 3.0).isEmpty())
+    }
+}
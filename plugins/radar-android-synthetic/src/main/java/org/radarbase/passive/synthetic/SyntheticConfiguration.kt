@@ -0,0 +1,100 @@
+package org.radarbase.passive.synthetic
+
+import org.apache.avro.specific.SpecificRecord
+import org.radarbase.android.config.SingleRadarConfiguration
+import org.radarbase.android.util.takeTrimmedIfNotEmpty
+import org.radarcns.passive.bittium.BittiumFarosEcg
+import org.radarcns.passive.phone.BatteryStatus
+import org.radarcns.passive.phone.LocationProvider
+import org.radarcns.passive.phone.PhoneAcceleration
+import org.radarcns.passive.phone.PhoneBatteryLevel
+import org.radarcns.passive.phone.PhoneLight
+import org.radarcns.passive.phone.PhoneRelativeLocation
+import java.util.concurrent.ThreadLocalRandom
+
+data class SyntheticConfiguration(
+    /** Number of topics to generate data for. */
+    var numberOfTopics: Int = 1,
+    /** Schemas of the generated records. Topics are assigned a schema in turn. */
+    var schemas: List<SyntheticSchema> = listOf(SyntheticSchema.ACCELERATION),
+    /** Number of records per second per topic. */
+    var frequency: Double = 50.0,
+    /**
+     * Interval in milliseconds between generating records. All records of an interval are sent
+     * at once, so a longer interval makes the load more bursty.
+     */
+    var burstInterval: Long = 20L,
+    /** Standard deviation in milliseconds of random noise that is added to record times. */
+    var clockJitter: Long = 0L,
+    /** Prefix of generated topic names. */
+    var topicPrefix: String = "android_synthetic",
+) {
+    fun configure(config: SingleRadarConfiguration) {
+        numberOfTopics = config.getInt(SYNTHETIC_NUMBER_OF_TOPICS, numberOfTopics)
+            .coerceAtLeast(0)
+        config.optString(SYNTHETIC_SCHEMAS)
+            ?.split(separator)
+            ?.mapNotNull { name ->
+                val trimmed = name.takeTrimmedIfNotEmpty() ?: return@mapNotNull null
+                SyntheticSchema.values().find { it.name.equals(trimmed, ignoreCase = true) }
+            }
+            ?.takeIf { it.isNotEmpty() }
+            ?.let { schemas = it }
+        frequency = config.getFloat(SYNTHETIC_FREQUENCY, frequency.toFloat()).toDouble()
+            .coerceAtLeast(0.001)
+        burstInterval = config.getLong(SYNTHETIC_BURST_INTERVAL, burstInterval)
+            .coerceAtLeast(1L)
+        clockJitter = config.getLong(SYNTHETIC_CLOCK_JITTER, clockJitter)
+            .coerceAtLeast(0L)
+        topicPrefix = config.getString(SYNTHETIC_TOPIC_PREFIX, topicPrefix)
+    }
+
+    companion object {
+        private val separator = ",".toRegex()
+
+        const val SYNTHETIC_NUMBER_OF_TOPICS = "synthetic_number_of_topics"
+        const val SYNTHETIC_SCHEMAS = "synthetic_schemas"
+        const val SYNTHETIC_FREQUENCY = "synthetic_frequency"
+        const val SYNTHETIC_BURST_INTERVAL = "synthetic_burst_interval_ms"
+        const val SYNTHETIC_CLOCK_JITTER = "synthetic_clock_jitter_ms"
+        const val SYNTHETIC_TOPIC_PREFIX = "synthetic_topic_prefix"
+    }
+}
+
+/** RADAR schemas that synthetic records can be generated for. */
+enum class SyntheticSchema(
+    /** Topic name part of the schema. */
+    val topicSuffix: String,
+    /** Example record, used to create a data cache. */
+    val example: SpecificRecord,
+    /** Generate a record with given time and time received, in seconds since the Unix Epoch. */
+    val generate: (time: Double, timeReceived: Double) -> SpecificRecord,
+) {
+    ACCELERATION("acceleration", PhoneAcceleration(), { time, timeReceived ->
+        val random = ThreadLocalRandom.current()
+        PhoneAcceleration(time, timeReceived,
+            random.nextGaussian().toFloat(),
+            random.nextGaussian().toFloat(),
+            (9.81 + random.nextGaussian()).toFloat())
+    }),
+    ECG("ecg", BittiumFarosEcg(), { time, timeReceived ->
+        val random = ThreadLocalRandom.current()
+        BittiumFarosEcg(time, timeReceived,
+            random.nextGaussian().toFloat(),
+            random.nextGaussian().toFloat(),
+            random.nextGaussian().toFloat())
+    }),
+    LIGHT("light", PhoneLight(), { time, timeReceived ->
+        PhoneLight(time, timeReceived, ThreadLocalRandom.current().nextFloat() * 1000f)
+    }),
+    BATTERY_LEVEL("battery_level", PhoneBatteryLevel(), { time, timeReceived ->
+        PhoneBatteryLevel(time, timeReceived,
+            ThreadLocalRandom.current().nextFloat(), false, BatteryStatus.DISCHARGING)
+    }),
+    LOCATION("relative_location", PhoneRelativeLocation(), { time, timeReceived ->
+        val random = ThreadLocalRandom.current()
+        PhoneRelativeLocation(time, timeReceived, 0, LocationProvider.OTHER,
+            random.nextGaussian() * 0.01, random.nextGaussian() * 0.01,
+            null, random.nextFloat() * 50f, null, null)
+    }),
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarbase.passive.synthetic
+
+import android.os.Process.THREAD_PRIORITY_BACKGROUND
+import org.apache.avro.specific.SpecificRecord
+import org.radarbase.android.data.DataCache
+import org.radarbase.android.source.AbstractSourceManager
+import org.radarbase.android.source.BaseSourceState
+import org.radarbase.android.source.SourceStatusListener
+import org.radarbase.android.util.SafeHandler
+import org.radarcns.kafka.ObservationKey
+import org.slf4j.LoggerFactory
+import java.util.concurrent.ThreadLocalRandom
+
+/**
+ * Generates synthetic records for a configurable number of topics. Records are sent through the
+ * regular cache and upload path, so this can be used to test storage and upload under high load.
+ */
+class SyntheticManager(service: SyntheticService) : AbstractSourceManager<SyntheticService, BaseSourceState>(service) {
+    private val handler = SafeHandler.getInstance("SyntheticLoad", THREAD_PRIORITY_BACKGROUND)
+    private val caches: MutableMap<String, DataCache<ObservationKey, SpecificRecord>> = HashMap()
+    private var generators: List<TopicGenerator> = emptyList()
+    @Volatile
+    private var config = SyntheticConfiguration()
+    private var isStarted = false
+    /** Incremented whenever generation restarts, to stop the previous generation loop. */
+    private var generation = 0
+
+    init {
+        name = service.getString(R.string.syntheticServiceDisplayName)
+    }
+
+    override fun start(acceptableIds: Set<String>) {
+        status = SourceStatusListener.Status.READY
+        handler.start()
+        register()
+        handler.execute {
+            isStarted = true
+            startGenerating()
+        }
+        status = SourceStatusListener.Status.CONNECTED
+    }
+
+    /**
+     * Update the configuration. It is stored immediately, so a configuration that is set before
+     * [start] is used when generation starts.
+     */
+    fun configure(config: SyntheticConfiguration) {
+        synchronized(this) {
+            if (config == this.config) return
+            this.config = config.copy()
+        }
+        handler.execute {
+            if (isStarted) {
+                startGenerating()
+            }
+        }
+    }
+
+    private fun startGenerating() {
+        val localConfig = config
+        val now = currentTime
+        generators = (0 until localConfig.numberOfTopics).map { i ->
+            val schema = localConfig.schemas[i % localConfig.schemas.size]
+            val topicName = "${localConfig.topicPrefix}_${schema.topicSuffix}_$i"
+            val cache = caches.getOrPut(topicName) { createCache(topicName, schema.example) }
+            TopicGenerator(cache, schema, 1.0 / localConfig.frequency, now)
+        }
+        logger.info("Generating {} records per second for {} topics",
+            localConfig.frequency, localConfig.numberOfTopics)
+
+        val currentGeneration = ++generation
+        handler.repeatWhile(localConfig.burstInterval) {
+            if (currentGeneration != generation) {
+                false
+            } else {
+                generateRecords(localConfig.clockJitter / 1000.0)
+                true
+            }
+        }
+    }
+
+    /** Generate all records with a time up to now. */
+    private fun generateRecords(jitter: Double) {
+        val now = currentTime
+        val random = ThreadLocalRandom.current()
+        generators.forEach { generator ->
+            if (now - generator.nextTime > MAX_BACKLOG_SECONDS) {
+                logger.warn("Synthetic records of {} could not be generated in time, skipping {} seconds",
+                    generator.cache.topic.name, (now - generator.nextTime).toLong())
+                generator.nextTime = now
+            }
+            while (generator.nextTime <= now) {
+                val time = if (jitter > 0.0) {
+                    generator.nextTime + random.nextGaussian() * jitter
+                } else generator.nextTime
+                send(generator.cache, generator.schema.generate(time, now))
+                generator.nextTime += generator.interval
+            }
+        }
+    }
+
+    override fun onClose() {
+        handler.stop {
+            generation++
+            generators = emptyList()
+        }
+    }
+
+    private class TopicGenerator(
+        val cache: DataCache<ObservationKey, SpecificRecord>,
+        val schema: SyntheticSchema,
+        /** Time between records in seconds. */
+        val interval: Double,
+        /** Time of the next record in seconds since the Unix Epoch. */
+        var nextTime: Double,
+    )
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(SyntheticManager::class.java)
+
+        private const val MAX_BACKLOG_SECONDS = 60.0
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarbase.passive.synthetic
+
+import org.radarbase.android.BuildConfig
+import org.radarbase.android.RadarService
+import org.radarbase.android.source.BaseSourceState
+import org.radarbase.android.source.SourceProvider
+
+open class SyntheticProvider(radarService: RadarService) : SourceProvider<BaseSourceState>(radarService) {
+    override val serviceClass: Class<SyntheticService> = SyntheticService::class.java
+
+    override val pluginNames = listOf(
+            "synthetic",
+            "synthetic_load",
+            ".synthetic.SyntheticProvider",
+            "org.radarbase.passive.synthetic.SyntheticProvider")
+
+    override val description: String
+        get() = radarService.getString(R.string.synthetic_description)
+
+    override val displayName: String
+        get() = radarService.getString(R.string.syntheticServiceDisplayName)
+
+    override val permissionsNeeded: List<String> = emptyList()
+
+    override val isDisplayable: Boolean = false
+
+    override val sourceProducer: String = "RADAR"
+
+    override val sourceModel: String = "SYNTHETIC"
+
+    override val version: String = BuildConfig.VERSION_NAME
+}
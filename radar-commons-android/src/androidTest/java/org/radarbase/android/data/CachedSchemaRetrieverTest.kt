@@ -0,0 +1,75 @@
+package org.radarbase.android.data
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.apache.avro.Schema
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.radarbase.config.ServerConfig
+import org.radarbase.producer.rest.ParsedSchemaMetadata
+import java.util.concurrent.TimeUnit
+
+@RunWith(AndroidJUnit4::class)
+class CachedSchemaRetrieverTest {
+    private lateinit var context: Context
+    private lateinit var server: MockWebServer
+    private val schema = Schema.Parser().parse(
+        """{"type":"record","name":"Test","namespace":"org.radarbase.test","fields":[{"name":"a","type":"int"}]}"""
+    )
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        SchemaIdCache(context).clear()
+        server = MockWebServer().apply { start() }
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    @Test
+    fun usesPersistedIdWithoutRegistry() {
+        val idCache = SchemaIdCache(context)
+        val registryUrl = server.url("/").toString()
+        idCache.put(registryUrl, "test-value", ParsedSchemaMetadata(3, 2, schema))
+
+        val retriever = CachedSchemaRetriever(ServerConfig(registryUrl), 30, 7200L, idCache)
+        val metadata = retriever.getOrSetSchemaMetadata("test", true, schema, -1)
+        assertEquals(3, metadata.id)
+        assertEquals(2, metadata.version)
+        assertEquals(0, server.requestCount)
+    }
+
+    @Test
+    fun revalidatesWithRegistry() {
+        val idCache = SchemaIdCache(context, revalidateAge = 0L)
+        val registryUrl = server.url("/").toString()
+        idCache.put(registryUrl, "test-value", ParsedSchemaMetadata(3, 2, schema))
+        server.enqueue(MockResponse().setBody("""{"id":5}"""))
+
+        val retriever = CachedSchemaRetriever(ServerConfig(registryUrl), 30, 7200L, idCache)
+        // the stale entry is still used while it is revalidated
+        assertEquals(3, retriever.getOrSetSchemaMetadata("test", true, schema, -1).id)
+
+        val request = server.takeRequest(5, TimeUnit.SECONDS)
+        assertNotNull(request)
+        assertEquals("/subjects/test-value/versions", request!!.path)
+
+        val deadline = System.currentTimeMillis() + 5_000L
+        while (idCache.get(registryUrl, "test-value", schema)?.id != 5
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L)
+        }
+        assertEquals(5, idCache.get(registryUrl, "test-value", schema)?.id)
+        assertEquals(5, retriever.getOrSetSchemaMetadata("test", true, schema, -1).id)
+    }
+}
@@ -0,0 +1,76 @@
+package org.radarbase.android.data
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.apache.avro.Schema
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.radarbase.producer.rest.ParsedSchemaMetadata
+
+@RunWith(AndroidJUnit4::class)
+class SchemaIdCacheTest {
+    private lateinit var context: Context
+    private val schema = Schema.Parser().parse(
+        """{"type":"record","name":"Test","namespace":"org.radarbase.test","fields":[{"name":"a","type":"int"}]}"""
+    )
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        SchemaIdCache(context).clear()
+    }
+
+    @Test
+    fun storeAndGet() {
+        val cache = SchemaIdCache(context)
+        assertNull(cache.get(REGISTRY_A, SUBJECT, schema))
+        cache.put(REGISTRY_A, SUBJECT, ParsedSchemaMetadata(3, 2, schema))
+
+        val entry = cache.get(REGISTRY_A, SUBJECT, schema)
+        assertNotNull(entry)
+        assertEquals(3, entry!!.id)
+        assertEquals(2, entry.version)
+        assertFalse(cache.needsRevalidation(entry))
+    }
+
+    @Test
+    fun isolatedPerRegistryUrl() {
+        val cache = SchemaIdCache(context)
+        cache.put(REGISTRY_A, SUBJECT, ParsedSchemaMetadata(3, 2, schema))
+        cache.put(REGISTRY_B, SUBJECT, ParsedSchemaMetadata(7, null, schema))
+
+        assertEquals(3, cache.get(REGISTRY_A, SUBJECT, schema)?.id)
+        assertEquals(7, cache.get(REGISTRY_B, SUBJECT, schema)?.id)
+        assertNull(cache.get(REGISTRY_B, SUBJECT, schema)?.version)
+        assertNull(cache.get("http://localhost:8083/", SUBJECT, schema))
+    }
+
+    @Test
+    fun expiry() {
+        val cache = SchemaIdCache(context, maxAge = 50L, revalidateAge = 0L)
+        cache.put(REGISTRY_A, SUBJECT, ParsedSchemaMetadata(3, 2, schema))
+        val entry = cache.get(REGISTRY_A, SUBJECT, schema)
+        assertNotNull(entry)
+        assertTrue(cache.needsRevalidation(entry!!))
+
+        Thread.sleep(100L)
+        assertTrue(cache.isExpired(entry))
+        assertNull(cache.get(REGISTRY_A, SUBJECT, schema))
+
+        cache.prune()
+        assertNull(SchemaIdCache(context).get(REGISTRY_A, SUBJECT, schema))
+    }
+
+    companion object {
+        private const val REGISTRY_A = "http://localhost:8081/"
+        private const val REGISTRY_B = "http://localhost:8082/"
+        private const val SUBJECT = "test-value"
+    }
+}
@@ -0,0 +1,312 @@
+package org.radarbase.android.kafka
+
+import android.content.Context
+import android.os.Process
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.apache.avro.specific.SpecificRecord
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.radarbase.android.data.CacheStore
+import org.radarbase.android.data.DataCache
+import org.radarbase.android.data.TableDataHandler
+import org.radarbase.android.data.UploadDecision
+import org.radarbase.android.data.UploadPolicy
+import org.radarbase.config.ServerConfig
+import org.radarbase.producer.rest.SchemaRetriever
+import org.radarbase.topic.AvroTopic
+import org.radarcns.kafka.ObservationKey
+import org.radarcns.passive.bittium.BittiumFarosEcg
+import org.radarcns.passive.phone.BatteryStatus
+import org.radarcns.passive.phone.LocationProvider
+import org.radarcns.passive.phone.PhoneAcceleration
+import org.radarcns.passive.phone.PhoneBatteryLevel
+import org.radarcns.passive.phone.PhoneRelativeLocation
+import org.slf4j.LoggerFactory
+import org.slf4j.impl.HandroidLoggerAdapter
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * End-to-end upload benchmark. It pre-fills the caches of a [TableDataHandler] with a realistic
+ * topic mix, lets the [KafkaDataSubmitter] upload them to a local Kafka REST proxy and schema
+ * registry, and logs records/s, bytes/s and CPU time per record.
+ *
+ * The load is configured with instrumentation arguments, e.g.
+ * `-e uploadBenchmarkSeconds 600 -e uploadBenchmarkLatencyMs 100 -e uploadBenchmarkBandwidth 250000`:
+ * - `uploadBenchmarkSeconds`: seconds of recorded sensor data to upload (default 120).
+ * - `uploadBenchmarkLatencyMs`: server response latency in milliseconds (default 0).
+ * - `uploadBenchmarkBandwidth`: request and response bandwidth in bytes per second, or 0 for
+ *   no limit (default 0).
+ *
+ * CPU time is that of the whole test process, so it includes the mock servers.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4::class)
+class UploadBenchmarkTest {
+    private lateinit var context: Context
+    private lateinit var kafkaServer: MockWebServer
+    private lateinit var registryServer: MockWebServer
+    private lateinit var kafkaDispatcher: KafkaRestDispatcher
+    private var dataHandler: TableDataHandler? = null
+
+    private var recordedSeconds = 120L
+    private var latency = 0L
+    private var bandwidth = 0L
+
+    @Before
+    fun setUp() {
+        HandroidLoggerAdapter.APP_NAME = "UploadBenchmark"
+        context = ApplicationProvider.getApplicationContext()
+        InstrumentationRegistry.getArguments().apply {
+            getString("uploadBenchmarkSeconds")?.toLongOrNull()?.let { recordedSeconds = it }
+            getString("uploadBenchmarkLatencyMs")?.toLongOrNull()?.let { latency = it }
+            getString("uploadBenchmarkBandwidth")?.toLongOrNull()?.let { bandwidth = it }
+        }
+        kafkaDispatcher = KafkaRestDispatcher(latency, bandwidth)
+        kafkaServer = MockWebServer().apply {
+            dispatcher = kafkaDispatcher
+            start()
+        }
+        registryServer = MockWebServer().apply {
+            dispatcher = SchemaRegistryDispatcher()
+            start()
+        }
+    }
+
+    @After
+    fun tearDown() {
+        dataHandler?.close()
+        kafkaServer.shutdown()
+        registryServer.shutdown()
+        benchmarkTopics.forEach { topic ->
+            File(context.filesDir, "topics/$topic").deleteRecursively()
+            File(context.cacheDir, topic).deleteRecursively()
+        }
+    }
+
+    @Test(timeout = 600_000L)
+    fun uploadBinary() = runBenchmark(hasBinaryContent = true)
+
+    @Test(timeout = 600_000L)
+    fun uploadJson() = runBenchmark(hasBinaryContent = false)
+
+    private fun runBenchmark(hasBinaryContent: Boolean) {
+        val handler = TableDataHandler(context, CacheStore()).also { dataHandler = it }
+        val key = ObservationKey("benchmark", "user", "source")
+        val numberOfRecords = fillCaches(handler, key)
+
+        val cpuStart = Process.getElapsedCpuTime()
+        handler.handler {
+            uploadPolicy = UploadPolicy { _, _ -> UploadDecision(isEnabled = true, reason = "benchmark") }
+            rest {
+                kafkaConfig = ServerConfig(kafkaServer.url("/").toUrl())
+                schemaRetriever = SchemaRetriever(ServerConfig(registryServer.url("/").toUrl()), 30L)
+                this.hasBinaryContent = hasBinaryContent
+            }
+            submitter {
+                userId = key.getUserId()
+                projectId = key.getProjectId()
+                uploadRate = 1L
+            }
+        }
+
+        while (handler.caches.any { it.numberOfRecords > 0 }) {
+            Thread.sleep(10L)
+        }
+        val cpuMillis = Process.getElapsedCpuTime() - cpuStart
+        val seconds = kafkaDispatcher.uploadNanos / 1_000_000_000.0
+
+        logger.info("Upload benchmark ({} content, latency {} ms, bandwidth {} B/s): {} records in {} requests, {} bytes in {} s;" +
+                " {} records/s, {} bytes/s, {} µs CPU per record",
+            if (hasBinaryContent) "binary" else "JSON", latency, bandwidth,
+            numberOfRecords, kafkaDispatcher.requests.get(), kafkaDispatcher.bytes.get(),
+            "%.2f".format(seconds),
+            "%.0f".format(numberOfRecords / seconds),
+            "%.0f".format(kafkaDispatcher.bytes.get() / seconds),
+            "%.1f".format(cpuMillis * 1000.0 / numberOfRecords))
+
+        assertEquals(0L, handler.caches.sumOf { it.numberOfRecords })
+    }
+
+    /**
+     * Fill the caches with [recordedSeconds] of data of a phone accelerometer, an ECG patch,
+     * the battery level and the location, and wait until the data is stored.
+     * @return total number of records.
+     */
+    private fun fillCaches(handler: TableDataHandler, key: ObservationKey): Long {
+        val start = System.currentTimeMillis() / 1000.0 - recordedSeconds
+        val loads = listOf(
+            topicLoad(handler, ACCELERATION_TOPIC, 50.0) { time ->
+                PhoneAcceleration(time, time, 0.01f, -0.02f, 9.81f)
+            },
+            topicLoad(handler, ECG_TOPIC, 125.0) { time ->
+                BittiumFarosEcg(time, time, 0.35f, -0.12f, 0.08f)
+            },
+            topicLoad(handler, BATTERY_TOPIC, 1.0 / 60.0) { time ->
+                PhoneBatteryLevel(time, time, 0.8f, false, BatteryStatus.DISCHARGING)
+            },
+            topicLoad(handler, LOCATION_TOPIC, 1.0 / 300.0) { time ->
+                PhoneRelativeLocation(time, time, 1, LocationProvider.GPS,
+                    0.0012, -0.0034, 12.5f, 8.0f, 1.2f, 90.0f)
+            },
+        )
+
+        loads.forEach { it.fill(key, start) }
+        val expected = loads.sumOf { it.count }
+        while (handler.caches.sumOf { it.numberOfRecords } < expected) {
+            Thread.sleep(10L)
+        }
+        return expected
+    }
+
+    private fun <V: SpecificRecord> topicLoad(
+        handler: TableDataHandler,
+        name: String,
+        frequency: Double,
+        generate: (Double) -> V,
+    ): TopicLoad<V> {
+        val example = generate(0.0)
+        @Suppress("UNCHECKED_CAST")
+        val topic = AvroTopic(name,
+            ObservationKey.getClassSchema(), example.schema,
+            ObservationKey::class.java, example.javaClass as Class<V>)
+        return TopicLoad(
+            cache = handler.registerCache(topic, null),
+            count = (recordedSeconds * frequency).toLong().coerceAtLeast(1L),
+            interval = 1.0 / frequency,
+            generate = generate,
+        )
+    }
+
+    private class TopicLoad<V: SpecificRecord>(
+        val cache: DataCache<ObservationKey, V>,
+        val count: Long,
+        val interval: Double,
+        val generate: (Double) -> V,
+    ) {
+        fun fill(key: ObservationKey, start: Double) {
+            for (i in 0 until count) {
+                cache.addMeasurement(key, generate(start + i * interval))
+            }
+            cache.triggerFlush()
+        }
+    }
+
+    /**
+     * Kafka REST proxy that accepts all records. Responses are delayed by [latency] milliseconds
+     * and request and response bodies are throttled to [bandwidth] bytes per second.
+     */
+    private class KafkaRestDispatcher(
+        private val latency: Long,
+        private val bandwidth: Long,
+    ) : Dispatcher() {
+        val requests = AtomicInteger(0)
+        val bytes = AtomicLong(0L)
+        private val firstRequest = AtomicLong(0L)
+        @Volatile
+        private var lastRequest = 0L
+
+        /** Time between the start of the first upload request and the end of the last one. */
+        val uploadNanos: Long
+            get() = lastRequest - firstRequest.get()
+
+        private fun response(): MockResponse = MockResponse().apply {
+            if (latency > 0L) {
+                setHeadersDelay(latency, TimeUnit.MILLISECONDS)
+            }
+            if (bandwidth > 0L) {
+                throttleBody((bandwidth / 10L).coerceAtLeast(1L), 100L, TimeUnit.MILLISECONDS)
+            }
+        }
+
+        /** Used by the server to throttle reading the request body. */
+        override fun peek(): MockResponse = response()
+
+        override fun dispatch(request: RecordedRequest): MockResponse {
+            val path = request.path ?: return MockResponse().setResponseCode(404)
+            if (request.method != "POST" || !path.startsWith("/topics/")) {
+                // connection check
+                return MockResponse()
+            }
+            val now = System.nanoTime()
+            firstRequest.compareAndSet(0L, now - TimeUnit.MILLISECONDS.toNanos(latency))
+            requests.incrementAndGet()
+            bytes.addAndGet(request.bodySize)
+            lastRequest = now
+            return response()
+                .setHeader("Content-Type", "application/vnd.kafka.v2+json")
+                .setBody("{\"offsets\":[{\"partition\":0,\"offset\":0}],\"key_schema_id\":1,\"value_schema_id\":2}")
+        }
+    }
+
+    /** Schema registry that registers any schema under a new ID. */
+    private class SchemaRegistryDispatcher : Dispatcher() {
+        private val nextId = AtomicInteger(1)
+        private val subjects: MutableMap<String, Pair<Int, String>> = ConcurrentHashMap()
+        private val schemas: MutableMap<Int, String> = ConcurrentHashMap()
+
+        override fun dispatch(request: RecordedRequest): MockResponse {
+            val parts = request.requestUrl?.pathSegments ?: return notFound()
+            return when {
+                parts.size == 3 && parts[0] == "schemas" && parts[1] == "ids" ->
+                    schemas[parts[2].toIntOrNull()]
+                        ?.let { json(JSONObject().put("schema", it)) }
+                        ?: notFound()
+                parts.size == 3 && parts[0] == "subjects" && parts[2] == "versions" && request.method == "POST" -> {
+                    val schema = JSONObject(request.body.readUtf8()).getString("schema")
+                    val (id, _) = subjects.computeIfAbsent(parts[1]) {
+                        val id = nextId.getAndIncrement()
+                        schemas[id] = schema
+                        Pair(id, schema)
+                    }
+                    json(JSONObject().put("id", id))
+                }
+                parts.size >= 2 && parts[0] == "subjects" ->
+                    subjects[parts[1]]
+                        ?.let { (id, schema) ->
+                            json(JSONObject()
+                                .put("subject", parts[1])
+                                .put("version", 1)
+                                .put("id", id)
+                                .put("schema", schema))
+                        }
+                        ?: notFound()
+                else -> notFound()
+            }
+        }
+
+        private fun json(body: JSONObject) = MockResponse()
+            .setHeader("Content-Type", "application/vnd.schemaregistry.v1+json")
+            .setBody(body.toString())
+
+        private fun notFound() = MockResponse()
+            .setResponseCode(404)
+            .setHeader("Content-Type", "application/vnd.schemaregistry.v1+json")
+            .setBody("{\"error_code\":40401,\"message\":\"Subject not found.\"}")
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(UploadBenchmarkTest::class.java)
+
+        private const val ACCELERATION_TOPIC = "benchmark_android_phone_acceleration"
+        private const val ECG_TOPIC = "benchmark_android_bittium_faros_ecg"
+        private const val BATTERY_TOPIC = "benchmark_android_phone_battery_level"
+        private const val LOCATION_TOPIC = "benchmark_android_phone_relative_location"
+
+        private val benchmarkTopics = listOf(ACCELERATION_TOPIC, ECG_TOPIC, BATTERY_TOPIC, LOCATION_TOPIC)
+    }
+}
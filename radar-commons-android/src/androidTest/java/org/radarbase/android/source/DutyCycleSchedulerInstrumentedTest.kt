@@ -0,0 +1,76 @@
+package org.radarbase.android.source
+
+import android.os.Process
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.radarbase.android.util.SafeHandler
+import java.io.Closeable
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+@RunWith(AndroidJUnit4::class)
+class DutyCycleSchedulerInstrumentedTest {
+    private val handler = SafeHandler("DutyCycleSchedulerTest", Process.THREAD_PRIORITY_DEFAULT)
+    private val events = LinkedBlockingQueue<String>()
+    @Volatile
+    private var triggerWindow: (() -> Unit)? = null
+    @Volatile
+    private var timerPeriod = 0L
+
+    private val scheduler = DutyCycleScheduler(
+        "test",
+        handler,
+        onStart = { events.add("start") },
+        onStop = { events.add("stop") },
+        startTimer = { period, trigger ->
+            timerPeriod = period
+            triggerWindow = trigger
+            Closeable { triggerWindow = null }
+        },
+    )
+
+    @After
+    fun tearDown() {
+        scheduler.close()
+        handler.stop()
+    }
+
+    private fun nextEvent(): String? = events.poll(5, TimeUnit.SECONDS)
+
+    @Test
+    fun configureBeforeHandlerStarts() {
+        scheduler.configure(DutyCycleScheduler.Configuration(sampleDuration = 100L, period = 60_000L))
+        handler.start()
+        scheduler.start()
+        handler.await { }
+
+        assertEquals(60_000L, timerPeriod)
+        assertFalse(scheduler.isSampling)
+
+        val trigger = triggerWindow
+        assertNotNull(trigger)
+        trigger!!.invoke()
+        assertEquals("start", nextEvent())
+        assertEquals("stop", nextEvent())
+        assertFalse(scheduler.isSampling)
+    }
+
+    @Test
+    fun continuousWhenDisabled() {
+        handler.start()
+        scheduler.start()
+        assertEquals("start", nextEvent())
+        assertTrue(scheduler.isSampling)
+
+        scheduler.configure(DutyCycleScheduler.Configuration(sampleDuration = 100L, period = 60_000L))
+        assertEquals("stop", nextEvent())
+        handler.await { }
+        assertEquals(60_000L, timerPeriod)
+    }
+}
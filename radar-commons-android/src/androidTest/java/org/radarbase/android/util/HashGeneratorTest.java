@@ -34,6 +34,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test that all hashes are unique for different values and the same for the same values.
@@ -135,4 +136,14 @@ public class HashGeneratorTest {
         }
     }
 
+    @Test
+    public void createHashByteBufferCached() {
+        String v = UUID.randomUUID().toString();
+        ByteBuffer b1 = hasher1.createHashByteBuffer(v);
+        b1.get();
+        ByteBuffer b2 = hasher1.createHashByteBuffer(v);
+        assertTrue(b2.isReadOnly());
+        assertEquals(0, b2.position());
+        assertArrayEquals(hasher1a.createHash(v), hasher1.createHash(v));
+    }
 }
@@ -0,0 +1,47 @@
+package org.radarbase.android.util
+
+import android.os.Process
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+@RunWith(AndroidJUnit4::class)
+class SafeHandlerInstrumentedTest {
+    // with at most two pooled threads per priority, two of three handlers share a thread
+    private val handlers = List(3) { i ->
+        SafeHandler("SafeHandlerTest-$i", Process.THREAD_PRIORITY_LOWEST, isPooled = true)
+    }
+
+    @After
+    fun tearDown() {
+        handlers.forEach { it.stop() }
+    }
+
+    @Test
+    fun computeFromSiblingRunsQueuedTasksFirst() {
+        handlers.forEach { it.start() }
+        val (caller, target) = handlers.indices
+            .flatMap { i -> handlers.indices.filter { it > i }.map { handlers[i] to handlers[it] } }
+            .first { (a, b) -> a.handler!!.looper === b.handler!!.looper }
+
+        val order = mutableListOf<String>()
+        val result = caller.compute {
+            target.execute { order += "queued" }
+            target.compute {
+                order += "computed"
+                order.toList()
+            }
+        }
+        assertEquals(listOf("queued", "computed"), result)
+
+        // the queued task does not run a second time
+        val latch = CountDownLatch(1)
+        target.execute { latch.countDown() }
+        latch.await(5, TimeUnit.SECONDS)
+        assertEquals(listOf("queued", "computed"), target.compute { order.toList() })
+    }
+}
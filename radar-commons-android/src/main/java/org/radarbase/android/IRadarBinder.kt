@@ -20,6 +20,8 @@ import android.os.IBinder
 import org.apache.avro.specific.SpecificRecord
 import org.radarbase.android.data.DataHandler
 import org.radarbase.android.kafka.ServerStatusListener
+import org.radarbase.android.metrics.MetricsSnapshot
+import org.radarbase.android.metrics.PipelineMetrics
 import org.radarbase.android.source.PluginMetadataStore
 import org.radarbase.android.source.SourceProvider
 import org.radarbase.android.source.SourceServiceConnection
@@ -37,6 +39,10 @@ interface IRadarBinder : IBinder {
 
     val pluginMetadataStore: PluginMetadataStore
 
+    /** Current data pipeline metrics. */
+    val pipelineMetrics: MetricsSnapshot
+        get() = PipelineMetrics.snapshot()
+
     fun setAllowedSourceIds(connection: SourceServiceConnection<*>, allowedIds: Collection<String>)
 
     fun startScanning()
@@ -86,7 +86,7 @@ abstract class MainActivity : AppCompatActivity() {
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         configuration = radarConfig
-        mHandler = SafeHandler.getInstance("Main background handler", Process.THREAD_PRIORITY_BACKGROUND)
+        mHandler = SafeHandler.getInstance("Main background handler", Process.THREAD_PRIORITY_BACKGROUND, isPooled = true)
         permissionHandler = PermissionHandler(this, mHandler, requestPermissionTimeoutMs)
 
         savedInstanceState?.also { permissionHandler.restoreInstanceState(it) }
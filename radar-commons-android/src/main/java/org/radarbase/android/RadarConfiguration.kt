@@ -96,10 +96,16 @@ interface RadarConfiguration {
         const val PLUGINS = "plugins"
         const val KAFKA_UPLOAD_MINIMUM_BATTERY_LEVEL = "kafka_upload_minimum_battery_level"
         const val KAFKA_UPLOAD_REDUCED_BATTERY_LEVEL = "kafka_upload_reduced_battery_level"
+        const val KAFKA_UPLOAD_REDUCED_MULTIPLIER = "kafka_upload_reduced_multiplier"
+        const val KAFKA_UPLOAD_BATTERY_MULTIPLIER = "kafka_upload_battery_multiplier"
+        const val KAFKA_UPLOAD_DRAIN_BATCH_MULTIPLIER = "kafka_upload_drain_multiplier"
+        const val KAFKA_UPLOAD_METERED_BACKLOG_LIMIT = "kafka_upload_metered_backlog_limit"
         const val MAX_CACHE_SIZE = "cache_max_size_bytes"
         const val SEND_ONLY_WITH_WIFI = "send_only_with_wifi"
         const val SEND_BINARY_CONTENT = "send_binary_content"
         const val SEND_WITH_COMPRESSION = "send_with_compression"
+        const val SEND_WITH_ADAPTIVE_COMPRESSION = "send_with_adaptive_compression"
+        const val SEND_WITH_STREAMING_JSON = "send_with_streaming_json"
         const val UNSAFE_KAFKA_CONNECTION = "unsafe_kafka_connection"
         const val OAUTH2_AUTHORIZE_URL = "oauth2_authorize_url"
         const val OAUTH2_TOKEN_URL = "oauth2_token_url"
@@ -107,6 +113,9 @@ interface RadarConfiguration {
         const val OAUTH2_CLIENT_ID = "oauth2_client_id"
         const val OAUTH2_CLIENT_SECRET = "oauth2_client_secret"
         const val ENABLE_BLUETOOTH_REQUESTS = "enable_bluetooth_requests"
+        const val AUTH_REFRESH_LIFETIME_FRACTION_KEY = "auth_refresh_lifetime_fraction"
+        const val HANDLER_INSTRUMENTATION_KEY = "handler_instrumentation"
+        const val HANDLER_SLOW_TASK_THRESHOLD_KEY = "handler_slow_task_threshold_ms"
 
         const val SEND_ONLY_WITH_WIFI_DEFAULT = true
         const val SEND_OVER_DATA_HIGH_PRIORITY_DEFAULT = true
@@ -51,6 +51,7 @@ import org.radarbase.android.data.CacheStore
 import org.radarbase.android.data.DataHandler
 import org.radarbase.android.data.TableDataHandler
 import org.radarbase.android.kafka.ServerStatusListener
+import org.radarbase.android.metrics.PipelineMetrics
 import org.radarbase.android.source.*
 import org.radarbase.android.source.SourceService.Companion.SERVER_RECORDS_SENT_NUMBER
 import org.radarbase.android.source.SourceService.Companion.SERVER_RECORDS_SENT_TOPIC
@@ -61,6 +62,8 @@ import org.radarbase.android.util.NotificationHandler.Companion.NOTIFICATION_CHA
 import org.radarbase.android.util.PermissionHandler.Companion.isPermissionGranted
 import org.radarcns.kafka.ObservationKey
 import org.slf4j.LoggerFactory
+import java.io.FileDescriptor
+import java.io.PrintWriter
 import java.util.*
 import java.util.concurrent.atomic.AtomicBoolean
 
@@ -95,7 +98,19 @@ abstract class RadarService : LifecycleService(), ServerStatusListener, LoginLis
 
     private val isMakingAuthRequest = AtomicBoolean(false)
 
-    abstract val plugins: List<SourceProvider<*>>
+    /**
+     * All plugins that the app supports. Prefer overriding [pluginFactories] instead, so that
+     * only configured plugins are created.
+     */
+    open val plugins: List<SourceProvider<*>>
+        get() = emptyList()
+
+    /**
+     * Factories of all plugins that the app supports, by plugin name. Only the plugins that are
+     * configured are created. By default, this wraps [plugins].
+     */
+    open val pluginFactories: List<SourceProviderFactory>
+        get() = plugins.map { SourceProviderFactory.of(it) }
 
     /** Connections.  */
     private var mConnections: List<SourceProvider<*>> = emptyList()
@@ -155,7 +170,7 @@ abstract class RadarService : LifecycleService(), ServerStatusListener, LoginLis
         mainHandler = Handler(Looper.getMainLooper())
 
         configuration = radarConfig
-        providerLoader = SourceProviderLoader(plugins)
+        providerLoader = SourceProviderLoader(pluginFactories)
         broadcaster = LocalBroadcastManager.getInstance(this)
 
         broadcaster.run {
@@ -226,6 +241,23 @@ abstract class RadarService : LifecycleService(), ServerStatusListener, LoginLis
         return RadarBinder()
     }
 
+    /**
+     * Print pipeline metrics and handler instrumentation, for example with
+     * `adb shell dumpsys activity service <package>/<RadarService class>`.
+     */
+    override fun dump(fd: FileDescriptor?, writer: PrintWriter, args: Array<out String>?) {
+        super.dump(fd, writer, args)
+        val metrics = PipelineMetrics.snapshot()
+        writer.println("Pipeline metrics:")
+        metrics.counters.toSortedMap().forEach { (name, count) -> writer.println("  $name: $count") }
+        metrics.gauges.toSortedMap().forEach { (name, value) -> writer.println("  $name: $value") }
+        metrics.histograms.toSortedMap().forEach { (name, histogram) ->
+            writer.println("  $name: n=${histogram.count}, mean=${histogram.mean}, p50=${histogram.percentile(0.5)}, p99=${histogram.percentile(0.99)}, max=${histogram.max}")
+        }
+        writer.println("Handler instrumentation:")
+        writer.print(HandlerInstrumentation.dump())
+    }
+
     override fun onStartCommand(intent: Intent?, flags: Int, startId: Int): Int {
         super.onStartCommand(intent, flags, startId)
         configure(configuration.latestConfig)
@@ -344,6 +376,13 @@ abstract class RadarService : LifecycleService(), ServerStatusListener, LoginLis
 
     @CallSuper
     protected open fun doConfigure(config: SingleRadarConfiguration) {
+        HandlerInstrumentation.configure(
+            config.getString(RadarConfiguration.HANDLER_INSTRUMENTATION_KEY, "")
+                .split(',')
+                .mapNotNullTo(HashSet(), String::takeTrimmedIfNotEmpty),
+            config.getLong(RadarConfiguration.HANDLER_SLOW_TASK_THRESHOLD_KEY, 500L),
+        )
+
         synchronized(this) {
             dataHandler ?: TableDataHandler(this, cacheStore)
                     .also {
@@ -601,9 +640,15 @@ abstract class RadarService : LifecycleService(), ServerStatusListener, LoginLis
         isMakingAuthRequest.set(false)
         mHandler.execute {
             updateProviders(authState, configuration.latestConfig)
+            dataHandler?.resumeUploads()
         }
     }
 
+    override fun loginRefreshing(authState: AppAuthState) {
+        // released in loginSucceeded or loginFailed, or after the timeout
+        dataHandler?.holdUploads(UPLOAD_HOLD_TIMEOUT)
+    }
+
     private fun removeProviders(sourceProviders: Set<SourceProvider<*>>) {
         if (sourceProviders.isEmpty()) {
             return
@@ -685,6 +730,7 @@ abstract class RadarService : LifecycleService(), ServerStatusListener, LoginLis
 
     override fun loginFailed(manager: LoginManager?, ex: Exception?) {
         isMakingAuthRequest.set(false)
+        dataHandler?.resumeUploads()
     }
 
     protected inner class RadarBinder : Binder(), IRadarBinder {
@@ -751,6 +797,9 @@ abstract class RadarService : LifecycleService(), ServerStatusListener, LoginLis
 
         const val ACTION_PROVIDERS_UPDATED = "$RADAR_PACKAGE.ACTION_PROVIDERS_UPDATED"
 
+        /** Maximum time in milliseconds to hold uploads while the authentication is refreshed. */
+        private const val UPLOAD_HOLD_TIMEOUT = 30_000L
+
         const val ACTION_BLUETOOTH_NEEDED_CHANGED = "$RADAR_PACKAGE.BLUETOOTH_NEEDED_CHANGED"
         const val BLUETOOTH_NEEDED = 1
         const val BLUETOOTH_NOT_NEEDED = 2
@@ -74,6 +74,33 @@ class AppAuthState private constructor(builder: Builder) {
     fun isValidFor(time: Long, unit: TimeUnit) = isPrivacyPolicyAccepted
             && expiration - unit.toMillis(time) > System.currentTimeMillis()
 
+    /**
+     * Time in milliseconds since the Unix Epoch that the token was issued, if the token is a JWT
+     * with an `iat` claim.
+     */
+    val issuedAt: Long? by lazy {
+        val jwtToken = token ?: return@lazy null
+        try {
+            Jwt.parse(jwtToken).body
+                .optLong("iat", -1L)
+                .takeIf { it > 0L }
+                ?.let { TimeUnit.SECONDS.toMillis(it) }
+        } catch (ex: IllegalArgumentException) {
+            null
+        } catch (ex: JSONException) {
+            null
+        }
+    }
+
+    /**
+     * Time in milliseconds since the Unix Epoch at which [lifetimeFraction] of the token lifetime
+     * has passed. If the token issue time is not known, [receivedAt] is used instead.
+     */
+    fun refreshTime(lifetimeFraction: Float, receivedAt: Long): Long {
+        val start = issuedAt?.takeIf { it < expiration } ?: receivedAt
+        return start + ((expiration - start) * lifetimeFraction).toLong()
+    }
+
     fun isAuthorizedForSource(sourceId: String?): Boolean {
         return !this.needsRegisteredSources
                 || (sourceId != null && attributes[SOURCE_IDS_PROPERTY]?.let { sourceId in it } == true)
@@ -11,6 +11,7 @@ import androidx.localbroadcastmanager.content.LocalBroadcastManager
 import org.radarbase.android.RadarApplication
 import org.radarbase.android.RadarApplication.Companion.radarConfig
 import org.radarbase.android.RadarConfiguration
+import org.radarbase.android.RadarConfiguration.Companion.AUTH_REFRESH_LIFETIME_FRACTION_KEY
 import org.radarbase.android.auth.LoginActivity.Companion.ACTION_LOGIN_SUCCESS
 import org.radarbase.android.util.DelayedRetry
 import org.radarbase.android.util.NetworkConnectedReceiver
@@ -19,6 +20,8 @@ import org.radarbase.android.util.send
 import org.radarbase.producer.AuthenticationException
 import org.slf4j.LoggerFactory
 import java.net.ConnectException
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
 import java.util.concurrent.TimeUnit
 
 @Keep
@@ -33,8 +36,18 @@ abstract class AuthService : Service(), LoginListener {
     private var configRegistration: LoginListenerRegistration? = null
     private var refreshDelay = DelayedRetry(RETRY_MIN_DELAY, RETRY_MAX_DELAY)
     private var isConnected: Boolean = false
-    private var sourceRegistrationStarted: Boolean = false
-    private val successHandlers: MutableList<() -> Unit> = mutableListOf()
+    private val pendingRegistrations: MutableList<PendingRegistration> = mutableListOf()
+    private var registrationPass: SafeHandler.HandlerFuture? = null
+    private val registrationExecutor = ThreadPoolExecutor(
+        MAX_CONCURRENT_REGISTRATIONS,
+        MAX_CONCURRENT_REGISTRATIONS,
+        30L,
+        TimeUnit.SECONDS,
+        LinkedBlockingQueue(),
+    ).apply { allowCoreThreadTimeOut(true) }
+    lateinit var registrationCache: SourceRegistrationCache
+    private var scheduledRefresh: SafeHandler.HandlerFuture? = null
+    private var tokenReceivedAt: Long = System.currentTimeMillis()
 
     open val authSerialization: AuthSerialization by lazy {
         SharedPreferencesAuthSerialization(this)
@@ -49,6 +62,7 @@ abstract class AuthService : Service(), LoginListener {
         super.onCreate()
         broadcaster = LocalBroadcastManager.getInstance(this)
         appAuth = authSerialization.load() ?: AppAuthState()
+        registrationCache = SourceRegistrationCache(this)
         config = radarConfig
         config.updateWithAuthState(this, appAuth)
         handler.start()
@@ -59,6 +73,8 @@ abstract class AuthService : Service(), LoginListener {
                     isConnected = state.isConnected
                     if (isConnected && !appAuth.isValidFor(5, TimeUnit.MINUTES)) {
                         refresh()
+                    } else if (isConnected) {
+                        scheduleRefresh()
                     }
                 }
             }
@@ -76,6 +92,45 @@ abstract class AuthService : Service(), LoginListener {
                 config.updateWithAuthState(this@AuthService, appAuth)
             }
         })
+        handler.execute(::scheduleRefresh)
+    }
+
+    /**
+     * Schedule a refresh of the current token once the configured fraction of its lifetime has
+     * passed, so that it is renewed before it expires instead of after uploads start failing.
+     */
+    private fun scheduleRefresh() {
+        scheduledRefresh?.let {
+            it.cancel()
+            scheduledRefresh = null
+        }
+        val lifetimeFraction = config.latestConfig.getFloat(
+            AUTH_REFRESH_LIFETIME_FRACTION_KEY,
+            AUTH_REFRESH_LIFETIME_FRACTION_DEFAULT,
+        )
+        if (!appAuth.isValid || lifetimeFraction <= 0f || lifetimeFraction >= 1f) {
+            return
+        }
+        val delay = (appAuth.refreshTime(lifetimeFraction, tokenReceivedAt) - System.currentTimeMillis())
+            .coerceAtLeast(0L)
+        logger.debug("Scheduling token refresh in {} seconds", delay / 1000L)
+        scheduledRefresh = handler.delay(delay) {
+            scheduledRefresh = null
+            if (isConnected && appAuth.isValid) {
+                val refreshableManagers = relevantManagers.filter { it.isRefreshable(appAuth) }
+                if (refreshableManagers.isEmpty()) {
+                    logger.info("Authentication state cannot be refreshed before it expires")
+                    return@delay
+                }
+                logger.info("Refreshing authentication state before it expires")
+                callListeners {
+                    it.loginListener.loginRefreshing(appAuth)
+                }
+                if (refreshableManagers.none { it.refresh(appAuth) }) {
+                    logger.warn("Failed to start refreshing authentication state before it expires")
+                }
+            }
+        }
     }
 
     /**
@@ -198,7 +253,11 @@ abstract class AuthService : Service(), LoginListener {
             logger.info("Log in succeeded.")
             isConnected = true
             refreshDelay.reset()
+            if (authState.token != appAuth.token) {
+                tokenReceivedAt = System.currentTimeMillis()
+            }
             appAuth = authState
+            scheduleRefresh()
 
             broadcaster.send(ACTION_LOGIN_SUCCESS)
 
@@ -215,6 +274,7 @@ abstract class AuthService : Service(), LoginListener {
             loginManagers.forEach { it.onDestroy() }
             authSerialization.store(appAuth)
         }
+        registrationExecutor.shutdown()
     }
 
     fun update(manager: LoginManager) {
@@ -282,32 +342,106 @@ abstract class AuthService : Service(), LoginListener {
     }
 
     private fun registerSource(source: SourceMetadata, success: (AppAuthState, SourceMetadata) -> Unit, failure: (Exception?) -> Unit) {
+        enqueueRegistration(PendingRegistration(source, isUpdate = false, success, failure))
+    }
+
+    private fun updateSource(source: SourceMetadata, success: (AppAuthState, SourceMetadata) -> Unit, failure: (Exception?) -> Unit) {
+        enqueueRegistration(PendingRegistration(source, isUpdate = true, success, failure))
+    }
+
+    /**
+     * Queue a source registration. Registrations that are requested shortly after each other
+     * are sent to the server concurrently in a single pass.
+     */
+    private fun enqueueRegistration(registration: PendingRegistration) {
         handler.execute {
-            logger.info("Registering source with {}: {}", source.type, source.sourceId)
+            pendingRegistrations += registration
+            if (registrationPass == null) {
+                registrationPass = handler.delay(REGISTRATION_COALESCE_DELAY, ::runRegistrationPass)
+            }
+        }
+    }
+
+    private fun runRegistrationPass() {
+        val registrations = pendingRegistrations.toList()
+        pendingRegistrations.clear()
+        if (registrations.isEmpty()) {
+            registrationPass = null
+            return
+        }
+        logger.info("Registering {} source(s)", registrations.size)
 
-            relevantManagers.any { manager ->
-                manager.registerSource(appAuth, source, { newAppAuth, newSource ->
-                    if (newAppAuth != appAuth) {
-                        appAuth = newAppAuth
+        val authState = appAuth
+        val managers = relevantManagers
+        val successHandlers = mutableListOf<() -> Unit>()
+        var hasNewRegistrations = false
+        var remaining = registrations.size
+
+        registrations.forEach { registration ->
+            val source = registration.source
+            val onSuccess: (AppAuthState, SourceMetadata) -> Unit = { newAppAuth, newSource ->
+                handler.execute {
+                    if (registration.isUpdate) {
+                        registration.success(newAppAuth, newSource)
+                    } else {
+                        if (newAppAuth != appAuth) {
+                            appAuth = appAuth.alter {
+                                val isNewSource = sourceMetadata.none { it.sourceId == newSource.sourceId }
+                                sourceMetadata.removeAll { it.sourceId == newSource.sourceId }
+                                sourceMetadata += newSource
+                                // keep attributes that the login manager changed in this registration
+                                newAppAuth.attributes.forEach { (key, value) ->
+                                    if (authState.attributes[key] != value) attributes[key] = value
+                                }
+                                // the token does not include a new source until it is refreshed
+                                if (isNewSource || newAppAuth.isInvalidated) invalidate()
+                            }
+                            authSerialization.store(appAuth)
+                        }
+                        hasNewRegistrations = true
+                        successHandlers += { registration.success(appAuth, newSource) }
+                    }
+                }
+            }
+            val onFailure: (Exception?) -> Unit = { ex ->
+                handler.execute {
+                    if (!registration.isUpdate) {
+                        appAuth = appAuth.alter {
+                            sourceMetadata.removeAll(source::matches)
+                        }
                         authSerialization.store(appAuth)
                     }
-                    successHandlers += { success(newAppAuth, newSource) }
-                    if (!sourceRegistrationStarted) {
-                        handler.delay(1_000L) {
-                            doRefresh()
-                            successHandlers.forEach { it() }
-                            successHandlers.clear()
-                            sourceRegistrationStarted = false
+                    registration.failure(ex)
+                }
+            }
+            registrationExecutor.execute {
+                try {
+                    managers.any { manager ->
+                        if (registration.isUpdate) {
+                            manager.updateSource(authState, source, onSuccess, onFailure)
+                        } else {
+                            manager.registerSource(authState, source, onSuccess, onFailure)
                         }
-                        sourceRegistrationStarted = true
                     }
-                }, { ex ->
-                    appAuth.alter {
-                        sourceMetadata.removeAll(source::matches)
+                } catch (ex: Exception) {
+                    logger.error("Failed to register source {}", source.sourceId, ex)
+                    onFailure(ex)
+                } finally {
+                    handler.execute {
+                        remaining--
+                        if (remaining == 0) {
+                            // Refresh once for the whole pass instead of once per source.
+                            if (hasNewRegistrations) {
+                                doRefresh()
+                            }
+                            successHandlers.forEach { it() }
+                            registrationPass = null
+                            if (pendingRegistrations.isNotEmpty()) {
+                                registrationPass = handler.delay(REGISTRATION_COALESCE_DELAY, ::runRegistrationPass)
+                            }
+                        }
                     }
-                    authSerialization.store(appAuth)
-                    failure(ex)
-                })
+                }
             }
         }
     }
@@ -343,6 +477,9 @@ abstract class AuthService : Service(), LoginListener {
         fun updateSource(source: SourceMetadata, success: (AppAuthState, SourceMetadata) -> Unit, failure: (Exception?) -> Unit) =
                 this@AuthService.updateSource(source, success, failure)
 
+        val registrationCache: SourceRegistrationCache
+            get() = this@AuthService.registrationCache
+
         fun unregisterSources(sources: Iterable<SourceMetadata>) =
                 this@AuthService.unregisterSources(sources)
 
@@ -355,23 +492,23 @@ abstract class AuthService : Service(), LoginListener {
             }
     }
 
-    private fun updateSource(source: SourceMetadata, success: (AppAuthState, SourceMetadata) -> Unit, failure: (Exception?) -> Unit) {
-        handler.execute {
-            relevantManagers.any { manager ->
-                manager.updateSource(appAuth, source, success, failure)
-            }
-        }
-    }
-
     private fun unregisterSources(sources: Iterable<SourceMetadata>) {
         handler.execute {
             updateState {
                 sourceMetadata -= sources
             }
+            registrationCache.clear()
             doRefresh()
         }
     }
 
+    private class PendingRegistration(
+        val source: SourceMetadata,
+        val isUpdate: Boolean,
+        val success: (AppAuthState, SourceMetadata) -> Unit,
+        val failure: (Exception?) -> Unit,
+    )
+
     inner class LoginListenerRegistration(val loginListener: LoginListener) {
         val id = ++loginListenerId
         var lastUpdate = 0L
@@ -381,6 +518,9 @@ abstract class AuthService : Service(), LoginListener {
         private val logger = LoggerFactory.getLogger(AuthService::class.java)
         const val RETRY_MIN_DELAY = 5L
         const val RETRY_MAX_DELAY = 86400L
+        const val AUTH_REFRESH_LIFETIME_FRACTION_DEFAULT = 0.8f
+        private const val REGISTRATION_COALESCE_DELAY = 200L
+        private const val MAX_CONCURRENT_REGISTRATIONS = 4
         const val PRIVACY_POLICY_URL_PROPERTY = "org.radarcns.android.auth.portal.ManagementPortalClient.privacyPolicyUrl"
         const val BASE_URL_PROPERTY = "org.radarcns.android.auth.portal.ManagementPortalClient.baseUrl"
     }
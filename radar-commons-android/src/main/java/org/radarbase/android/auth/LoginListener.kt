@@ -41,4 +41,10 @@ interface LoginListener {
      * It my also be `null`.
      */
     fun loginFailed(manager: LoginManager?, ex: Exception?)
+
+    /**
+     * Callback for when a still valid authentication is about to be refreshed. A call to
+     * [loginSucceeded] or [loginFailed] follows once the refresh finishes.
+     */
+    fun loginRefreshing(authState: AppAuthState) = Unit
 }
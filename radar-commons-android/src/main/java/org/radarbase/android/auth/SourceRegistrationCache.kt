@@ -0,0 +1,69 @@
+package org.radarbase.android.auth
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.util.Base64
+import java.security.MessageDigest
+import java.util.concurrent.TimeUnit
+
+/**
+ * Persisted record of source registrations that were accepted by the server. A registration is
+ * identified by the user, the source type, the source ID, its physical ID and its attributes, so
+ * a source whose registration would not change can skip the network round-trip. Entries expire
+ * after [maxAge] milliseconds, so that registrations are still confirmed with the server every now
+ * and then.
+ *
+ * This class is thread-safe.
+ */
+class SourceRegistrationCache(
+    context: Context,
+    private val maxAge: Long = DEFAULT_MAX_AGE,
+) {
+    private val prefs: SharedPreferences = context.getSharedPreferences(REGISTRATION_PREFS, Context.MODE_PRIVATE)
+
+    /**
+     * Whether given source was registered for given user with exactly the same attributes,
+     * disregarding the attribute keys in [ignoredAttributes].
+     */
+    fun contains(userId: String?, source: SourceMetadata, ignoredAttributes: Set<String> = emptySet()): Boolean {
+        val registeredAt = prefs.getLong(fingerprint(userId, source, ignoredAttributes), -1L)
+        return registeredAt >= 0L && System.currentTimeMillis() - registeredAt < maxAge
+    }
+
+    /** Store that given source was registered for given user. */
+    fun put(userId: String?, source: SourceMetadata, ignoredAttributes: Set<String> = emptySet()) {
+        prefs.edit()
+            .putLong(fingerprint(userId, source, ignoredAttributes), System.currentTimeMillis())
+            .apply()
+    }
+
+    /** Forget all registrations, so that sources are registered with the server again. */
+    fun clear() {
+        prefs.edit()
+            .clear()
+            .apply()
+    }
+
+    private fun fingerprint(userId: String?, source: SourceMetadata, ignoredAttributes: Set<String>): String {
+        val type = source.type
+        val value = buildString {
+            append(userId).append('\n')
+            append(type?.id).append('\n')
+            append(type?.producer).append('\n')
+            append(type?.model).append('\n')
+            append(type?.catalogVersion).append('\n')
+            append(source.sourceId).append('\n')
+            source.attributes.entries
+                .filter { it.key !in ignoredAttributes }
+                .sortedBy { it.key }
+                .forEach { (k, v) -> append(k).append('=').append(v).append('\n') }
+        }
+        val digest = MessageDigest.getInstance("SHA-256").digest(value.toByteArray())
+        return Base64.encodeToString(digest, Base64.NO_WRAP)
+    }
+
+    companion object {
+        private const val REGISTRATION_PREFS = "org.radarbase.android.auth.SourceRegistrationCache"
+        val DEFAULT_MAX_AGE = TimeUnit.DAYS.toMillis(1)
+    }
+}
@@ -12,12 +12,14 @@ import org.radarbase.android.auth.portal.GetSubjectParser
 import org.radarbase.producer.AuthenticationException
 import org.slf4j.LoggerFactory
 import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
 import kotlin.collections.set
 
 abstract class AbstractRadarLoginManager(private val listener: AuthService, private val authType: AuthType) : LoginManager {
 
     protected open var client: AbstractRadarPortalClient? = null
-    private val sources: MutableMap<String, SourceMetadata> = mutableMapOf()
+    /** Registered sources by ID. Sources may be registered concurrently by [AuthService]. */
+    private val sources: MutableMap<String, SourceMetadata> = ConcurrentHashMap()
     protected val mainHandler = Handler(Looper.getMainLooper())
 
     override fun registerSource(authState: AppAuthState, source: SourceMetadata,
@@ -25,7 +27,7 @@ abstract class AbstractRadarLoginManager(private val listener: AuthService, priv
                                 failure: (Exception?) -> Unit): Boolean {
         logger.debug("Handling source registration for AuthType(${authType.name.lowercase()}")
 
-        val existingSource = sources[source.sourceId]
+        val existingSource = source.sourceId?.let { sources[it] }
         if (existingSource != null) {
             success(authState, existingSource)
             return true
@@ -62,7 +64,7 @@ abstract class AbstractRadarLoginManager(private val listener: AuthService, priv
                 try {
                     client.getSubject(authState, GetSubjectParser(authState, authType)).let { authState ->
                         updateSources(authState)
-                        sources[source.sourceId]?.let { source ->
+                        source.sourceId?.let { sources[it] }?.let { source ->
                             success(authState, source)
                         } ?: failure(IllegalStateException("Source was not added to ManagementPortal, even though conflict was reported."))
                     }
@@ -168,7 +170,7 @@ abstract class AbstractRadarLoginManager(private val listener: AuthService, priv
     }
 
     private fun removeSource(authState: AppAuthState, source: SourceMetadata): AppAuthState {
-        sources.remove(source.sourceId)
+        source.sourceId?.let { sources.remove(it) }
         return authState.alter {
             val existing = sourceMetadata.filterTo(HashSet()) { it.sourceId == source.sourceId }
             if (existing.isNotEmpty()) {
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarbase.android.config
+
+import org.slf4j.LoggerFactory
+
+/**
+ * Subscription to the configuration keys that [apply] uses. The keys are not declared up front,
+ * but recorded from the configuration while [apply] runs. A new configuration is only applied if
+ * one of those keys changed, so that configuration updates that do not concern a component do not
+ * restart it. Since any key that determines which other keys are read is itself read, the
+ * recorded keys are always sufficient to decide whether [apply] would behave differently.
+ *
+ * Keys read through [SingleRadarConfiguration.keys] or [SingleRadarConfiguration.config] are not
+ * recorded, so [apply] should only use the typed getters.
+ */
+class ConfigSubscription(
+    private val name: String,
+    private val apply: (SingleRadarConfiguration) -> Unit,
+) {
+    private var appliedConfig: SingleRadarConfiguration? = null
+    private var keys: Set<String> = emptySet()
+
+    /** Keys that were read when the configuration was last applied. */
+    val subscribedKeys: Set<String>
+        @Synchronized get() = keys
+
+    /**
+     * Apply given configuration if it differs from the last applied configuration in any of the
+     * subscribed keys.
+     * @return whether the configuration was applied.
+     */
+    fun update(config: SingleRadarConfiguration): Boolean {
+        val previous = synchronized(this) { appliedConfig }
+        if (previous != null) {
+            val changedKeys = config.changedKeys(previous).filterTo(HashSet()) { it in subscribedKeys }
+            if (changedKeys.isEmpty()) {
+                logger.debug("No configuration changes for {}", name)
+                return false
+            }
+            logger.info("Configuration keys {} changed for {}", changedKeys, name)
+        }
+
+        val accessedKeys = HashSet<String>()
+        apply(config.withKeyTracking(accessedKeys))
+
+        synchronized(this) {
+            appliedConfig = config
+            keys = accessedKeys
+        }
+        return true
+    }
+
+    /** Forget the last applied configuration, so the next update is always applied. */
+    @Synchronized
+    fun reset() {
+        appliedConfig = null
+        keys = emptySet()
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(ConfigSubscription::class.java)
+    }
+}
@@ -18,12 +18,50 @@ package org.radarbase.android.config
 
 import org.radarbase.android.RadarConfiguration
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 import java.util.regex.Pattern
 import java.util.regex.Pattern.CASE_INSENSITIVE
 
-class SingleRadarConfiguration(val status: RadarConfiguration.RemoteConfigStatus, val config: Map<String, String>) {
+/**
+ * Immutable snapshot of the configuration. Typed values are parsed once per snapshot and then
+ * cached, so they can be read repeatedly without parsing overhead.
+ */
+class SingleRadarConfiguration private constructor(
+    val status: RadarConfiguration.RemoteConfigStatus,
+    val config: Map<String, String>,
+    private val parsedValues: ParsedValues,
+    private val accessedKeys: MutableSet<String>?,
+) {
+    constructor(status: RadarConfiguration.RemoteConfigStatus, config: Map<String, String>) :
+        this(status, config, ParsedValues(), null)
+
+    /** All configured keys. Reading this is not recorded by [withKeyTracking]. */
     val keys: Set<String> = config.keys
 
+    /**
+     * View of this configuration that adds every key that is read from it to [accessedKeys].
+     * The view shares the parsed values of this configuration.
+     */
+    fun withKeyTracking(accessedKeys: MutableSet<String>): SingleRadarConfiguration =
+        SingleRadarConfiguration(status, config, parsedValues, accessedKeys)
+
+    /**
+     * Keys that were added, removed or changed compared to [previous]. If there is no previous
+     * configuration, all keys are returned.
+     */
+    fun changedKeys(previous: SingleRadarConfiguration?): Set<String> {
+        previous ?: return keys
+        if (previous.config === config) return emptySet()
+        return buildSet {
+            config.forEach { (key, value) ->
+                if (previous.config[key] != value) add(key)
+            }
+            previous.config.keys.forEach { key ->
+                if (key !in config) add(key)
+            }
+        }
+    }
+
     /**
      * Get a string indexed by key.
      * @throws IllegalArgumentException if the key does not have a value
@@ -38,7 +76,8 @@ class SingleRadarConfiguration(val status: RadarConfiguration.RemoteConfigStatus
      * @throws NumberFormatException if the configured value is not a Long
      * @throws IllegalArgumentException if the key does not have an associated value
      */
-    fun getLong(key: String): Long = getString(key).toLong()
+    fun getLong(key: String): Long = parsed(parsedValues.longs, key, String::toLongOrNull)
+        ?: getString(key).toLong()
 
     /**
      * Get a configured int value.
@@ -47,7 +86,8 @@ class SingleRadarConfiguration(val status: RadarConfiguration.RemoteConfigStatus
      * @throws NumberFormatException if the configured value is not an Integer
      * @throws IllegalArgumentException if the key does not have an associated value
      */
-    fun getInt(key: String): Int = getString(key).toInt()
+    fun getInt(key: String): Int = parsed(parsedValues.ints, key, String::toIntOrNull)
+        ?: getString(key).toInt()
 
     /**
      * Get a configured float value.
@@ -56,7 +96,8 @@ class SingleRadarConfiguration(val status: RadarConfiguration.RemoteConfigStatus
      * @throws NumberFormatException if the configured value is not an Float
      * @throws IllegalArgumentException if the key does not have an associated value
      */
-    fun getFloat(key: String): Float = getString(key).toFloat()
+    fun getFloat(key: String): Float = parsed(parsedValues.floats, key, String::toFloatOrNull)
+        ?: getString(key).toFloat()
 
     /**
      * Get a string indexed by key, or a default value if it does not exist.
@@ -67,12 +108,15 @@ class SingleRadarConfiguration(val status: RadarConfiguration.RemoteConfigStatus
     /**
      * Get a string indexed by key, or null if it does not exist.
      */
-    fun optString(key: String): String? = config[key]
+    fun optString(key: String): String? {
+        accessedKeys?.add(key)
+        return config[key]
+    }
 
     /**
      * Get a string indexed by key, or null if it does not exist.
      */
-    fun <T> optString(key: String, consume: (String) -> T): T? = config[key]?.let(consume)
+    fun <T> optString(key: String, consume: (String) -> T): T? = optString(key)?.let(consume)
 
     /**
      * Get a configured long value. If the configured value is not present or not a valid long,
@@ -82,7 +126,7 @@ class SingleRadarConfiguration(val status: RadarConfiguration.RemoteConfigStatus
      * @return configured long value, or defaultValue if no suitable value was found.
      */
     fun getLong(key: String, defaultValue: Long): Long {
-        return optString(key)?.toLongOrNull()
+        return parsed(parsedValues.longs, key, String::toLongOrNull)
                 ?: defaultValue
     }
 
@@ -94,7 +138,7 @@ class SingleRadarConfiguration(val status: RadarConfiguration.RemoteConfigStatus
      * @return configured int value, or defaultValue if no suitable value was found.
      */
     fun getInt(key: String, defaultValue: Int): Int {
-        return optString(key)?.toIntOrNull()
+        return parsed(parsedValues.ints, key, String::toIntOrNull)
                 ?: defaultValue
     }
 
@@ -107,30 +151,38 @@ class SingleRadarConfiguration(val status: RadarConfiguration.RemoteConfigStatus
      * @return configured float value, or defaultValue if no suitable value was found.
      */
     fun getFloat(key: String, defaultValue: Float): Float {
-        return optString(key)?.toFloatOrNull()
+        return parsed(parsedValues.floats, key, String::toFloatOrNull)
                 ?: defaultValue
     }
 
     fun getBoolean(key: String): Boolean {
-        val str = getString(key)
-        return when {
-            IS_TRUE.matcher(str).find() -> true
-            IS_FALSE.matcher(str).find() -> false
-            else -> throw NumberFormatException("String '$str' of property $key is not a boolean")
-        }
+        return parsed(parsedValues.booleans, key, ::parseBoolean)
+            ?: throw NumberFormatException("String '${getString(key)}' of property $key is not a boolean")
     }
 
     fun getBoolean(key: String, defaultValue: Boolean): Boolean {
-        val str = optString(key) ?: return defaultValue
-        return when {
-            IS_TRUE.matcher(str).find() -> true
-            IS_FALSE.matcher(str).find() -> false
-            else -> defaultValue
+        return parsed(parsedValues.booleans, key, ::parseBoolean)
+            ?: defaultValue
+    }
+
+    /**
+     * Get the parsed value of [key] from [cache], parsing and caching it if needed.
+     * @return parsed value, or null if the key has no value or the value cannot be parsed.
+     */
+    private fun <T : Any> parsed(cache: MutableMap<String, Any>, key: String, parse: (String) -> T?): T? {
+        accessedKeys?.add(key)
+        val value = cache.getOrPut(key) {
+            config[key]?.let(parse) ?: INVALID
         }
+        @Suppress("UNCHECKED_CAST")
+        return if (value === INVALID) null else value as T
     }
 
     /** There is a non-empty configuration for given key. */
-    operator fun contains(key: String): Boolean = key in config
+    operator fun contains(key: String): Boolean {
+        accessedKeys?.add(key)
+        return key in config
+    }
 
     override fun toString(): String {
         return StringBuilder(config.size * 40 + 20).apply {
@@ -158,7 +210,24 @@ class SingleRadarConfiguration(val status: RadarConfiguration.RemoteConfigStatus
 
     override fun hashCode(): Int = Objects.hash(status, config)
 
+    /** Parsed values per type, shared between a configuration and its tracking views. */
+    private class ParsedValues {
+        val longs: MutableMap<String, Any> = ConcurrentHashMap()
+        val ints: MutableMap<String, Any> = ConcurrentHashMap()
+        val floats: MutableMap<String, Any> = ConcurrentHashMap()
+        val booleans: MutableMap<String, Any> = ConcurrentHashMap()
+    }
+
     companion object {
+        /** Marker for values that are missing or cannot be parsed. */
+        private val INVALID = Any()
+
+        private fun parseBoolean(value: String): Boolean? = when {
+            IS_TRUE.matcher(value).find() -> true
+            IS_FALSE.matcher(value).find() -> false
+            else -> null
+        }
+
         private val IS_TRUE = Pattern.compile(
                 "^(1|true|t|yes|y|on)$", CASE_INSENSITIVE)
         private val IS_FALSE = Pattern.compile(
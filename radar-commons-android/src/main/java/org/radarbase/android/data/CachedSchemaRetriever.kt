@@ -0,0 +1,108 @@
+package org.radarbase.android.data
+
+import org.apache.avro.Schema
+import org.radarbase.config.ServerConfig
+import org.radarbase.producer.rest.ParsedSchemaMetadata
+import org.radarbase.producer.rest.SchemaRetriever
+import org.slf4j.LoggerFactory
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+
+/**
+ * Schema retriever that also stores schema IDs in a persistent [SchemaIdCache]. After a restart
+ * or a configuration change, known schemas can be used for uploading without contacting the
+ * schema registry. Entries that need revalidation are still used, while they are confirmed with
+ * the registry in the background. Recently used entries are also kept in memory, so the
+ * persistent cache is not read for every request.
+ */
+class CachedSchemaRetriever(
+    registryConfig: ServerConfig,
+    connectionTimeout: Long,
+    cacheValidity: Long,
+    private val schemaIdCache: SchemaIdCache,
+) : SchemaRetriever(registryConfig, connectionTimeout, cacheValidity) {
+    private val registryUrl: String = registryConfig.urlString
+    private val revalidating: MutableSet<String> = ConcurrentHashMap.newKeySet()
+    private val knownSchemas: MutableMap<String, KnownSchema> = ConcurrentHashMap()
+
+    @Throws(IOException::class)
+    override fun getOrSetSchemaMetadata(
+        topic: String,
+        ofValue: Boolean,
+        schema: Schema,
+        version: Int,
+    ): ParsedSchemaMetadata {
+        if (version >= 0) {
+            // a specific version is requested, so the cached schema ID cannot be used
+            return super.getOrSetSchemaMetadata(topic, ofValue, schema, version)
+        }
+        val subject = subjectName(topic, ofValue)
+        val known = knownSchemas[subject]
+            ?.takeIf { it.schema == schema && !schemaIdCache.isExpired(it.entry) }
+            ?: schemaIdCache.get(registryUrl, subject, schema)
+                ?.let { entry -> KnownSchema(schema, entry).also { knownSchemas[subject] = it } }
+            ?: return retrieve(topic, ofValue, schema, version)
+
+        if (schemaIdCache.needsRevalidation(known.entry)) {
+            revalidate(topic, ofValue, known)
+        }
+        return known.metadata
+    }
+
+    @Throws(IOException::class)
+    private fun retrieve(topic: String, ofValue: Boolean, schema: Schema, version: Int): ParsedSchemaMetadata {
+        return super.getOrSetSchemaMetadata(topic, ofValue, schema, version).also {
+            store(subjectName(topic, ofValue), it)
+        }
+    }
+
+    private fun store(subject: String, metadata: ParsedSchemaMetadata) {
+        val entry = schemaIdCache.put(registryUrl, subject, metadata) ?: return
+        knownSchemas[subject] = KnownSchema(metadata.schema, entry)
+    }
+
+    /**
+     * Confirm a known schema with the registry. This always contacts the registry, since the
+     * in-memory cache of the superclass may still contain the schema.
+     */
+    private fun revalidate(topic: String, ofValue: Boolean, known: KnownSchema) {
+        val subject = subjectName(topic, ofValue)
+        if (!revalidating.add(subject)) return
+
+        revalidationExecutor.execute {
+            try {
+                val confirmed = addSchema(topic, ofValue, known.schema)
+                val metadata = if (confirmed.version == null && confirmed.id == known.entry.id) {
+                    ParsedSchemaMetadata(confirmed.id, known.entry.version, known.schema)
+                } else {
+                    confirmed
+                }
+                store(subject, metadata)
+                logger.debug("Revalidated schema ID of {}", subject)
+            } catch (ex: IOException) {
+                logger.warn("Failed to revalidate schema ID of {}: {}", subject, ex.toString())
+            } finally {
+                revalidating.remove(subject)
+            }
+        }
+    }
+
+    /** Schema with its cached registration. */
+    private class KnownSchema(val schema: Schema, val entry: SchemaIdCache.Entry) {
+        val metadata = ParsedSchemaMetadata(entry.id, entry.version, schema)
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(CachedSchemaRetriever::class.java)
+
+        private fun subjectName(topic: String, ofValue: Boolean) = if (ofValue) "$topic-value" else "$topic-key"
+
+        /** Single background thread for revalidating schemas, that stops when idle. */
+        private val revalidationExecutor = ThreadPoolExecutor(
+            0, 1, 30L, TimeUnit.SECONDS, LinkedBlockingQueue(),
+        )
+    }
+}
@@ -19,6 +19,7 @@ package org.radarbase.android.data
 import org.radarbase.topic.AvroTopic
 
 import java.io.Flushable
+import java.io.IOException
 
 interface DataCache<K, V> : Flushable, ReadableDataCache {
     /** Get the topic the cache stores.  */
@@ -27,6 +28,15 @@ interface DataCache<K, V> : Flushable, ReadableDataCache {
     /** Add a new measurement to the cache.  */
     fun addMeasurement(key: K, value: V)
 
+    /**
+     * Write measurements directly to the cache, after any measurements that were added before,
+     * and wait until they are stored.
+     * @return number of records of [values], from the start, that were stored.
+     * @throws IOException if the records could not be written.
+     */
+    @Throws(IOException::class)
+    fun addMeasurementsNow(key: K, values: List<V>): Int
+
     /** Configuration. */
     var config: CacheConfiguration
 
@@ -1,5 +1,6 @@
 package org.radarbase.android.data
 
+import org.radarbase.android.metrics.PipelineMetrics
 import org.slf4j.LoggerFactory
 import java.io.Closeable
 import java.io.File
@@ -11,6 +12,14 @@ class DataCacheGroup<K, V>(
 ) : Closeable {
 
     val topicName: String = activeDataCache.topic.name
+    private val recordsGaugeName = "cache.records.$topicName"
+
+    init {
+        // deprecated caches share the topic name, so the gauge covers the whole group
+        PipelineMetrics.gauge(recordsGaugeName) {
+            activeDataCache.numberOfRecords + deprecatedCaches.toTypedArray().sumOf { it.numberOfRecords }
+        }
+    }
 
     @Throws(IOException::class)
     fun deleteEmptyCaches() {
@@ -41,6 +50,7 @@ class DataCacheGroup<K, V>(
 
     @Throws(IOException::class)
     override fun close() {
+        PipelineMetrics.removeGauge(recordsGaugeName)
         activeDataCache.close()
         deprecatedCaches.forEach(ReadableDataCache::close)
     }
@@ -34,4 +34,13 @@ interface DataHandler<K, V> : ServerStatusListener {
 
     fun handler(build: DataHandlerConfiguration.() -> Unit)
     fun getCache(topic: String): DataCache<*, *>
+
+    /**
+     * Do not start uploading new batches for at most [duration] milliseconds, for example while
+     * the authentication is being refreshed.
+     */
+    fun holdUploads(duration: Long) = Unit
+
+    /** Resume uploading after [holdUploads]. */
+    fun resumeUploads() = Unit
 }
@@ -18,6 +18,17 @@ data class DataHandlerConfiguration(
         var sendOverDataHighPriority: Boolean = true,
         /** Topics marked as high priority. */
         var highPriorityTopics: Set<String> = emptySet(),
+        /** Data sending reduction while on battery, above the reduced battery level. */
+        var batteryUploadMultiplier: Int = 1,
+        /** Request size multiplier when draining a backlog while charging on an unmetered network. */
+        var drainBatchMultiplier: Int = 4,
+        /**
+         * Number of records of a topic above which it is also sent over a metered network, if
+         * only high priority topics are sent. If zero, only high priority topics are sent.
+         */
+        var meteredBacklogLimit: Long = 0L,
+        /** Policy that decides how to upload data under the current device conditions. */
+        var uploadPolicy: UploadPolicy = DefaultUploadPolicy,
         var restConfig: RestConfiguration = RestConfiguration(),
         var cacheConfig: CacheConfiguration = CacheConfiguration(),
         var submitterConfig: SubmitterConfiguration = SubmitterConfiguration()
@@ -41,6 +52,13 @@ data class DataHandlerConfiguration(
         highPriorityTopics = HashSet(config.getString(RadarConfiguration.TOPICS_HIGH_PRIORITY, "")
                 .split(providerSeparator)
                 .mapNotNull(String::takeTrimmedIfNotEmpty))
+        reducedUploadMultiplier = config.getInt(RadarConfiguration.KAFKA_UPLOAD_REDUCED_MULTIPLIER, reducedUploadMultiplier)
+                .coerceAtLeast(1)
+        batteryUploadMultiplier = config.getInt(RadarConfiguration.KAFKA_UPLOAD_BATTERY_MULTIPLIER, batteryUploadMultiplier)
+                .coerceAtLeast(1)
+        drainBatchMultiplier = config.getInt(RadarConfiguration.KAFKA_UPLOAD_DRAIN_BATCH_MULTIPLIER, drainBatchMultiplier)
+                .coerceAtLeast(1)
+        meteredBacklogLimit = config.getLong(RadarConfiguration.KAFKA_UPLOAD_METERED_BACKLOG_LIMIT, meteredBacklogLimit)
 
         cache {
             configure(config)
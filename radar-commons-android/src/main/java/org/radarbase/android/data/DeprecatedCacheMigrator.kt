@@ -0,0 +1,184 @@
+package org.radarbase.android.data
+
+import org.apache.avro.Resolver
+import org.apache.avro.Schema
+import org.apache.avro.generic.GenericData
+import org.apache.avro.generic.GenericDatumWriter
+import org.apache.avro.io.BinaryDecoder
+import org.apache.avro.io.BinaryEncoder
+import org.apache.avro.io.DecoderFactory
+import org.apache.avro.io.EncoderFactory
+import org.apache.avro.specific.SpecificDatumReader
+import org.radarbase.android.metrics.PipelineMetrics
+import org.radarbase.data.RecordData
+import org.slf4j.LoggerFactory
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.util.*
+
+/**
+ * Moves records of deprecated caches into the active cache of their group, converting them to
+ * the active schema with Avro schema resolution. Migrated records are uploaded together with
+ * the active data, instead of in separate small requests per deprecated cache. Deprecated caches
+ * with a schema that cannot be resolved to the active schema are not migrated.
+ *
+ * Migration is at-least-once: records are only removed from a deprecated cache after the active
+ * cache reports them as stored. If records could not be resolved or stored, the deprecated cache
+ * is marked as not migratable, so it is uploaded separately instead. This class is not
+ * thread-safe. It should be run on the same thread that uploads the active and deprecated
+ * caches, so the same records are not both uploaded and migrated.
+ */
+class DeprecatedCacheMigrator {
+    private val resolvers: MutableMap<ReadableDataCache, RecordResolver> = WeakHashMap()
+    private val unmigratable: MutableSet<ReadableDataCache> = Collections.newSetFromMap(WeakHashMap())
+
+    /** Whether deprecated [cache] can be migrated to the active cache of [group]. */
+    fun canMigrate(group: DataCacheGroup<*, *>, cache: ReadableDataCache): Boolean =
+        resolver(group, cache) != null
+
+    /**
+     * Migrate at most [limit] records of the deprecated caches of [group] that can be migrated.
+     * Empty deprecated caches are deleted afterwards.
+     * @return number of migrated records.
+     */
+    @Throws(IOException::class)
+    fun migrate(group: DataCacheGroup<*, *>, limit: Int): Int {
+        @Suppress("UNCHECKED_CAST")
+        val activeDataCache = group.activeDataCache as DataCache<Any, Any>
+        var migrated = 0
+        for (cache in group.deprecatedCaches.toList()) {
+            if (migrated >= limit) break
+            val resolver = resolver(group, cache) ?: continue
+            while (migrated < limit) {
+                val records = cache.getRecords(minOf(limit - migrated, BATCH_SIZE)) ?: break
+                migrated += migrateBatch(group, cache, resolver, activeDataCache, records)
+                if (cache in unmigratable) break
+            }
+        }
+        if (migrated > 0) {
+            logger.info("Migrated {} deprecated records of topic {}", migrated, group.topicName)
+            migratedCounter.add(migrated.toLong())
+            group.deleteEmptyCaches()
+        }
+        return migrated
+    }
+
+    /**
+     * Migrate a single batch of [records] from [cache] to [activeDataCache].
+     * If migration fails, [cache] is marked as not migratable.
+     * @return number of migrated records.
+     */
+    @Throws(IOException::class)
+    private fun migrateBatch(
+        group: DataCacheGroup<*, *>,
+        cache: ReadableDataCache,
+        resolver: RecordResolver,
+        activeDataCache: DataCache<Any, Any>,
+        records: RecordData<Any, Any>,
+    ): Int {
+        val key: Any
+        val values: List<Any>
+        try {
+            key = resolver.resolveKey(records.key)
+            values = records.map { resolver.resolveValue(it) }
+        } catch (ex: Exception) {
+            markUnmigratable(group, cache, "records cannot be resolved: $ex")
+            return 0
+        }
+
+        // only the records that the active cache reports as committed are removed, so concurrent
+        // writes to the active cache cannot be mistaken for migrated records
+        val stored = activeDataCache.addMeasurementsNow(key, values)
+        if (stored > 0) {
+            cache.remove(stored)
+        }
+        if (stored < values.size) {
+            markUnmigratable(group, cache, "only $stored of ${values.size} records were stored")
+        }
+        return stored
+    }
+
+    private fun markUnmigratable(group: DataCacheGroup<*, *>, cache: ReadableDataCache, reason: String) {
+        logger.warn("Stopped migrating deprecated cache {} of topic {}: {}", cache.file, group.topicName, reason)
+        unmigratable += cache
+        resolvers -= cache
+    }
+
+    private fun resolver(group: DataCacheGroup<*, *>, cache: ReadableDataCache): RecordResolver? {
+        if (cache in unmigratable) return null
+        resolvers[cache]?.let { return it }
+        val writer = cache.readTopic
+        val reader = group.activeDataCache.topic
+        return if (isResolvable(writer.keySchema, reader.keySchema)
+            && isResolvable(writer.valueSchema, reader.valueSchema)
+        ) {
+            RecordResolver(writer.keySchema, writer.valueSchema, reader.keySchema, reader.valueSchema)
+                .also { resolvers[cache] = it }
+        } else {
+            logger.info("Deprecated cache {} of topic {} cannot be migrated to the active schema",
+                cache.file, group.topicName)
+            unmigratable += cache
+            null
+        }
+    }
+
+    /**
+     * Converts records from a writer schema to a reader schema by serializing them and
+     * deserializing them with the reader schema.
+     */
+    private class RecordResolver(
+        keyWriterSchema: Schema,
+        valueWriterSchema: Schema,
+        keyReaderSchema: Schema,
+        valueReaderSchema: Schema,
+    ) {
+        private val keyWriter = GenericDatumWriter<Any>(keyWriterSchema)
+        private val valueWriter = GenericDatumWriter<Any>(valueWriterSchema)
+        private val keyReader = SpecificDatumReader<Any>(keyWriterSchema, keyReaderSchema)
+        private val valueReader = SpecificDatumReader<Any>(valueWriterSchema, valueReaderSchema)
+        private val buffer = ByteArrayOutputStream()
+        private var encoder: BinaryEncoder? = null
+        private var decoder: BinaryDecoder? = null
+
+        fun resolveKey(key: Any): Any = resolve(key, keyWriter, keyReader)
+
+        fun resolveValue(value: Any): Any = resolve(value, valueWriter, valueReader)
+
+        private fun resolve(record: Any, writer: GenericDatumWriter<Any>, reader: SpecificDatumReader<Any>): Any {
+            buffer.reset()
+            val localEncoder = EncoderFactory.get().binaryEncoder(buffer, encoder).also { encoder = it }
+            writer.write(record, localEncoder)
+            localEncoder.flush()
+            val localDecoder = DecoderFactory.get().binaryDecoder(buffer.toByteArray(), decoder).also { decoder = it }
+            return reader.read(null, localDecoder)
+        }
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(DeprecatedCacheMigrator::class.java)
+        private val migratedCounter = PipelineMetrics.counter("cache.migrated_records")
+
+        private const val BATCH_SIZE = 1000
+
+        /**
+         * Whether data written with [writer] can always be read with [reader]. Unlike Avro schema
+         * resolution itself, this also rejects enum symbols and union branches that are missing
+         * in the reader schema, since they would only fail when records are read.
+         */
+        internal fun isResolvable(writer: Schema, reader: Schema): Boolean =
+            Resolver.resolve(writer, reader, GenericData.get()).isResolvable(Collections.newSetFromMap(IdentityHashMap()))
+
+        private fun Resolver.Action.isResolvable(visited: MutableSet<Resolver.Action>): Boolean {
+            if (!visited.add(this)) return true
+            return when (this) {
+                is Resolver.ErrorAction -> false
+                is Resolver.EnumAdjust -> adjustments.all { it >= 0 }
+                is Resolver.Container -> elementAction.isResolvable(visited)
+                is Resolver.RecordAdjust -> fieldActions.all { it.isResolvable(visited) }
+                is Resolver.WriterUnion -> actions.all { it.isResolvable(visited) }
+                is Resolver.ReaderUnion -> actualAction.isResolvable(visited)
+                else -> true
+            }
+        }
+    }
+}
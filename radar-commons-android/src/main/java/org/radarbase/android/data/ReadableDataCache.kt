@@ -22,6 +22,7 @@ import org.radarbase.topic.AvroTopic
 import java.io.Closeable
 import java.io.File
 import java.io.IOException
+import java.util.concurrent.CompletableFuture
 
 interface ReadableDataCache : Closeable {
     /** Get the topic the cache stores.  */
@@ -39,6 +40,25 @@ interface ReadableDataCache : Closeable {
     @Throws(IOException::class)
     fun getUnsentRecords(limit: Int, sizeLimit: Long): RecordData<Any, Any?>?
 
+    /**
+     * Get unsent records from the cache without waiting for the cache to read them.
+     *
+     * @param limit maximum number of records.
+     * @param sizeLimit maximum serialized size of those records.
+     * @return future with records, or with null if none are found.
+     */
+    fun getUnsentRecordsAsync(limit: Int, sizeLimit: Long): CompletableFuture<RecordData<Any, Any?>?> =
+        try {
+            CompletableFuture.completedFuture(getUnsentRecords(limit, sizeLimit))
+        } catch (ex: Exception) {
+            CompletableFuture<RecordData<Any, Any?>?>().apply { completeExceptionally(ex) }
+        }
+
+    /**
+     * Number of unsent records in cache, without waiting for the cache to count them.
+     */
+    fun numberOfRecordsAsync(): CompletableFuture<Long> = CompletableFuture.completedFuture(numberOfRecords)
+
     /**
      * Get latest records in the cache, from new to old.
      *
@@ -52,6 +72,18 @@ interface ReadableDataCache : Closeable {
      */
     val numberOfRecords: Long
 
+    /**
+     * Number of records that were added but not yet written to the cache.
+     */
+    val numberOfPendingRecords: Long
+        get() = 0L
+
+    /**
+     * Number of bytes used to store the unsent records.
+     */
+    val numberOfBytes: Long
+        get() = file.length()
+
     /**
      * Remove oldest records.
      * @param number number of records (inclusive) to remove.
@@ -18,9 +18,25 @@ data class RestConfiguration(
     var connectionTimeout: Long = 10L,
     /** Whether to try to use GZIP compression in requests. */
     var useCompression: Boolean = false,
+    /**
+     * Whether to choose the GZIP compression level from the measured CPU time and link
+     * throughput, if compression is used.
+     */
+    var useAdaptiveCompression: Boolean = true,
     /** Whether to try to use binary encoding in request. */
     var hasBinaryContent: Boolean = false,
+    /**
+     * Whether to write JSON requests directly to the connection with
+     * [org.radarbase.android.kafka.StreamingJsonSender], if binary encoding is not used.
+     */
+    var useStreamingJson: Boolean = true,
+    /** Persistent cache of schema IDs. If null, schema IDs are only cached in memory. */
+    var schemaIdCache: SchemaIdCache? = null,
 ) {
+    /** Whether to compress requests with [org.radarbase.android.kafka.AdaptiveCompressionInterceptor]. */
+    val hasAdaptiveCompression: Boolean
+        get() = useCompression && useAdaptiveCompression
+
     fun configure(config: SingleRadarConfiguration) {
         val unsafeConnection = config.getBoolean(RadarConfiguration.UNSAFE_KAFKA_CONNECTION, false)
 
@@ -28,14 +44,18 @@ data class RestConfiguration(
             ?.toServerConfig(unsafeConnection)
 
         schemaRetriever = config.optString(RadarConfiguration.SCHEMA_REGISTRY_URL_KEY) { url ->
-            SchemaRetriever(
-                url.toServerConfig(unsafeConnection),
-                30,
-                7200L
-            )
+            val registryConfig = url.toServerConfig(unsafeConnection)
+            val idCache = schemaIdCache
+            if (idCache != null) {
+                CachedSchemaRetriever(registryConfig, 30, 7200L, idCache)
+            } else {
+                SchemaRetriever(registryConfig, 30, 7200L)
+            }
         }
         hasBinaryContent = config.getBoolean(RadarConfiguration.SEND_BINARY_CONTENT, RadarConfiguration.SEND_BINARY_CONTENT_DEFAULT)
         useCompression = config.getBoolean(RadarConfiguration.SEND_WITH_COMPRESSION, false)
+        useAdaptiveCompression = config.getBoolean(RadarConfiguration.SEND_WITH_ADAPTIVE_COMPRESSION, useAdaptiveCompression)
+        useStreamingJson = config.getBoolean(RadarConfiguration.SEND_WITH_STREAMING_JSON, useStreamingJson)
         connectionTimeout = config.getLong(RadarConfiguration.SENDER_CONNECTION_TIMEOUT_KEY, connectionTimeout)
     }
 }
@@ -0,0 +1,95 @@
+package org.radarbase.android.data
+
+import android.content.Context
+import android.content.SharedPreferences
+import org.apache.avro.Schema
+import org.apache.avro.SchemaNormalization
+import org.radarbase.producer.rest.ParsedSchemaMetadata
+import java.util.concurrent.TimeUnit
+
+/**
+ * Persisted mapping from schemas to their schema registry IDs and versions. Schemas are identified
+ * by registry URL, subject and the fingerprint of their parsing canonical form, so documentation
+ * or property changes do not invalidate an entry. Entries expire after [maxAge] milliseconds, and
+ * should be revalidated with the registry after [revalidateAge] milliseconds.
+ *
+ * This class is thread-safe.
+ */
+class SchemaIdCache(
+    context: Context,
+    private val maxAge: Long = DEFAULT_MAX_AGE,
+    private val revalidateAge: Long = DEFAULT_REVALIDATE_AGE,
+) {
+    private val prefs: SharedPreferences = context.getSharedPreferences(SCHEMA_PREFS, Context.MODE_PRIVATE)
+
+    /** Get the cached registration of given schema, or null if it is not known or expired. */
+    fun get(registryUrl: String, subject: String, schema: Schema): Entry? {
+        val value = prefs.getString(key(registryUrl, subject, schema), null) ?: return null
+        val parts = value.split(',')
+        if (parts.size != 3) return null
+        val entry = Entry(
+            id = parts[0].toIntOrNull() ?: return null,
+            version = parts[1].toIntOrNull()?.takeIf { it >= 0 },
+            time = parts[2].toLongOrNull() ?: return null,
+        )
+        return entry.takeUnless { isExpired(it) }
+    }
+
+    /** Whether given entry is too old to be used. */
+    fun isExpired(entry: Entry): Boolean = System.currentTimeMillis() - entry.time >= maxAge
+
+    /** Whether given entry should be confirmed with the schema registry. */
+    fun needsRevalidation(entry: Entry): Boolean = System.currentTimeMillis() - entry.time >= revalidateAge
+
+    /**
+     * Store the registration of a schema.
+     * @return stored entry, or null if the metadata has no schema ID.
+     */
+    fun put(registryUrl: String, subject: String, metadata: ParsedSchemaMetadata): Entry? {
+        val id = metadata.id ?: return null
+        val entry = Entry(id, metadata.version, System.currentTimeMillis())
+        prefs.edit()
+            .putString(key(registryUrl, subject, metadata.schema), "$id,${entry.version ?: -1},${entry.time}")
+            .apply()
+        return entry
+    }
+
+    /** Remove all expired entries. */
+    fun prune() {
+        val minTime = System.currentTimeMillis() - maxAge
+        val expired = prefs.all.filter { (_, value) ->
+            val time = (value as? String)?.substringAfterLast(',')?.toLongOrNull()
+            time == null || time < minTime
+        }
+        if (expired.isNotEmpty()) {
+            prefs.edit().apply {
+                expired.keys.forEach { remove(it) }
+            }.apply()
+        }
+    }
+
+    /** Forget all schema registrations. */
+    fun clear() {
+        prefs.edit()
+            .clear()
+            .apply()
+    }
+
+    private fun key(registryUrl: String, subject: String, schema: Schema): String =
+        "$registryUrl|$subject|${SchemaNormalization.parsingFingerprint64(schema)}"
+
+    data class Entry(
+        /** Schema registry ID. */
+        val id: Int,
+        /** Schema version within the subject, if known. */
+        val version: Int?,
+        /** Time that the entry was last confirmed by the registry, in milliseconds. */
+        val time: Long,
+    )
+
+    companion object {
+        private const val SCHEMA_PREFS = "org.radarbase.android.data.SchemaIdCache"
+        val DEFAULT_MAX_AGE = TimeUnit.DAYS.toMillis(30)
+        val DEFAULT_REVALIDATE_AGE = TimeUnit.DAYS.toMillis(1)
+    }
+}
@@ -21,14 +21,19 @@ import android.os.Process.THREAD_PRIORITY_BACKGROUND
 import androidx.localbroadcastmanager.content.LocalBroadcastManager
 import org.apache.avro.specific.SpecificRecord
 import org.radarbase.android.RadarService
+import org.radarbase.android.kafka.AdaptiveCompressionInterceptor
+import org.radarbase.android.kafka.CompressionLevelSelector
 import org.radarbase.android.kafka.KafkaDataSubmitter
+import org.radarbase.android.kafka.StreamingJsonSender
+import org.radarbase.android.kafka.SubmitterConfiguration
 import org.radarbase.android.kafka.ServerStatusListener
 import org.radarbase.android.source.SourceService.Companion.CACHE_RECORDS_UNSENT_NUMBER
 import org.radarbase.android.source.SourceService.Companion.CACHE_TOPIC
-import org.radarbase.android.util.BatteryStageReceiver
+import org.radarbase.android.util.BatteryLevelReceiver
 import org.radarbase.android.util.NetworkConnectedReceiver
 import org.radarbase.android.util.SafeHandler
 import org.radarbase.android.util.send
+import org.radarbase.config.ServerConfig
 import org.radarbase.producer.rest.RestClient
 import org.radarbase.producer.rest.RestSender
 import org.radarbase.topic.AvroTopic
@@ -50,20 +55,32 @@ class TableDataHandler(
     private val cacheStore: CacheStore,
 ) : DataHandler<ObservationKey, SpecificRecord> {
     private val tables: ConcurrentMap<String, DataCacheGroup<*, *>> = ConcurrentHashMap()
-    private val batteryLevelReceiver: BatteryStageReceiver
+    private val batteryLevelReceiver: BatteryLevelReceiver
     private val networkConnectedReceiver: NetworkConnectedReceiver
-    private val handlerThread: SafeHandler = SafeHandler.getInstance("TableDataHandler", THREAD_PRIORITY_BACKGROUND)
+    private val handlerThread: SafeHandler = SafeHandler.getInstance("TableDataHandler", THREAD_PRIORITY_BACKGROUND, isPooled = true)
     private val broadcaster = LocalBroadcastManager.getInstance(context)
 
-    private var config = DataHandlerConfiguration()
+    private val schemaIdCache = SchemaIdCache(context)
+    private val compressionInterceptor = AdaptiveCompressionInterceptor(
+        CompressionLevelSelector { networkConnectedReceiver.state.isMetered },
+    )
+
+    @Volatile
+    private var config = DataHandlerConfiguration(
+        restConfig = RestConfiguration(schemaIdCache = schemaIdCache),
+    )
 
     @Volatile
     var latestStatus: ServerStatusListener.Status = ServerStatusListener.Status.DISCONNECTED
     override var status: ServerStatusListener.Status = ServerStatusListener.Status.DISCONNECTED
 
     private val lastNumberOfRecordsSent = TreeMap<String, Long>()
+    @Volatile
     private var submitter: KafkaDataSubmitter? = null
+    @Volatile
+    private var uploadDecision = UploadDecision.disabled("upload conditions unknown")
     private var sender: RestSender? = null
+    private var jsonSender: StreamingJsonSender? = null
 
     private val isStarted: Boolean
         get() = submitter != null
@@ -75,46 +92,15 @@ class TableDataHandler(
 
     init {
         this.handlerThread.start()
-        this.handlerThread.repeat(10_000L, ::broadcastNumberOfRecords)
-
-        this.batteryLevelReceiver = BatteryStageReceiver(context, config.batteryStageLevels) { stage ->
-            when (stage) {
-                BatteryStageReceiver.BatteryStage.FULL -> {
-                    handler {
-                        submitter {
-                            uploadRateMultiplier = 1
-                        }
-                    }
-                }
-                BatteryStageReceiver.BatteryStage.REDUCED -> {
-                    logger.info("Battery level getting low, reducing data sending")
-                    handler {
-                        submitter {
-                            uploadRateMultiplier = reducedUploadMultiplier
-                        }
-                    }
-                }
-                BatteryStageReceiver.BatteryStage.EMPTY -> {
-                    if (isStarted) {
-                        logger.info("Battery level getting very low, stopping data sending")
-                        stop()
-                    }
-                }
-            }
-        }
-        this.networkConnectedReceiver = NetworkConnectedReceiver(context) { state ->
-            if (isStarted) {
-                if (!state.hasConnection(config.sendOnlyWithWifi)) {
-                    logger.info("Network was disconnected, stopping data sending")
-                    stop()
-                }
-            } else {
-                // Just try to start: the start method will not do anything if the parameters
-                // are not right.
-                start()
-            }
+        this.handlerThread.execute(schemaIdCache::prune)
+        this.handlerThread.repeat(10_000L) {
+            broadcastNumberOfRecords()
+            updateUploadPolicy()
         }
 
+        this.batteryLevelReceiver = BatteryLevelReceiver(context) { _, _ -> updateUploadPolicy() }
+        this.networkConnectedReceiver = NetworkConnectedReceiver(context) { updateUploadPolicy() }
+
         submitter = null
         sender = null
 
@@ -138,28 +124,72 @@ class TableDataHandler(
         }
     }
 
+    /**
+     * Evaluate the upload policy with the current device conditions, and start, stop or adjust
+     * the submitter accordingly.
+     */
+    private fun updateUploadPolicy() = handlerThread.executeReentrant {
+        val localConfig = config
+        val conditions = UploadConditions(
+            network = networkConnectedReceiver.state,
+            batteryLevel = batteryLevelReceiver.level,
+            isCharging = batteryLevelReceiver.isPlugged,
+            backlog = tables.mapValues { (_, group) ->
+                group.activeDataCache.numberOfRecords + group.deprecatedCaches.sumOf { it.numberOfRecords }
+            },
+        )
+        val decision = localConfig.uploadPolicy.decide(localConfig, conditions)
+        val previousDecision = uploadDecision
+        uploadDecision = decision
+        if (decision != previousDecision) {
+            logger.info("Upload policy changed: {}", decision)
+        }
+
+        if (!decision.isEnabled) {
+            if (isStarted) {
+                logger.info("Stopping data sending: {}", decision.reason)
+                stop()
+            }
+        } else if (isStarted) {
+            submitter?.config = submitterConfig(localConfig, decision)
+        } else if (status !== ServerStatusListener.Status.DISABLED) {
+            start()
+        }
+    }
+
+    /** Submitter configuration adjusted to given upload decision. */
+    private fun submitterConfig(
+        localConfig: DataHandlerConfiguration = config,
+        decision: UploadDecision = uploadDecision,
+    ): SubmitterConfiguration {
+        val submitterConfig = localConfig.submitterConfig
+        return submitterConfig.copy(
+            amountLimit = submitterConfig.amountLimit * decision.batchSizeMultiplier,
+            uploadRateMultiplier = submitterConfig.uploadRateMultiplier * decision.uploadRateMultiplier,
+            migrateDeprecatedCaches = decision.migrateDeprecatedCaches,
+        )
+    }
+
     /**
      * Start submitting data to the server.
      *
      * This will not do anything if there is not already a submitter running, if it is disabled,
-     * if the network is not connected or if the battery is running too low.
+     * or if the upload policy does not allow uploads under the current conditions.
      */
     fun start() = handlerThread.executeReentrant {
+        val decision = uploadDecision
         if (isStarted
             || config.submitterConfig.userId == null
             || status === ServerStatusListener.Status.DISABLED
-            || !networkConnectedReceiver.hasConnection(config.sendOnlyWithWifi)
-            || batteryLevelReceiver.stage == BatteryStageReceiver.BatteryStage.EMPTY
+            || !decision.isEnabled
         ) {
             when {
                 config.submitterConfig.userId == null ->
                     logger.info("Submitter has no user ID set. Not starting.")
                 status === ServerStatusListener.Status.DISABLED ->
                     logger.info("Submitter has been disabled earlier. Not starting")
-                !networkConnectedReceiver.hasConnection(config.sendOnlyWithWifi) ->
-                    logger.info("No networkconnection available. Not starting")
-                batteryLevelReceiver.stage == BatteryStageReceiver.BatteryStage.EMPTY ->
-                    logger.info("Battery is empty. Not starting")
+                !decision.isEnabled ->
+                    logger.info("Uploads are not allowed: {}. Not starting", decision.reason)
             }
             return@executeReentrant
         }
@@ -169,11 +199,9 @@ class TableDataHandler(
 
         updateServerStatus(ServerStatusListener.Status.CONNECTING)
 
-        val client = RestClient.global()
-            .server(kafkaConfig)
-            .gzipCompression(config.restConfig.useCompression)
-            .timeout(config.restConfig.connectionTimeout, TimeUnit.SECONDS)
-            .build()
+        val restConfig = config.restConfig
+        compressionInterceptor.isEnabled = restConfig.hasAdaptiveCompression
+        val client = kafkaClient(kafkaConfig, restConfig)
 
         val sender = RestSender.Builder().apply {
             httpClient(client)
@@ -184,7 +212,35 @@ class TableDataHandler(
             sender = it
         }
 
-        this.submitter = KafkaDataSubmitter(this, sender, config.submitterConfig, context as? RadarService)
+        val jsonSender = restConfig.schemaRetriever?.let { retriever ->
+            StreamingJsonSender(client, retriever, restConfig.headers).apply {
+                configure(restConfig)
+            }
+        }.also {
+            jsonSender = it
+        }
+
+        this.submitter = KafkaDataSubmitter(this, sender, submitterConfig(), context as? RadarService, jsonSender)
+    }
+
+    private fun kafkaClient(kafkaConfig: ServerConfig, restConfig: RestConfiguration): RestClient {
+        val globalClient = RestClient.global()
+            .server(kafkaConfig)
+            .gzipCompression(restConfig.useCompression && !restConfig.hasAdaptiveCompression)
+            .timeout(restConfig.connectionTimeout, TimeUnit.SECONDS)
+            .build()
+        return RestClient.Builder(globalClient.httpClient.newBuilder()
+                .addInterceptor(compressionInterceptor)
+                .build())
+            .server(kafkaConfig)
+            .timeout(restConfig.connectionTimeout, TimeUnit.SECONDS)
+            .build()
+    }
+
+    private fun StreamingJsonSender.configure(restConfig: RestConfiguration) {
+        isEnabled = restConfig.useStreamingJson && !restConfig.hasBinaryContent
+        useCompression = restConfig.useCompression && !restConfig.hasAdaptiveCompression
+        headers = restConfig.headers
     }
 
     /**
@@ -195,6 +251,7 @@ class TableDataHandler(
         submitter?.close()
         submitter = null
         sender = null
+        jsonSender = null
         if (status != ServerStatusListener.Status.DISABLED) {
             updateServerStatus(ServerStatusListener.Status.READY)
         }
@@ -242,6 +299,7 @@ class TableDataHandler(
             this.submitter?.close()
             this.submitter = null
             this.sender = null
+            this.jsonSender = null
         }
 
         tables.values.forEach(DataCacheGroup<*, *>::close)
@@ -264,14 +322,19 @@ class TableDataHandler(
             return caches
         }
 
+    /**
+     * Caches that may currently be uploaded. This does not wait for the handler thread, so that
+     * the submitter is not blocked by other data handler operations.
+     */
     override val activeCaches: List<DataCacheGroup<*, *>>
-        get() = handlerThread.compute {
-            if (submitter == null) {
+        get() {
+            val topics = uploadDecision.topics
+            return if (submitter == null) {
                 emptyList()
-            } else if (networkConnectedReceiver.state.hasWifiOrEthernet || !config.sendOverDataHighPriority) {
+            } else if (topics == null) {
                 ArrayList(tables.values)
             } else {
-                tables.values.filter { it.topicName in config.highPriorityTopics }
+                tables.values.filter { it.topicName in topics }
             }
         }
 
@@ -279,6 +342,14 @@ class TableDataHandler(
         get() = handlerThread.compute { field }
         set(value) = handlerThread.execute { field = value }
 
+    override fun holdUploads(duration: Long) = handlerThread.executeReentrant {
+        submitter?.holdUploads(duration)
+    }
+
+    override fun resumeUploads() = handlerThread.execute {
+        submitter?.resumeUploads()
+    }
+
     override fun updateServerStatus(status: ServerStatusListener.Status) {
         latestStatus = status
         handlerThread.executeReentrant {
@@ -349,7 +420,7 @@ class TableDataHandler(
             when {
                 config.submitterConfig.userId == null -> disableSubmitter()
                 oldConfig.submitterConfig.userId == null -> enableSubmitter()
-                else -> submitter?.config = config.submitterConfig
+                else -> submitter?.config = submitterConfig()
             }
         }
 
@@ -357,7 +428,8 @@ class TableDataHandler(
             val newRest = config.restConfig
             newRest.kafkaConfig?.let { kafkaConfig ->
                 sender?.apply {
-                    setCompression(newRest.useCompression)
+                    compressionInterceptor.isEnabled = newRest.hasAdaptiveCompression
+                    setCompression(newRest.useCompression && !newRest.hasAdaptiveCompression)
                     setConnectionTimeout(newRest.connectionTimeout, TimeUnit.SECONDS)
                     if (oldConfig.restConfig.hasBinaryContent != newRest.hasBinaryContent) {
                         if (config.restConfig.hasBinaryContent) {
@@ -370,13 +442,16 @@ class TableDataHandler(
                     setKafkaConfig(kafkaConfig)
                     resetConnection()
                 }
+                jsonSender?.apply {
+                    client = kafkaClient(kafkaConfig, newRest)
+                    configure(newRest)
+                    // schema IDs may differ with another registry or server
+                    newRest.schemaRetriever?.let { schemaRetriever = it } ?: resetTopics()
+                }
             }
         }
 
-        batteryLevelReceiver.stageLevels = config.batteryStageLevels
-
-        networkConnectedReceiver.notifyListener()
-        start()
+        updateUploadPolicy()
     }
 
     companion object {
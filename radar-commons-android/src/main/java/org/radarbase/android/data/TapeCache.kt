@@ -17,6 +17,7 @@
 package org.radarbase.android.data
 
 import org.radarbase.android.data.serialization.SerializationFactory
+import org.radarbase.android.metrics.PipelineMetrics
 import org.radarbase.android.util.ChangeRunner
 import org.radarbase.android.util.SafeHandler
 import org.radarbase.data.AvroRecordData
@@ -29,7 +30,9 @@ import org.slf4j.LoggerFactory
 import java.io.File
 import java.io.IOException
 import java.util.*
+import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ExecutionException
+import java.util.concurrent.atomic.AtomicLong
 
 /**
  * Caches measurement on a BackedObjectQueue. Internally, all data is first cached on a local queue,
@@ -66,6 +69,10 @@ constructor(
 
     private var addMeasurementFuture: SafeHandler.HandlerFuture? = null
 
+    private val storedRecords = AtomicLong(0L)
+    private val pendingRecords = AtomicLong(0L)
+    private val storedBytes = AtomicLong(0L)
+
     private val configCache = ChangeRunner(config)
 
     override var config
@@ -91,26 +98,24 @@ constructor(
             }
         }
         this.queue = BackedObjectQueue(queueFile, serializer, deserializer)
+        observeCounts(queueFile)
+    }
+
+    /** Keep the record counters up to date with the commits of [queueFile]. */
+    private fun observeCounts(queueFile: QueueFile) {
+        storedRecords.set(queueFile.size.toLong())
+        storedBytes.set(queueFile.usedBytes)
+        queueFile.commitListener = { size, usedBytes ->
+            storedRecords.set(size.toLong())
+            storedBytes.set(usedBytes)
+        }
     }
 
     @Throws(IOException::class)
     override fun getUnsentRecords(limit: Int, sizeLimit: Long): RecordData<Any, Any?>? {
         logger.debug("Trying to retrieve records from topic {}", topic.name)
         return try {
-             handler.compute {
-                try {
-                    getValidUnsentRecords(limit, sizeLimit)
-                            ?.let { (key, values) ->
-                                AvroRecordData(readTopic, key, values)
-                            }
-                } catch (ex: IOException) {
-                    fixCorruptQueue(ex)
-                    null
-                } catch (ex: IllegalStateException) {
-                    fixCorruptQueue(ex)
-                    null
-                }
-            }
+             handler.compute { readUnsentRecords(limit, sizeLimit) }
         } catch (ex: InterruptedException) {
             logger.warn("getUnsentRecords was interrupted, returning an empty list", ex)
             Thread.currentThread().interrupt()
@@ -126,6 +131,22 @@ constructor(
         }
     }
 
+    override fun getUnsentRecordsAsync(limit: Int, sizeLimit: Long): CompletableFuture<RecordData<Any, Any?>?> =
+        handler.computeAsync { readUnsentRecords(limit, sizeLimit) }
+
+    private fun readUnsentRecords(limit: Int, sizeLimit: Long): RecordData<Any, Any?>? = try {
+        readDuration.time { getValidUnsentRecords(limit, sizeLimit) }
+            ?.let { (key, values) ->
+                AvroRecordData(readTopic, key, values)
+            }
+    } catch (ex: IOException) {
+        fixCorruptQueue(ex)
+        null
+    } catch (ex: IllegalStateException) {
+        fixCorruptQueue(ex)
+        null
+    }
+
     private fun getValidUnsentRecords(limit: Int, sizeLimit: Long): Pair<Any, List<Any>>? {
         var currentKey: Any? = null
         lateinit var records: List<Record<Any, Any>?>
@@ -146,7 +167,10 @@ constructor(
             currentKey = records.firstOrNull()?.key
         }
 
-        val differentKeyIndex = records.indexOfFirst { it?.key != currentKey }
+        val differentKeyIndex = records.indexOfFirst {
+            // keys of consecutive records are usually the same instance
+            it?.key !== currentKey && it?.key != currentKey
+        }
         if (differentKeyIndex > 0) {
             records = records.subList(0, differentKeyIndex)
         }
@@ -162,7 +186,13 @@ constructor(
     }
 
     override val numberOfRecords: Long
-        get() = handler.compute { queue.size.toLong() }
+        get() = storedRecords.get()
+
+    override val numberOfPendingRecords: Long
+        get() = pendingRecords.get()
+
+    override val numberOfBytes: Long
+        get() = storedBytes.get()
 
     @Throws(IOException::class)
     override fun remove(number: Int) {
@@ -184,6 +214,7 @@ constructor(
 
         handler.execute {
             measurementsToAdd += record
+            pendingRecords.incrementAndGet()
 
             if (addMeasurementFuture == null) {
                 addMeasurementFuture = handler.delay(config.commitRate, ::doFlush)
@@ -191,6 +222,30 @@ constructor(
         }
     }
 
+    @Throws(IOException::class)
+    override fun addMeasurementsNow(key: K, values: List<V>): Int = try {
+        handler.compute {
+            // write earlier measurements first, so that records stay in order
+            addMeasurementFuture?.runNow()
+            // only this handler modifies the queue, so the change in size is the number of
+            // records that were committed
+            val initialSize = queue.size
+            try {
+                queue += values.map { Record(key, it) }
+            } catch (ex: IllegalArgumentException) {
+                logger.error("Failed to validate all records of topic {}", topic.name, ex)
+            } catch (ex: IllegalStateException) {
+                logger.error("Queue {} is full, not adding records", topic.name)
+            }
+            queue.size - initialSize
+        }
+    } catch (ex: InterruptedException) {
+        Thread.currentThread().interrupt()
+        throw IOException("Interrupted while adding records to topic ${topic.name}", ex)
+    } catch (ex: ExecutionException) {
+        throw IOException("Failed to add records to topic ${topic.name}", ex.cause)
+    }
+
     @Throws(IOException::class)
     override fun close() {
         flush()
@@ -221,6 +276,7 @@ constructor(
         if (measurementsToAdd.isEmpty()) {
             return
         }
+        val flushStart = System.nanoTime()
         try {
             logger.info("Writing {} records to file in topic {}", measurementsToAdd.size, topic.name)
             queue += measurementsToAdd
@@ -247,6 +303,9 @@ constructor(
                 throw RuntimeException(ex)
             }
         } finally {
+            flushDuration.record(System.nanoTime() - flushStart)
+            flushRecords.record(measurementsToAdd.size.toLong())
+            pendingRecords.addAndGet(-measurementsToAdd.size.toLong())
             measurementsToAdd.clear()
         }
     }
@@ -263,6 +322,7 @@ constructor(
         if (file.delete()) {
             queueFile = queueFileFactory.generate(file, maximumSize)
             queue = BackedObjectQueue(queueFile, serializer, deserializer)
+            observeCounts(queueFile)
         } else {
             throw IOException("Cannot create new cache.")
         }
@@ -270,5 +330,8 @@ constructor(
 
     companion object {
         private val logger = LoggerFactory.getLogger(TapeCache::class.java)
+        private val flushDuration = PipelineMetrics.histogram("cache.flush_duration")
+        private val flushRecords = PipelineMetrics.histogram("cache.flush_records")
+        private val readDuration = PipelineMetrics.histogram("cache.read_duration")
     }
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarbase.android.data
+
+import org.radarbase.android.util.NetworkConnectedReceiver
+
+/**
+ * Decides how data is uploaded, based on the current device conditions. The policy is evaluated
+ * whenever the battery state, the network state or the configuration changes, and periodically
+ * to follow the backlog. A policy should be a cheap, pure function of its arguments.
+ */
+fun interface UploadPolicy {
+    fun decide(config: DataHandlerConfiguration, conditions: UploadConditions): UploadDecision
+}
+
+/** Device conditions that an [UploadPolicy] decides on. */
+data class UploadConditions(
+    val network: NetworkConnectedReceiver.NetworkState,
+    /** Battery level in range [0, 1]. */
+    val batteryLevel: Float,
+    /** Whether the device is plugged into a charger. */
+    val isCharging: Boolean,
+    /** Number of records per topic that have not been uploaded yet. */
+    val backlog: Map<String, Long>,
+)
+
+/** How to upload data, as decided by an [UploadPolicy]. */
+data class UploadDecision(
+    /** Whether to upload at all. */
+    val isEnabled: Boolean,
+    /** Human-readable reason for this decision, for logging. */
+    val reason: String,
+    /** Multiplier of the configured upload interval. */
+    val uploadRateMultiplier: Int = 1,
+    /** Multiplier of the configured number of records per request. */
+    val batchSizeMultiplier: Int = 1,
+    /** Topics to upload, or null to upload all topics. */
+    val topics: Set<String>? = null,
+    /** Whether to migrate deprecated caches to the active schema while no data needs uploading. */
+    val migrateDeprecatedCaches: Boolean = false,
+) {
+    companion object {
+        fun disabled(reason: String) = UploadDecision(isEnabled = false, reason = reason)
+    }
+}
+
+/**
+ * Default upload policy. Uploads stop without network, if a Wi-Fi or Ethernet connection is
+ * required but unavailable, or if the battery is below its minimum level. On a metered
+ * connection, only high priority topics and topics whose backlog exceeds
+ * [DataHandlerConfiguration.meteredBacklogLimit] are sent, if so configured. While charging on an
+ * unmetered connection, a backlog of more than a single request is drained with larger requests.
+ * On battery, the upload interval is multiplied with
+ * [DataHandlerConfiguration.batteryUploadMultiplier], or with
+ * [DataHandlerConfiguration.reducedUploadMultiplier] below the reduced battery level.
+ * Deprecated caches are migrated to the active schema while charging.
+ */
+object DefaultUploadPolicy : UploadPolicy {
+    override fun decide(config: DataHandlerConfiguration, conditions: UploadConditions): UploadDecision {
+        val network = conditions.network
+        val isUnmetered = network.hasWifiOrEthernet && !network.isMetered
+        val levels = config.batteryStageLevels
+
+        return when {
+            !network.isConnected -> UploadDecision.disabled("no network connection")
+            !network.hasConnection(config.sendOnlyWithWifi) -> UploadDecision.disabled("no Wi-Fi or Ethernet connection")
+            !conditions.isCharging && conditions.batteryLevel <= levels.minimum -> UploadDecision.disabled("battery level is too low")
+            conditions.isCharging && isUnmetered && conditions.backlog.values.any { it > config.submitterConfig.amountLimit } -> UploadDecision(
+                isEnabled = true,
+                reason = "draining backlog while charging",
+                batchSizeMultiplier = config.drainBatchMultiplier,
+                migrateDeprecatedCaches = true,
+            )
+            else -> UploadDecision(
+                isEnabled = true,
+                reason = when {
+                    conditions.isCharging -> "charging"
+                    conditions.batteryLevel <= levels.reduced -> "reduced battery level"
+                    else -> "on battery"
+                },
+                uploadRateMultiplier = when {
+                    conditions.isCharging -> 1
+                    conditions.batteryLevel <= levels.reduced -> config.reducedUploadMultiplier
+                    else -> config.batteryUploadMultiplier
+                },
+                topics = if (!network.hasWifiOrEthernet && config.sendOverDataHighPriority) {
+                    meteredTopics(config, conditions.backlog)
+                } else null,
+                migrateDeprecatedCaches = conditions.isCharging,
+            )
+        }
+    }
+
+    private fun meteredTopics(config: DataHandlerConfiguration, backlog: Map<String, Long>): Set<String> {
+        val limit = config.meteredBacklogLimit
+        return if (limit > 0) {
+            backlog.filterTo(HashMap()) { it.value > limit }.keys + config.highPriorityTopics
+        } else {
+            config.highPriorityTopics
+        }
+    }
+}
@@ -19,6 +19,8 @@ package org.radarbase.android.data.serialization
 
 import org.apache.avro.Schema
 import org.apache.avro.generic.GenericData
+import org.apache.avro.generic.GenericDatumReader
+import org.apache.avro.generic.IndexedRecord
 import org.apache.avro.io.BinaryDecoder
 import org.apache.avro.io.DatumReader
 import org.apache.avro.io.DecoderFactory
@@ -31,7 +33,9 @@ import java.io.IOException
 import java.io.InputStream
 
 /**
- * Converts records from an AvroTopic for Tape
+ * Converts records from an AvroTopic for Tape. Consecutive records with equal keys share the
+ * same key instance, and string fields of the key are decoded to shared String instances. This
+ * class is not thread-safe.
  */
 class TapeAvroDeserializer<K, V>(
     topic: AvroTopic<*, *>,
@@ -44,12 +48,20 @@ class TapeAvroDeserializer<K, V>(
     private val keySchema: Schema = topic.keySchema
     private val valueSchema: Schema = topic.valueSchema
     private var decoder: BinaryDecoder? = null
+    private var lastKey: K? = null
 
     init {
         @Suppress("UNCHECKED_CAST")
         keyReader = avroData.createDatumReader(keySchema) as DatumReader<K>
         @Suppress("UNCHECKED_CAST")
         valueReader = avroData.createDatumReader(valueSchema) as DatumReader<V>
+
+        if (keySchema.type == Schema.Type.RECORD) {
+            val stringFields = keySchema.fields
+                .filter { it.schema().type == Schema.Type.STRING }
+                .map { it.name() }
+            (keyReader as? GenericDatumReader<*>)?.setCachedStringFields(stringFields, KEY_STRING_CACHE_SIZE)
+        }
     }
 
     @Throws(IOException::class)
@@ -68,10 +80,40 @@ class TapeAvroDeserializer<K, V>(
             throw IOException("Failed to deserialize object", ex)
         }
 
-        require(avroData.validate(keySchema, key)
-                && avroData.validate(valueSchema, value)) {
+        val previousKey = lastKey
+        val resultKey = if (previousKey != null && isSameKey(previousKey, key)) {
+            previousKey
+        } else {
+            require(avroData.validate(keySchema, key)) {
+                "Failed to validate given record key in topic $topicName\n\tkey: $key\n\tvalue: $value"
+            }
+            lastKey = key
+            key
+        }
+        require(avroData.validate(valueSchema, value)) {
             "Failed to validate given record in topic $topicName\n\tkey: $key\n\tvalue: $value"
         }
-        return Record(key, value)
+        return Record(resultKey, value)
+    }
+
+    /**
+     * Whether [key] equals the previously validated key. Cached string fields are compared by
+     * identity first, so this is usually cheaper than a full equality check.
+     */
+    private fun isSameKey(previousKey: K, key: K): Boolean {
+        if (previousKey is IndexedRecord && key is IndexedRecord) {
+            if (previousKey.schema != key.schema) return false
+            return (0 until key.schema.fields.size).all { i ->
+                val previous = previousKey.get(i)
+                val current = key.get(i)
+                previous === current || previous == current
+            }
+        }
+        return previousKey == key
+    }
+
+    companion object {
+        /** Maximum number of distinct values per key string field to cache. */
+        private const val KEY_STRING_CACHE_SIZE = 16
     }
 }
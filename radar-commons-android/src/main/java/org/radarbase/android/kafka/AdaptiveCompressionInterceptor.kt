@@ -0,0 +1,144 @@
+package org.radarbase.android.kafka
+
+import android.os.Debug
+import okhttp3.Interceptor
+import okhttp3.MediaType
+import okhttp3.RequestBody
+import okhttp3.Response
+import okio.Buffer
+import okio.BufferedSink
+import okio.ForwardingSink
+import okio.GzipSink
+import okio.Sink
+import okio.buffer
+import org.radarbase.android.metrics.Counter
+import org.radarbase.android.metrics.Histogram
+import org.radarbase.android.metrics.PipelineMetrics
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+
+/**
+ * Compresses request bodies with gzip while they are streamed to the server, at the level chosen
+ * by [selector]. Requests that already have a content encoding are left unchanged. The
+ * compression ratio of each topic is recorded as [PipelineMetrics] histogram
+ * `upload.compression_ratio.<topic>`, in thousandths.
+ */
+class AdaptiveCompressionInterceptor(
+    private val selector: CompressionLevelSelector,
+) : Interceptor {
+    /** Whether to compress requests at all. */
+    @Volatile
+    var isEnabled: Boolean = true
+
+    private val ratios: ConcurrentMap<String, Histogram> = ConcurrentHashMap()
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val request = chain.request()
+        val body = request.body
+        if (!isEnabled || body == null || request.header("Content-Encoding") != null) {
+            return chain.proceed(request)
+        }
+
+        val level = selector.selectLevel(body.contentLength())
+        val measuredBody = MeasuredRequestBody(body, level)
+        val newRequest = request.newBuilder().apply {
+            if (level != CompressionLevelSelector.NO_COMPRESSION) {
+                header("Content-Encoding", "gzip")
+            }
+            method(request.method, measuredBody)
+        }.build()
+
+        val start = System.nanoTime()
+        val response = chain.proceed(newRequest)
+        val duration = System.nanoTime() - start
+
+        val uncompressed = measuredBody.uncompressedBytes
+        val compressed = measuredBody.compressedBytes
+        selector.update(level, uncompressed, compressed, measuredBody.cpuNanos, duration)
+        uncompressedCounter.add(uncompressed)
+        sentCounter.add(compressed)
+        if (uncompressed > 0L) {
+            val topic = request.url.pathSegments.last()
+            ratios.computeIfAbsent(topic) { PipelineMetrics.histogram("upload.compression_ratio.$it") }
+                .record(compressed * 1000L / uncompressed)
+        }
+        return response
+    }
+
+    /**
+     * Request body that is compressed while it is written, if [level] is not
+     * [CompressionLevelSelector.NO_COMPRESSION]. It measures the size before and after
+     * compression and the CPU time of compression.
+     */
+    private class MeasuredRequestBody(
+        private val body: RequestBody,
+        private val level: Int,
+    ) : RequestBody() {
+        @Volatile
+        var uncompressedBytes = 0L
+            private set
+        @Volatile
+        var compressedBytes = 0L
+            private set
+        @Volatile
+        var cpuNanos = 0L
+            private set
+
+        override fun contentType(): MediaType? = body.contentType()
+
+        override fun contentLength(): Long = if (level == CompressionLevelSelector.NO_COMPRESSION) {
+            body.contentLength()
+        } else -1L
+
+        override fun isOneShot(): Boolean = body.isOneShot()
+
+        override fun writeTo(sink: BufferedSink) {
+            val compressedSink = CountingSink(sink)
+            if (level == CompressionLevelSelector.NO_COMPRESSION) {
+                val bufferedSink = compressedSink.buffer()
+                body.writeTo(bufferedSink)
+                bufferedSink.emit()
+                uncompressedBytes = compressedSink.bytes
+            } else {
+                val gzipSink = GzipSink(compressedSink).apply { deflater.setLevel(level) }
+                val uncompressedSink = CountingSink(gzipSink, measureCpu = true)
+                uncompressedSink.buffer().use { body.writeTo(it) }
+                uncompressedBytes = uncompressedSink.bytes
+                cpuNanos = uncompressedSink.cpuNanos
+            }
+            compressedBytes = compressedSink.bytes
+        }
+    }
+
+    /** Counts the bytes written to it, and optionally the thread CPU time of writing them. */
+    private class CountingSink(
+        delegate: Sink,
+        private val measureCpu: Boolean = false,
+    ) : ForwardingSink(delegate) {
+        var bytes = 0L
+            private set
+        var cpuNanos = 0L
+            private set
+
+        override fun write(source: Buffer, byteCount: Long) {
+            measured { super.write(source, byteCount) }
+            bytes += byteCount
+        }
+
+        override fun close() = measured { super.close() }
+
+        private inline fun measured(block: () -> Unit) {
+            if (!measureCpu) return block()
+            val start = Debug.threadCpuTimeNanos()
+            block()
+            if (start >= 0L) {
+                cpuNanos += Debug.threadCpuTimeNanos() - start
+            }
+        }
+    }
+
+    companion object {
+        private val uncompressedCounter: Counter = PipelineMetrics.counter("upload.bytes_uncompressed")
+        private val sentCounter: Counter = PipelineMetrics.counter("upload.bytes_sent")
+    }
+}
@@ -0,0 +1,110 @@
+package org.radarbase.android.kafka
+
+import java.util.zip.Deflater
+
+/**
+ * Chooses the gzip compression level of upload requests. The level is chosen to minimize the
+ * estimated compression CPU time plus the transfer time of a request. On a metered network, the
+ * transfer time is weighted more heavily, so data usage is reduced further. As a result, fast
+ * unmetered links are used without compression and slow metered links with maximum compression.
+ *
+ * Estimates are based on typical compression ratios and CPU costs of each level. They are scaled
+ * by the compression ratio and CPU time that are measured for the levels in use, and the link
+ * throughput is measured from the request durations. Until a request large enough to measure
+ * has been sent, and for requests that are known to be small, [Deflater.BEST_SPEED] is used: it
+ * gives most of the size reduction at little CPU cost, while latency dominates such requests.
+ *
+ * @param isMetered whether the current network is metered.
+ */
+class CompressionLevelSelector(
+    private val isMetered: () -> Boolean,
+) {
+    /** Measured ratio relative to the typical compression ratio. */
+    private var ratioScale = 1.0
+    /** Measured CPU time relative to the typical CPU time. */
+    private var cpuScale = 1.0
+    /** Measured link throughput in bytes per second. */
+    private var throughput = INITIAL_THROUGHPUT
+    /** Whether a request large enough to measure has finished. */
+    private var hasMeasurements = false
+
+    /**
+     * Compression level for the next request, or [NO_COMPRESSION].
+     * @param contentLength size of the request body, or -1 if it is not known in advance.
+     */
+    @Synchronized
+    fun selectLevel(contentLength: Long = -1L): Int {
+        if (!hasMeasurements || contentLength in 0 until MIN_MEASURED_BYTES) {
+            return Deflater.BEST_SPEED
+        }
+        val transferWeight = if (isMetered()) METERED_TRANSFER_WEIGHT else 1.0
+        return LEVELS.minByOrNull { level ->
+            val cpuSeconds = level.nanosPerByte * cpuScale / 1e9
+            val transferSeconds = level.estimatedRatio() / throughput
+            cpuSeconds + transferWeight * transferSeconds
+        }!!.level
+    }
+
+    private fun LevelEstimate.estimatedRatio(): Double = if (level == NO_COMPRESSION) {
+        1.0
+    } else {
+        (ratio * ratioScale).coerceAtMost(1.0)
+    }
+
+    /**
+     * Update the estimates with a finished request.
+     * @param level compression level used for the request.
+     * @param uncompressedBytes size of the request body before compression.
+     * @param compressedBytes size of the request body that was sent.
+     * @param cpuNanos thread CPU time used for compression.
+     * @param durationNanos duration of the request, including compressing and sending the body.
+     */
+    @Synchronized
+    fun update(level: Int, uncompressedBytes: Long, compressedBytes: Long, cpuNanos: Long, durationNanos: Long) {
+        if (uncompressedBytes < MIN_MEASURED_BYTES || durationNanos <= 0L) return
+        hasMeasurements = true
+
+        // compression runs while sending, so it does not count towards the transfer time
+        val transferNanos = (durationNanos - cpuNanos).coerceAtLeast(1L)
+        throughput = ewma(throughput, compressedBytes * 1e9 / transferNanos)
+
+        val estimate = LEVELS.find { it.level == level } ?: return
+        if (level != NO_COMPRESSION) {
+            val ratio = compressedBytes.toDouble() / uncompressedBytes
+            ratioScale = ewma(ratioScale, ratio / estimate.ratio)
+            if (cpuNanos > 0L) {
+                cpuScale = ewma(cpuScale, cpuNanos.toDouble() / uncompressedBytes / estimate.nanosPerByte)
+            }
+        }
+    }
+
+    private fun ewma(current: Double, value: Double) = current + ALPHA * (value - current)
+
+    private data class LevelEstimate(
+        val level: Int,
+        /** Typical ratio of compressed to uncompressed size. */
+        val ratio: Double,
+        /** Typical compression CPU time per uncompressed byte on a mobile device. */
+        val nanosPerByte: Double,
+    )
+
+    companion object {
+        /** Level that disables compression. */
+        const val NO_COMPRESSION = Deflater.NO_COMPRESSION
+
+        private val LEVELS = listOf(
+            LevelEstimate(NO_COMPRESSION, 1.0, 0.0),
+            LevelEstimate(Deflater.BEST_SPEED, 0.35, 25.0),
+            LevelEstimate(DEFAULT_LEVEL, 0.28, 60.0),
+            LevelEstimate(Deflater.BEST_COMPRESSION, 0.26, 150.0),
+        )
+
+        /** Level that [Deflater.DEFAULT_COMPRESSION] corresponds to. */
+        private const val DEFAULT_LEVEL = 6
+        private const val INITIAL_THROUGHPUT = 1_000_000.0
+        private const val METERED_TRANSFER_WEIGHT = 4.0
+        private const val ALPHA = 0.3
+        /** Requests smaller than this are dominated by latency, not by throughput. */
+        private const val MIN_MEASURED_BYTES = 4_096L
+    }
+}
@@ -0,0 +1,190 @@
+package org.radarbase.android.kafka
+
+import okio.BufferedSink
+import okio.ByteString
+import okio.ByteString.Companion.encodeUtf8
+import org.apache.avro.Schema
+import org.apache.avro.generic.GenericData
+import org.apache.avro.generic.GenericFixed
+import org.apache.avro.generic.IndexedRecord
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.util.*
+
+/**
+ * Writes values of a schema in the Avro JSON encoding directly to a sink. The schema is compiled
+ * once into a tree of writers, so unlike [org.apache.avro.io.JsonEncoder] no grammar is evaluated
+ * while writing and no intermediate strings are created. The output is the same as that of
+ * [org.apache.avro.io.JsonEncoder], without whitespace.
+ *
+ * @param schema schema of the values to write. Values must be valid for this schema.
+ * @param avroData data model used to resolve union branches.
+ */
+class JsonRecordWriter(
+    schema: Schema,
+    private val avroData: GenericData,
+) {
+    private val compiled: MutableMap<Schema, ValueWriter> = IdentityHashMap()
+    private val writer: ValueWriter = compile(schema)
+
+    /** Write [value] to [sink]. */
+    @Throws(IOException::class)
+    fun write(sink: BufferedSink, value: Any?) = writer.write(sink, value)
+
+    private fun interface ValueWriter {
+        @Throws(IOException::class)
+        fun write(sink: BufferedSink, value: Any?)
+    }
+
+    private fun compile(schema: Schema): ValueWriter {
+        compiled[schema]?.let { return it }
+        return when (schema.type) {
+            Schema.Type.RECORD -> compileRecord(schema)
+            Schema.Type.ENUM -> ValueWriter { sink, value -> sink.writeJsonString(value.toString()) }
+            Schema.Type.ARRAY -> {
+                val elementWriter = compile(schema.elementType)
+                ValueWriter { sink, value ->
+                    sink.writeByte('['.code)
+                    (value as Collection<*>).forEachIndexed { i, element ->
+                        if (i > 0) sink.writeByte(','.code)
+                        elementWriter.write(sink, element)
+                    }
+                    sink.writeByte(']'.code)
+                }
+            }
+            Schema.Type.MAP -> {
+                val valueWriter = compile(schema.valueType)
+                ValueWriter { sink, value ->
+                    sink.writeByte('{'.code)
+                    var isFirst = true
+                    (value as Map<*, *>).forEach { (k, v) ->
+                        if (isFirst) isFirst = false else sink.writeByte(','.code)
+                        sink.writeJsonString(k.toString())
+                        sink.writeByte(':'.code)
+                        valueWriter.write(sink, v)
+                    }
+                    sink.writeByte('}'.code)
+                }
+            }
+            Schema.Type.UNION -> compileUnion(schema)
+            Schema.Type.FIXED -> ValueWriter { sink, value ->
+                val bytes = (value as GenericFixed).bytes()
+                sink.writeJsonBytes(bytes, 0, bytes.size)
+            }
+            Schema.Type.STRING -> ValueWriter { sink, value -> sink.writeJsonString(value as CharSequence) }
+            Schema.Type.BYTES -> ValueWriter { sink, value ->
+                val buffer = value as ByteBuffer
+                if (buffer.hasArray()) {
+                    sink.writeJsonBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining())
+                } else {
+                    val bytes = ByteArray(buffer.remaining())
+                    buffer.duplicate().get(bytes)
+                    sink.writeJsonBytes(bytes, 0, bytes.size)
+                }
+            }
+            Schema.Type.INT, Schema.Type.LONG -> ValueWriter { sink, value ->
+                sink.writeDecimalLong((value as Number).toLong())
+            }
+            Schema.Type.FLOAT -> ValueWriter { sink, value ->
+                val f = value as Float
+                if (f.isNaN() || f.isInfinite()) throw IOException("Cannot encode non-number floats")
+                sink.writeUtf8(f.toString())
+            }
+            Schema.Type.DOUBLE -> ValueWriter { sink, value ->
+                val d = value as Double
+                if (d.isNaN() || d.isInfinite()) throw IOException("Cannot encode non-number doubles")
+                sink.writeUtf8(d.toString())
+            }
+            Schema.Type.BOOLEAN -> ValueWriter { sink, value -> sink.write(if (value as Boolean) TRUE else FALSE) }
+            Schema.Type.NULL -> ValueWriter { sink, _ -> sink.write(NULL) }
+            null -> throw IllegalArgumentException("Schema $schema has no type")
+        }.also { compiled[schema] = it }
+    }
+
+    private fun compileRecord(schema: Schema): ValueWriter {
+        val fields = schema.fields
+        // field names are encoded once, including separators
+        val fieldNames = Array(fields.size) { i ->
+            buildString {
+                append(if (i == 0) '{' else ',')
+                append(jsonString(fields[i].name()))
+                append(':')
+            }.encodeUtf8()
+        }
+        val fieldWriters = arrayOfNulls<ValueWriter>(fields.size)
+        val recordWriter = ValueWriter { sink, value ->
+            val record = value as IndexedRecord
+            if (fieldNames.isEmpty()) sink.writeByte('{'.code)
+            for (i in fieldNames.indices) {
+                sink.write(fieldNames[i])
+                fieldWriters[i]!!.write(sink, record.get(fields[i].pos()))
+            }
+            sink.writeByte('}'.code)
+        }
+        // register before compiling fields, so recursive references find this writer
+        compiled[schema] = recordWriter
+        fields.forEachIndexed { i, field -> fieldWriters[i] = compile(field.schema()) }
+        return recordWriter
+    }
+
+    private fun compileUnion(schema: Schema): ValueWriter {
+        val types = schema.types
+        val labels = Array(types.size) { i -> "{${jsonString(types[i].fullName)}:".encodeUtf8() }
+        val branchWriters = types.map { compile(it) }
+        return ValueWriter { sink, value ->
+            val index = avroData.resolveUnion(schema, value)
+            if (types[index].type == Schema.Type.NULL) {
+                sink.write(NULL)
+            } else {
+                sink.write(labels[index])
+                branchWriters[index].write(sink, value)
+                sink.writeByte('}'.code)
+            }
+        }
+    }
+
+    companion object {
+        private val NULL: ByteString = "null".encodeUtf8()
+        private val TRUE: ByteString = "true".encodeUtf8()
+        private val FALSE: ByteString = "false".encodeUtf8()
+        private val HEX_DIGITS = "0123456789abcdef".toCharArray()
+
+        private fun jsonString(value: String): String = okio.Buffer()
+            .apply { writeJsonString(value) }
+            .readUtf8()
+
+        /**
+         * Write [value] as a JSON string, escaped like [org.apache.avro.io.JSONWriter]. Runs of
+         * characters that need no escaping are written at once.
+         */
+        private fun BufferedSink.writeJsonString(value: CharSequence) {
+            writeByte('"'.code)
+            val string = value.toString()
+            var start = 0
+            for (i in string.indices) {
+                val c = string[i]
+                if (c.code > 0x1F && c != '"' && c != '\\' && c != '/') continue
+                if (start < i) writeUtf8(string, start, i)
+                when (c) {
+                    '"', '\\', '/' -> writeByte('\\'.code).writeByte(c.code)
+                    '\t' -> writeUtf8("\\t")
+                    '\b' -> writeUtf8("\\b")
+                    '\n' -> writeUtf8("\\n")
+                    '\r' -> writeUtf8("\\r")
+                    '\u000c' -> writeUtf8("\\f")
+                    else -> writeUtf8("\\u00")
+                        .writeByte(HEX_DIGITS[c.code shr 4].code)
+                        .writeByte(HEX_DIGITS[c.code and 0xF].code)
+                }
+                start = i + 1
+            }
+            if (start < string.length) writeUtf8(string, start, string.length)
+            writeByte('"'.code)
+        }
+
+        /** Write bytes as a JSON string of ISO-8859-1 characters, like the Avro JSON encoding. */
+        private fun BufferedSink.writeJsonBytes(bytes: ByteArray, offset: Int, length: Int) {
+            writeJsonString(String(bytes, offset, length, Charsets.ISO_8859_1))
+        }
+    }
+}
@@ -17,13 +17,16 @@
 package org.radarbase.android.kafka
 
 import android.os.Process
+import android.os.SystemClock
 import org.apache.avro.Schema
 import org.apache.avro.SchemaValidationException
 import org.apache.avro.generic.IndexedRecord
 import org.radarbase.android.RadarService
 import org.radarbase.android.data.DataCacheGroup
 import org.radarbase.android.data.DataHandler
+import org.radarbase.android.data.DeprecatedCacheMigrator
 import org.radarbase.android.data.ReadableDataCache
+import org.radarbase.android.metrics.PipelineMetrics
 import org.radarbase.android.source.PluginMetadataStore
 import org.radarbase.android.util.FirebaseEventLogger
 import org.radarbase.android.util.SafeHandler
@@ -37,6 +40,8 @@ import org.slf4j.LoggerFactory
 import java.io.Closeable
 import java.io.IOException
 import java.util.*
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Future
 import java.util.concurrent.atomic.AtomicBoolean
 import kotlin.collections.HashSet
 
@@ -51,12 +56,15 @@ class KafkaDataSubmitter(
     private val sender: KafkaSender,
     config: SubmitterConfiguration,
     radarService: RadarService? = null,
+    /** Sender that is tried first for each batch, if set. */
+    private val jsonSender: StreamingJsonSender? = null,
 ) : Closeable {
 
     private val submitHandler = SafeHandler.getInstance("KafkaDataSubmitter", Process.THREAD_PRIORITY_BACKGROUND)
     private val topicSenders: MutableMap<String, KafkaTopicSender<Any, Any>> = HashMap()
     private val connection: KafkaConnectionChecker
     private val pluginMetadata: PluginMetadataStore? = radarService?.pluginMetadata
+    private val migrator = DeprecatedCacheMigrator()
 
     var config: SubmitterConfiguration = config
         set(newValue) {
@@ -69,6 +77,13 @@ class KafkaDataSubmitter(
             }
         }
 
+    @Volatile
+    private var holdUntil: Long = 0L
+
+    /** Whether uploads of new batches are currently held. */
+    private val isHeld: Boolean
+        get() = SystemClock.elapsedRealtime() < holdUntil
+
     private var uploadFuture: SafeHandler.HandlerFuture? = null
     private var uploadIfNeededFuture: SafeHandler.HandlerFuture? = null
     /** Upload rate in milliseconds.  */
@@ -114,21 +129,49 @@ class KafkaDataSubmitter(
         // Get upload frequency from system property
         uploadFuture = this.submitHandler.repeat(uploadRate) {
             val topicsToSend = dataHandler.activeCaches.mapTo(HashSet()) { it.topicName }
-            while (connection.isConnected && topicsToSend.isNotEmpty()) {
+            while (connection.isConnected && !isHeld && topicsToSend.isNotEmpty()) {
                 logger.debug("Uploading topics {}", topicsToSend)
                 uploadCaches(topicsToSend)
             }
+            if (config.migrateDeprecatedCaches && topicsToSend.isEmpty()) {
+                migrateDeprecatedCaches()
+            }
         }
 
         uploadIfNeededFuture = this.submitHandler.repeat(uploadRate / 5) {
             var sendAgain = true
-            while (connection.isConnected && sendAgain) {
+            while (connection.isConnected && !isHeld && sendAgain) {
                 logger.debug("Uploading full topics")
                 sendAgain = uploadCachesIfNeeded()
             }
         }
     }
 
+    /**
+     * Do not start uploading new batches for at most [duration] milliseconds. A batch that
+     * fails to authenticate in this period does not mark the connection as unauthorized.
+     */
+    fun holdUploads(duration: Long) {
+        logger.info("Holding uploads for at most {} ms", duration)
+        holdUntil = SystemClock.elapsedRealtime() + duration
+    }
+
+    /** Resume uploads after [holdUploads]. */
+    fun resumeUploads() {
+        if (holdUntil != 0L) {
+            logger.info("Resuming uploads")
+            holdUntil = 0L
+        }
+    }
+
+    private fun didFail(ex: Exception) {
+        if (ex is AuthenticationException && isHeld) {
+            logger.info("Upload not authenticated while authentication is refreshed. Retrying later.")
+        } else {
+            connection.didDisconnect(ex)
+        }
+    }
+
     /**
      * Close the submitter eventually. This does not flush any caches.
      */
@@ -194,7 +237,7 @@ class KafkaDataSubmitter(
                 connection.didConnect()
             }
         } catch (ex: Exception) {
-            connection.didDisconnect(ex)
+            didFail(ex)
             sendAgain = false
         }
 
@@ -202,24 +245,38 @@ class KafkaDataSubmitter(
     }
 
     /**
-     * Upload a limited amount of data stored in the database which is not yet sent.
+     * Upload a limited amount of data stored in the database which is not yet sent. While a
+     * cache is being uploaded, the records of the next cache are already read, so the submitter
+     * does not wait for the cache thread between uploads.
      */
     private fun uploadCaches(toSend: MutableSet<String>) {
         try {
             val uploadingNotified = AtomicBoolean(false)
-            toSend -= dataHandler.activeCaches
-                .asSequence()
+            val groups = dataHandler.activeCaches.filter { it.topicName in toSend }
+            val caches = groups.flatMap { group ->
+                listOf(group.activeDataCache) + group.deprecatedCaches.filterNot { cache ->
+                    config.migrateDeprecatedCaches && migrator.canMigrate(group, cache)
+                }
+            }
+            val numberSent = IdentityHashMap<ReadableDataCache, Int>(caches.size)
+
+            var nextRecords = caches.firstOrNull()?.requestUnsentRecords()
+            caches.forEachIndexed { i, cache ->
+                val records = nextRecords?.awaitRecords()
+                nextRecords = caches.getOrNull(i + 1)?.requestUnsentRecords()
+                numberSent[cache] = uploadCache(cache, records, uploadingNotified)
+            }
+
+            toSend -= groups
                 .filter { group ->
-                    if (group.topicName in toSend) {
-                        val sentActive = uploadCache(group.activeDataCache, uploadingNotified)
-                        val sentDeprecated = group.deprecatedCaches.map { uploadCache(it, uploadingNotified) }
+                    val sentActive = numberSent[group.activeDataCache] ?: 0
+                    val sentDeprecated = group.deprecatedCaches.map { numberSent[it] ?: 0 }
 
-                        if (sentDeprecated.any { it == 0 }) {
-                            group.deleteEmptyCaches()
-                        }
-                        sentActive < config.amountLimit
-                                && sentDeprecated.all { it < config.amountLimit }
-                    } else false
+                    if (sentDeprecated.any { it == 0 }) {
+                        group.deleteEmptyCaches()
+                    }
+                    sentActive < config.amountLimit
+                            && sentDeprecated.all { it < config.amountLimit }
                 }
                 .mapTo(HashSet(), DataCacheGroup<*,*>::topicName)
 
@@ -228,7 +285,44 @@ class KafkaDataSubmitter(
                 connection.didConnect()
             }
         } catch (ex: Exception) {
-            connection.didDisconnect(ex)
+            didFail(ex)
+        }
+    }
+
+    private fun ReadableDataCache.requestUnsentRecords() =
+        getUnsentRecordsAsync(config.amountLimit, config.sizeLimit)
+
+    @Throws(IOException::class)
+    private fun Future<RecordData<Any, Any?>?>.awaitRecords(): RecordData<Any, Any?>? = try {
+        get()
+    } catch (ex: InterruptedException) {
+        logger.warn("Reading records was interrupted")
+        Thread.currentThread().interrupt()
+        null
+    } catch (ex: ExecutionException) {
+        when (val cause = ex.cause) {
+            is IOException -> throw cause
+            is RuntimeException -> throw cause
+            else -> throw IOException("Failed to read records", ex)
+        }
+    }
+
+    /**
+     * Move records of deprecated caches into the active caches of their topics, while all
+     * data has been uploaded. Deprecated caches that can be migrated are not uploaded separately
+     * while migration is enabled.
+     */
+    private fun migrateDeprecatedCaches() {
+        var remaining = config.amountLimit * MIGRATION_BATCHES
+        try {
+            for (group in dataHandler.activeCaches) {
+                if (remaining <= 0) break
+                if (group.deprecatedCaches.isNotEmpty()) {
+                    remaining -= migrator.migrate(group, remaining)
+                }
+            }
+        } catch (ex: Exception) {
+            logger.error("Failed to migrate deprecated caches", ex)
         }
     }
 
@@ -237,9 +331,16 @@ class KafkaDataSubmitter(
      * @return number of records sent.
      */
     @Throws(IOException::class, SchemaValidationException::class)
-    private fun uploadCache(cache: ReadableDataCache, uploadingNotified: AtomicBoolean): Int {
-        val data = cache.getUnsentRecords(config.amountLimit, config.sizeLimit)
-            ?: return 0
+    private fun uploadCache(cache: ReadableDataCache, uploadingNotified: AtomicBoolean): Int =
+        uploadCache(cache, cache.getUnsentRecords(config.amountLimit, config.sizeLimit), uploadingNotified)
+
+    /**
+     * Upload records that were read from a single table.
+     * @return number of records sent.
+     */
+    @Throws(IOException::class, SchemaValidationException::class)
+    private fun uploadCache(cache: ReadableDataCache, records: RecordData<Any, Any?>?, uploadingNotified: AtomicBoolean): Int {
+        val data = records ?: return 0
 
         val size = data.size()
         if (size == 0) {
@@ -298,15 +399,23 @@ class KafkaDataSubmitter(
                     logger.warn("Trying to upload data without validating. PluginMetadata is null")
                 }
                 try {
-                    sender(topic).run {
-                        send(AvroRecordData<Any, Any>(data.topic, data.key, recordsNotNull))
-                        flush()
+                    uploadDuration.time {
+                        val recordData = AvroRecordData<Any, Any>(data.topic, data.key, recordsNotNull)
+                        if (jsonSender?.send(recordData) != true) {
+                            sender(topic).run {
+                                send(recordData)
+                                flush()
+                            }
+                        }
                     }
+                    uploadedRecords.add(recordsNotNull.size.toLong())
                     dataHandler.updateRecordsSent(topic.name, size.toLong())
                 } catch (ex: AuthenticationException) {
+                    uploadFailures.increment()
                     dataHandler.updateRecordsSent(topic.name, -1)
                     throw ex
                 } catch (e: Exception) {
+                    uploadFailures.increment()
                     dataHandler.updateServerStatus(ServerStatusListener.Status.UPLOADING_FAILED)
                     dataHandler.updateRecordsSent(topic.name, -1)
                     throw e
@@ -345,5 +454,11 @@ class KafkaDataSubmitter(
 
     companion object {
         private val logger = LoggerFactory.getLogger(KafkaDataSubmitter::class.java)
+        private val uploadDuration = PipelineMetrics.histogram("upload.request_duration")
+        private val uploadedRecords = PipelineMetrics.counter("upload.records")
+        private val uploadFailures = PipelineMetrics.counter("upload.failures")
+
+        /** Number of requests worth of records to migrate per upload interval. */
+        private const val MIGRATION_BATCHES = 10
     }
 }
@@ -0,0 +1,184 @@
+package org.radarbase.android.kafka
+
+import okhttp3.Headers
+import okhttp3.MediaType
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.RequestBody
+import okio.BufferedSink
+import okio.ByteString.Companion.encodeUtf8
+import okio.GzipSink
+import okio.buffer
+import org.apache.avro.Schema
+import org.apache.avro.generic.GenericData
+import org.apache.avro.specific.SpecificData
+import org.radarbase.data.RecordData
+import org.radarbase.producer.AuthenticationException
+import org.radarbase.producer.rest.RestClient
+import org.radarbase.producer.rest.SchemaRetriever
+import org.radarbase.topic.AvroTopic
+import org.slf4j.LoggerFactory
+import java.io.IOException
+import java.util.concurrent.TimeUnit
+
+/**
+ * Sends records to the Kafka REST proxy in the JSON envelope, writing the envelope and the
+ * records directly to the request body with a [JsonRecordWriter] per schema. Records are only
+ * sent this way if the schemas in the schema registry equal the local schemas. Otherwise, they
+ * need to be converted to the registry schema and [send] returns false, so the regular
+ * [org.radarbase.producer.rest.RestSender] can be used instead.
+ *
+ * Per topic, only one thread may send data at a time.
+ *
+ * @param fallbackRecheckInterval time in milliseconds after which a topic whose registry schemas
+ *      differed from the local schemas is checked again.
+ */
+class StreamingJsonSender(
+    @Volatile
+    var client: RestClient,
+    schemaRetriever: SchemaRetriever,
+    @Volatile
+    var headers: Headers,
+    private val fallbackRecheckInterval: Long = DEFAULT_FALLBACK_RECHECK_INTERVAL,
+) {
+    /** Schema retriever to check registry schemas with. Setting it forgets all checked topics. */
+    @Volatile
+    var schemaRetriever: SchemaRetriever = schemaRetriever
+        set(value) {
+            field = value
+            resetTopics()
+        }
+
+    /** Whether to gzip the request body. */
+    @Volatile
+    var useCompression: Boolean = false
+
+    /** Whether to send data with this sender at all. */
+    @Volatile
+    var isEnabled: Boolean = true
+
+    private val topicWriters: MutableMap<String, TopicEntry> = HashMap()
+
+    /**
+     * Send [records] if the registry schemas of their topic equal the local schemas.
+     * @return whether the records were sent.
+     * @throws AuthenticationException if the server does not accept the credentials.
+     * @throws IOException if the records could not be sent.
+     */
+    @Throws(IOException::class)
+    fun send(records: RecordData<Any, Any>): Boolean {
+        if (!isEnabled) return false
+        val topic = records.topic
+        val writer = topicWriter(topic) ?: return false
+
+        val request = client.requestBuilder("topics/${topic.name}")
+            .headers(headers)
+            .header("Accept", KAFKA_REST_ACCEPT)
+            .apply {
+                if (useCompression) header("Content-Encoding", "gzip")
+            }
+            .post(RecordsRequestBody(writer, records, useCompression))
+            .build()
+
+        client.request(request).use { response ->
+            if (response.isSuccessful) return true
+            val body = RestClient.responseBody(response)
+            when (response.code) {
+                401, 403 -> throw AuthenticationException("Kafka REST proxy rejected credentials: $body")
+                422 -> {
+                    // the schema may have changed in the registry
+                    synchronized(topicWriters) { topicWriters -= topic.name }
+                    throw IOException("Kafka REST proxy rejected records of topic ${topic.name}: $body")
+                }
+                else -> throw IOException("Failed to send records of topic ${topic.name} (HTTP ${response.code}): $body")
+            }
+        }
+    }
+
+    /** Forget the registry schemas of all topics, so they are checked again before sending. */
+    fun resetTopics() {
+        synchronized(topicWriters) { topicWriters.clear() }
+    }
+
+    private fun topicWriter(topic: AvroTopic<*, *>): TopicWriter? {
+        synchronized(topicWriters) {
+            val entry = topicWriters[topic.name]
+            if (entry != null && (entry.writer != null || System.nanoTime() < entry.recheckAt)) {
+                return entry.writer
+            }
+        }
+        val schemaRetriever = schemaRetriever
+        val keyMetadata = schemaRetriever.getOrSetSchemaMetadata(topic.name, false, topic.keySchema, -1)
+        val valueMetadata = schemaRetriever.getOrSetSchemaMetadata(topic.name, true, topic.valueSchema, -1)
+        val writer = if (keyMetadata.schema == topic.keySchema && valueMetadata.schema == topic.valueSchema) {
+            TopicWriter(topic.keySchema, topic.valueSchema, keyMetadata.id, valueMetadata.id)
+        } else {
+            logger.info("Registry schema of topic {} differs from the local schema; not streaming JSON", topic.name)
+            null
+        }
+        val recheckAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(fallbackRecheckInterval)
+        synchronized(topicWriters) { topicWriters[topic.name] = TopicEntry(writer, recheckAt) }
+        return writer
+    }
+
+    /**
+     * Result of checking the registry schemas of a topic. Without [writer], the topic is sent
+     * with the regular sender until [recheckAt], in [System.nanoTime] time.
+     */
+    private class TopicEntry(val writer: TopicWriter?, val recheckAt: Long)
+
+    /** Compiled writers and the envelope prefix of a topic. */
+    private class TopicWriter(
+        keySchema: Schema,
+        valueSchema: Schema,
+        keySchemaId: Int,
+        valueSchemaId: Int,
+    ) {
+        val prefix = """{"key_schema_id":$keySchemaId,"value_schema_id":$valueSchemaId,"records":[""".encodeUtf8()
+        val keyWriter = JsonRecordWriter(keySchema, avroData)
+        val valueWriter = JsonRecordWriter(valueSchema, avroData)
+    }
+
+    /** Writes the Kafka REST envelope with all records while the request is sent. */
+    private class RecordsRequestBody(
+        private val writer: TopicWriter,
+        private val records: RecordData<Any, Any>,
+        private val useCompression: Boolean,
+    ) : RequestBody() {
+        override fun contentType(): MediaType = KAFKA_REST_AVRO_ENCODING
+
+        override fun writeTo(sink: BufferedSink) {
+            if (useCompression) {
+                GzipSink(sink).buffer().use { writeRecords(it) }
+            } else {
+                writeRecords(sink)
+            }
+        }
+
+        private fun writeRecords(sink: BufferedSink) {
+            sink.write(writer.prefix)
+            val key = records.key
+            var isFirst = true
+            for (value in records) {
+                if (isFirst) isFirst = false else sink.writeByte(','.code)
+                sink.write(RECORD_KEY)
+                writer.keyWriter.write(sink, key)
+                sink.write(RECORD_VALUE)
+                writer.valueWriter.write(sink, value)
+                sink.writeByte('}'.code)
+            }
+            sink.write(SUFFIX)
+        }
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(StreamingJsonSender::class.java)
+        private val DEFAULT_FALLBACK_RECHECK_INTERVAL = TimeUnit.HOURS.toMillis(1)
+
+        private val avroData: GenericData = SpecificData.get()
+        private val KAFKA_REST_AVRO_ENCODING = "application/vnd.kafka.avro.v2+json; charset=utf-8".toMediaType()
+        private const val KAFKA_REST_ACCEPT = "application/vnd.kafka.v2+json, application/vnd.kafka+json, application/json"
+        private val RECORD_KEY = """{"key":""".encodeUtf8()
+        private val RECORD_VALUE = ""","value":""".encodeUtf8()
+        private val SUFFIX = "]}".encodeUtf8()
+    }
+}
@@ -9,7 +9,9 @@ data class SubmitterConfiguration(
         var amountLimit: Int = 1000,
         var sizeLimit: Long = 5000000L,
         var uploadRate: Long = 10L,
-        var uploadRateMultiplier: Int = 1) {
+        var uploadRateMultiplier: Int = 1,
+        /** Whether to migrate deprecated caches to the active schema while no data needs uploading. */
+        var migrateDeprecatedCaches: Boolean = false) {
 
     fun configure(config: SingleRadarConfiguration) {
         uploadRate = config.getLong(RadarConfiguration.KAFKA_UPLOAD_RATE_KEY, uploadRate)
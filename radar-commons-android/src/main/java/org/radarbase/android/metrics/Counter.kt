@@ -0,0 +1,18 @@
+package org.radarbase.android.metrics
+
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Monotonically increasing count. Increments do not allocate and are cheap under contention.
+ */
+class Counter internal constructor(val name: String) {
+    private val adder = LongAdder()
+
+    /** Current count. */
+    val count: Long
+        get() = adder.sum()
+
+    fun increment() = adder.increment()
+
+    fun add(value: Long) = adder.add(value)
+}
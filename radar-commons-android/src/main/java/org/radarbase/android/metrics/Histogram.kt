@@ -0,0 +1,104 @@
+package org.radarbase.android.metrics
+
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Histogram of non-negative values, for example durations in nanoseconds or sizes in bytes.
+ * Like HDR histograms, values are counted in logarithmic buckets that are each split into
+ * [SUB_BUCKETS] linear sub-buckets, so any value is stored with a relative error of at most
+ * 1 / [SUB_BUCKETS]. Recording a value does not allocate.
+ */
+class Histogram internal constructor(val name: String) {
+    private val counts = AtomicLongArray(NUMBER_OF_BUCKETS)
+    private val sum = LongAdder()
+
+    /** Record a single value. Negative values are recorded as zero. */
+    fun record(value: Long) {
+        val nonNegative = value.coerceAtLeast(0L)
+        counts.incrementAndGet(bucketIndex(nonNegative))
+        sum.add(nonNegative)
+    }
+
+    /** Run [block] and record its duration in nanoseconds. */
+    inline fun <T> time(block: () -> T): T {
+        val start = System.nanoTime()
+        try {
+            return block()
+        } finally {
+            record(System.nanoTime() - start)
+        }
+    }
+
+    /** Copy of the current state. Values that are recorded concurrently may be left out. */
+    fun snapshot(): HistogramSnapshot = HistogramSnapshot(
+        LongArray(NUMBER_OF_BUCKETS) { counts.get(it) },
+        sum.sum(),
+    )
+
+    companion object {
+        internal const val SUB_BUCKET_BITS = 3
+        internal const val SUB_BUCKETS = 1 shl SUB_BUCKET_BITS
+        internal const val NUMBER_OF_BUCKETS = (Long.SIZE_BITS - SUB_BUCKET_BITS) * SUB_BUCKETS
+
+        internal fun bucketIndex(value: Long): Int {
+            if (value < SUB_BUCKETS) return value.toInt()
+            val exponent = Long.SIZE_BITS - 1 - java.lang.Long.numberOfLeadingZeros(value)
+            val shift = exponent - SUB_BUCKET_BITS
+            val subBucket = ((value ushr shift) and (SUB_BUCKETS - 1).toLong()).toInt()
+            return (shift + 1) * SUB_BUCKETS + subBucket
+        }
+
+        /** Lowest value that is stored in bucket [index]. */
+        internal fun lowerBound(index: Int): Long {
+            if (index < SUB_BUCKETS) return index.toLong()
+            val shift = index / SUB_BUCKETS - 1
+            return (SUB_BUCKETS + index % SUB_BUCKETS).toLong() shl shift
+        }
+
+        /** Highest value that is stored in bucket [index]. */
+        internal fun upperBound(index: Int): Long =
+            if (index + 1 < NUMBER_OF_BUCKETS) lowerBound(index + 1) - 1 else Long.MAX_VALUE
+    }
+}
+
+/** Immutable state of a [Histogram]. */
+class HistogramSnapshot internal constructor(
+    private val counts: LongArray,
+    /** Sum of all recorded values. */
+    val sum: Long,
+) {
+    /** Number of recorded values. */
+    val count: Long = counts.sum()
+
+    /** Mean of recorded values, or zero if no values were recorded. */
+    val mean: Double
+        get() = if (count > 0) sum.toDouble() / count else 0.0
+
+    /** Approximate maximum recorded value, or zero if no values were recorded. */
+    val max: Long
+        get() = percentile(1.0)
+
+    /**
+     * Approximate value below which given fraction of recorded values fall. The result is the
+     * highest value of the bucket that contains the percentile.
+     * @param fraction fraction in range [0, 1].
+     * @return percentile value, or zero if no values were recorded.
+     */
+    fun percentile(fraction: Double): Long {
+        if (count == 0L) return 0L
+        val rank = (fraction.coerceIn(0.0, 1.0) * count).toLong().coerceAtLeast(1L)
+        var seen = 0L
+        for (i in counts.indices) {
+            seen += counts[i]
+            if (seen >= rank) return Histogram.upperBound(i)
+        }
+        return Histogram.upperBound(counts.size - 1)
+    }
+
+    /** Values that were recorded since [previous] was taken. */
+    operator fun minus(previous: HistogramSnapshot): HistogramSnapshot = HistogramSnapshot(
+        LongArray(counts.size) { (counts[it] - previous.counts[it]).coerceAtLeast(0L) },
+        sum - previous.sum,
+    )
+}
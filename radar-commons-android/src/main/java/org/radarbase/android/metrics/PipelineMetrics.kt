@@ -0,0 +1,66 @@
+package org.radarbase.android.metrics
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+
+/**
+ * Process-wide registry of data pipeline metrics. Components get their metrics once, for example
+ * in a companion object or constructor, and record values without further lookups. Metrics are
+ * read through [snapshot], for example by the application status plugin or by a UI through
+ * [org.radarbase.android.IRadarBinder.pipelineMetrics].
+ *
+ * Names are dot-separated, starting with the pipeline stage, e.g. `cache.flush_duration`.
+ * Durations are recorded in nanoseconds and sizes in bytes.
+ */
+object PipelineMetrics {
+    private val counters: ConcurrentMap<String, Counter> = ConcurrentHashMap()
+    private val gauges: ConcurrentMap<String, () -> Long> = ConcurrentHashMap()
+    private val histograms: ConcurrentMap<String, Histogram> = ConcurrentHashMap()
+
+    /** Get or create the counter with given name. */
+    fun counter(name: String): Counter = counters.computeIfAbsent(name, ::Counter)
+
+    /** Get or create the histogram with given name. */
+    fun histogram(name: String): Histogram = histograms.computeIfAbsent(name, ::Histogram)
+
+    /**
+     * Register a gauge that computes its value when a snapshot is taken. The value should be
+     * cheap to compute and safe to get from any thread. An existing gauge with the same name is
+     * replaced.
+     */
+    fun gauge(name: String, value: () -> Long) {
+        gauges[name] = value
+    }
+
+    /** Remove a gauge, for example when the component that it reads is closed. */
+    fun removeGauge(name: String) {
+        gauges.remove(name)
+    }
+
+    /** Current value of all metrics. */
+    fun snapshot(): MetricsSnapshot = MetricsSnapshot(
+        time = System.currentTimeMillis(),
+        counters = counters.mapValues { (_, counter) -> counter.count },
+        gauges = gauges.mapValues { (_, gauge) -> gauge() },
+        histograms = histograms.mapValues { (_, histogram) -> histogram.snapshot() },
+    )
+}
+
+/** Values of all metrics at a given time. */
+data class MetricsSnapshot(
+    /** Time of the snapshot in milliseconds since the Unix Epoch. */
+    val time: Long,
+    val counters: Map<String, Long>,
+    val gauges: Map<String, Long>,
+    val histograms: Map<String, HistogramSnapshot>,
+) {
+    /**
+     * Metrics over the interval since [previous] was taken. Gauges keep their current value.
+     */
+    operator fun minus(previous: MetricsSnapshot): MetricsSnapshot = copy(
+        counters = counters.mapValues { (name, count) -> count - (previous.counters[name] ?: 0L) },
+        histograms = histograms.mapValues { (name, histogram) ->
+            previous.histograms[name]?.let { histogram - it } ?: histogram
+        },
+    )
+}
@@ -22,13 +22,18 @@ import org.apache.avro.specific.SpecificRecord
 import org.radarbase.android.RadarConfiguration
 import org.radarbase.android.RadarConfiguration.Companion.SOURCE_ID_KEY
 import org.radarbase.android.auth.SourceMetadata
+import org.radarbase.android.config.SingleRadarConfiguration
 import org.radarbase.android.data.DataCache
+import org.radarbase.android.metrics.Counter
+import org.radarbase.android.metrics.PipelineMetrics
 import org.radarbase.android.util.ChangeRunner
 import org.radarbase.android.util.SafeHandler
 import org.radarbase.topic.AvroTopic
 import org.radarcns.kafka.ObservationKey
 import org.slf4j.LoggerFactory
 import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
 
 /**
  * SourceManager that handles some common functionality.
@@ -65,6 +70,10 @@ abstract class AbstractSourceManager<S : SourceService<T>, T : BaseSourceState>(
 
     private val statusChanges = ChangeRunner(service.state.status)
 
+    private val deadbandFilters: MutableMap<String, DeadbandFilter<*>> = ConcurrentHashMap()
+    private val ingestCounters: MutableMap<String, Counter> = ConcurrentHashMap()
+    private val dutyCycles: MutableList<DutyCycleScheduler> = CopyOnWriteArrayList()
+
     /**
      * Source status. The source status should be updated with the following meanings:
      *
@@ -134,6 +143,7 @@ abstract class AbstractSourceManager<S : SourceService<T>, T : BaseSourceState>(
                 valueClass::class.java,
             )
             addTopicMapping(name)
+            ingestCounters[name] = PipelineMetrics.counter("ingest.records.$name")
             return dataHandler.registerCache(topic, handler)
         } catch (e: ReflectiveOperationException) {
             logger.error("Error creating topic {}", name, e)
@@ -144,6 +154,57 @@ abstract class AbstractSourceManager<S : SourceService<T>, T : BaseSourceState>(
         }
     }
 
+    /**
+     * Add a change-only filter to given cache. Records sent to the cache with [send] are
+     * suppressed if their [fields] did not change significantly since the last record that was
+     * sent. The filter is only active if its thresholds are configured, see
+     * [DeadbandFilter.Configuration.configure].
+     * @param time time of a record in seconds.
+     * @param fields numeric fields of a record to compare.
+     */
+    protected fun <V : SpecificRecord> addDeadbandFilter(
+        dataCache: DataCache<ObservationKey, V>,
+        time: (V) -> Double,
+        vararg fields: (V) -> Double,
+    ): DeadbandFilter<V> {
+        val topicName = dataCache.topic.name
+        return DeadbandFilter(topicName, time, *fields)
+            .also { deadbandFilters[topicName] = it }
+    }
+
+    /**
+     * Create a duty cycle for continuous data collection. Call [DutyCycleScheduler.start] instead
+     * of starting data collection directly, and start and stop data collection in [onStart] and
+     * [onStop]. Without configuration, data is collected continuously. The duty cycle is closed
+     * when the manager is closed.
+     * @param name name of the duty cycle, used as configuration prefix.
+     * @param handler handler to run [onStart] and [onStop] on.
+     */
+    protected fun createDutyCycle(
+        name: String,
+        handler: SafeHandler,
+        onStart: () -> Unit,
+        onStop: () -> Unit,
+    ): DutyCycleScheduler = DutyCycleScheduler(service, name, handler, onStart, onStop)
+        .also { dutyCycles += it }
+
+    /**
+     * Configure the thresholds of all filters added with [addDeadbandFilter] and the periods of
+     * all duty cycles created with [createDutyCycle].
+     */
+    fun configureSampling(config: SingleRadarConfiguration) {
+        deadbandFilters.forEach { (topicName, filter) ->
+            filter.config = DeadbandFilter.Configuration().apply {
+                configure(config, topicName)
+            }
+        }
+        dutyCycles.forEach { dutyCycle ->
+            dutyCycle.configure(DutyCycleScheduler.Configuration().apply {
+                configure(config, dutyCycle.name)
+            })
+        }
+    }
+
     private fun addTopicMapping(topicName: String) {
         service.mapTopicAndSource(topicName)
     }
@@ -151,10 +212,18 @@ abstract class AbstractSourceManager<S : SourceService<T>, T : BaseSourceState>(
     /**
      * Send a single record, using the cache to persist the data.
      * If the current source is not registered when this is called, the data will NOT be sent.
+     * If a deadband filter was added for the cache, the record is only sent if it passes the
+     * filter.
      */
     protected fun <V : SpecificRecord> send(dataCache: DataCache<ObservationKey, V>, value: V) {
         val key = state.id
         if (key.getSourceId() != null) {
+            @Suppress("UNCHECKED_CAST")
+            val filter = deadbandFilters[dataCache.topic.name] as DeadbandFilter<V>?
+            if (filter != null && !filter.accept(value)) {
+                return
+            }
+            ingestCounters[dataCache.topic.name]?.increment()
             try {
                 dataCache.addMeasurement(key, value)
             } catch (ex: IllegalArgumentException) {
@@ -187,6 +256,7 @@ abstract class AbstractSourceManager<S : SourceService<T>, T : BaseSourceState>(
         if (status != SourceStatusListener.Status.UNAVAILABLE) {
             status = SourceStatusListener.Status.DISCONNECTING
         }
+        dutyCycles.forEach(DutyCycleScheduler::close)
         onClose()
         if (status != SourceStatusListener.Status.UNAVAILABLE) {
             status = SourceStatusListener.Status.DISCONNECTED
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarbase.android.source
+
+import org.radarbase.android.config.SingleRadarConfiguration
+import kotlin.math.abs
+
+/**
+ * Change-only filter for slowly varying signals. A value is accepted if any of its fields differs
+ * more than the configured threshold from the last accepted value, or if the heartbeat interval
+ * has passed since the last accepted value. All other values are suppressed. Discrete fields,
+ * like booleans or enums, can be mapped to a number, so that any change in them is accepted.
+ *
+ * By default, the filter is disabled and accepts all values. It is enabled by configuring an
+ * absolute or relative threshold for its topic, see [Configuration.configure].
+ *
+ * @param topicName name of the topic that is filtered, used as configuration prefix.
+ * @param time time of a value in seconds.
+ * @param fields numeric fields of a value to compare.
+ */
+class DeadbandFilter<V>(
+    val topicName: String,
+    private val time: (V) -> Double,
+    private vararg val fields: (V) -> Double,
+) {
+    private val lastValues = DoubleArray(fields.size)
+    private var lastTime: Double = Double.NaN
+
+    @get:Synchronized
+    var config = Configuration()
+        @Synchronized set(value) {
+            if (field != value) {
+                field = value.copy()
+                reset()
+            }
+        }
+
+    /** Number of values that were suppressed since the filter was created. */
+    @get:Synchronized
+    var numberOfSuppressed: Long = 0L
+        private set
+
+    init {
+        require(fields.isNotEmpty()) { "Cannot filter topic $topicName without fields" }
+    }
+
+    /**
+     * Whether given value should be sent. If the value is accepted, it will be the reference for
+     * subsequent values.
+     */
+    @Synchronized
+    fun accept(value: V): Boolean {
+        val currentConfig = config
+        if (!currentConfig.isEnabled) {
+            return true
+        }
+        val valueTime = time(value)
+        val isAccepted = lastTime.isNaN()
+            || valueTime < lastTime
+            || (currentConfig.heartbeatInterval > 0L
+                && (valueTime - lastTime) * 1000.0 >= currentConfig.heartbeatInterval)
+            || fields.indices.any { i -> currentConfig.exceedsThreshold(fields[i](value), lastValues[i]) }
+
+        if (isAccepted) {
+            lastTime = valueTime
+            fields.forEachIndexed { i, field -> lastValues[i] = field(value) }
+        } else {
+            numberOfSuppressed++
+        }
+        return isAccepted
+    }
+
+    /** Forget the last accepted value, so that the next value is always accepted. */
+    @Synchronized
+    fun reset() {
+        lastTime = Double.NaN
+    }
+
+    data class Configuration(
+        /** Minimum absolute difference for a value to be accepted. Negative values disable it. */
+        var absoluteThreshold: Double = -1.0,
+        /**
+         * Minimum difference relative to the last accepted value for a value to be accepted.
+         * Negative values disable it.
+         */
+        var relativeThreshold: Double = -1.0,
+        /** Time in milliseconds after which a value is always accepted. Zero disables it. */
+        var heartbeatInterval: Long = 600_000L,
+    ) {
+        /** Whether any threshold is configured. */
+        val isEnabled: Boolean
+            get() = absoluteThreshold >= 0.0 || relativeThreshold >= 0.0
+
+        internal fun exceedsThreshold(value: Double, lastValue: Double): Boolean {
+            if (value.isNaN() != lastValue.isNaN()) return true
+            val difference = abs(value - lastValue)
+            return (absoluteThreshold < 0.0 || difference > absoluteThreshold)
+                && (relativeThreshold < 0.0 || difference > relativeThreshold * abs(lastValue))
+        }
+
+        /**
+         * Read the thresholds for [topicName] from [config], using keys
+         * `<topicName>_deadband_absolute`, `<topicName>_deadband_relative` and
+         * `<topicName>_deadband_heartbeat_seconds`.
+         */
+        fun configure(config: SingleRadarConfiguration, topicName: String) {
+            absoluteThreshold = config.optString("${topicName}$ABSOLUTE_THRESHOLD_SUFFIX")
+                ?.toDoubleOrNull() ?: -1.0
+            relativeThreshold = config.optString("${topicName}$RELATIVE_THRESHOLD_SUFFIX")
+                ?.toDoubleOrNull() ?: -1.0
+            heartbeatInterval = config.getLong("${topicName}$HEARTBEAT_SUFFIX", heartbeatInterval / 1000L) * 1000L
+        }
+    }
+
+    companion object {
+        const val ABSOLUTE_THRESHOLD_SUFFIX = "_deadband_absolute"
+        const val RELATIVE_THRESHOLD_SUFFIX = "_deadband_relative"
+        const val HEARTBEAT_SUFFIX = "_deadband_heartbeat_seconds"
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarbase.android.source
+
+import android.content.Context
+import org.radarbase.android.config.SingleRadarConfiguration
+import org.radarbase.android.util.OfflineProcessor
+import org.radarbase.android.util.SafeHandler
+import org.slf4j.LoggerFactory
+import java.io.Closeable
+import java.util.concurrent.TimeUnit
+
+/**
+ * Duty cycle for continuous data collection. When enabled, [onStart] is called at the start of
+ * every period and [onStop] is called once the sample duration has passed. Periods are aligned
+ * with wall clock time, so that all duty cycles with the same period sample simultaneously and
+ * their wakeups are batched by [OfflineProcessor]. When disabled, [onStart] is called once when
+ * the duty cycle is started, and sampling continues until the duty cycle is reconfigured.
+ *
+ * All callbacks are run on [handler]. The configuration may be set before [handler] is started;
+ * it is applied once the duty cycle is started.
+ *
+ * @param name name of the duty cycle, used as configuration prefix.
+ * @param startTimer starts a timer that calls the given function every period, aligned with
+ *                   wall clock time.
+ */
+class DutyCycleScheduler internal constructor(
+    val name: String,
+    private val handler: SafeHandler,
+    private val onStart: () -> Unit,
+    private val onStop: () -> Unit,
+    private val startTimer: (period: Long, trigger: () -> Unit) -> Closeable,
+) : Closeable {
+    constructor(
+        context: Context,
+        name: String,
+        handler: SafeHandler,
+        onStart: () -> Unit,
+        onStop: () -> Unit,
+    ) : this(name, handler, onStart, onStop, { period, trigger ->
+        OfflineProcessor(context) {
+            process = listOf(trigger)
+            requestCode = REQUEST_CODE_OFFSET + name.hashCode() % 1_000_000
+            requestName = "$ACTION_PREFIX.$name"
+            interval(period, TimeUnit.MILLISECONDS)
+            wake = true
+            alignToInterval = true
+        }.also { it.start() }
+    })
+
+    @Volatile
+    private var config = Configuration()
+    private var timer: Closeable? = null
+    private var stopFuture: SafeHandler.HandlerFuture? = null
+    private var isStarted = false
+    private var isClosed = false
+
+    /** Whether the data source should currently be sampling. */
+    @get:Synchronized
+    @set:Synchronized
+    var isSampling: Boolean = false
+        private set
+
+    /** Start the duty cycle. */
+    fun start() = handler.execute {
+        if (isStarted || isClosed) return@execute
+        isStarted = true
+        schedule()
+    }
+
+    /**
+     * Update the duty cycle configuration. The configuration is stored immediately, so it is not
+     * lost if [handler] has not been started yet.
+     */
+    fun configure(value: Configuration) {
+        synchronized(this) {
+            if (config == value) return
+            config = value.copy()
+        }
+        handler.execute {
+            if (isStarted && !isClosed) {
+                schedule()
+            }
+        }
+    }
+
+    private fun schedule() {
+        stopTimer()
+
+        val config = config
+        if (!config.isEnabled) {
+            logger.info("Sampling {} continuously", name)
+            startSampling()
+            return
+        }
+
+        logger.info(
+            "Sampling {} for {} ms every {} ms",
+            name,
+            config.sampleDuration,
+            config.period,
+        )
+        stopSampling()
+        timer = startTimer(config.period) { handler.execute(::startWindow) }
+    }
+
+    private fun startWindow() {
+        val config = config
+        if (isClosed || !config.isEnabled) return
+        startSampling()
+        stopFuture?.cancel()
+        stopFuture = handler.delay(config.sampleDuration) {
+            stopFuture = null
+            stopSampling()
+        }
+    }
+
+    private fun startSampling() {
+        if (!isSampling) {
+            isSampling = true
+            onStart()
+        }
+    }
+
+    private fun stopSampling() {
+        if (isSampling) {
+            isSampling = false
+            onStop()
+        }
+    }
+
+    private fun stopTimer() {
+        stopFuture?.let {
+            it.cancel()
+            stopFuture = null
+        }
+        timer?.let {
+            it.close()
+            timer = null
+        }
+    }
+
+    /**
+     * Stop the duty cycle. This does not call [onStop], the data source should stop sampling by
+     * itself when it is closed.
+     */
+    override fun close() = handler.executeReentrant(true) {
+        if (isClosed) return@executeReentrant
+        isClosed = true
+        stopTimer()
+    }
+
+    data class Configuration(
+        /** Time in milliseconds that a source samples in each period. */
+        var sampleDuration: Long = 0L,
+        /** Time in milliseconds between the start of subsequent samples. */
+        var period: Long = 0L,
+    ) {
+        /** Whether the duty cycle is enabled. Otherwise, the source should sample continuously. */
+        val isEnabled: Boolean
+            get() = sampleDuration > 0L && period > sampleDuration
+
+        /**
+         * Read the duty cycle for [name] from [config], using keys
+         * `<name>_duty_cycle_sample_seconds` and `<name>_duty_cycle_period_seconds`.
+         */
+        fun configure(config: SingleRadarConfiguration, name: String) {
+            sampleDuration = config.getLong("${name}$SAMPLE_DURATION_SUFFIX", sampleDuration / 1000L) * 1000L
+            period = config.getLong("${name}$PERIOD_SUFFIX", period / 1000L) * 1000L
+        }
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(DutyCycleScheduler::class.java)
+
+        const val SAMPLE_DURATION_SUFFIX = "_duty_cycle_sample_seconds"
+        const val PERIOD_SUFFIX = "_duty_cycle_period_seconds"
+
+        private const val ACTION_PREFIX = "org.radarbase.android.source.DutyCycleScheduler"
+        private const val REQUEST_CODE_OFFSET = 691_000_000
+    }
+}
@@ -0,0 +1,37 @@
+package org.radarbase.android.source
+
+/**
+ * Registration of a source provider by its plugin names. The provider is only created once one
+ * of its plugin names is configured.
+ *
+ * @param pluginNames names that the provider can be identified with. These must equal the
+ *      resulting [SourceProvider.pluginNames], which is checked when the provider is created.
+ * @param create function to create the provider.
+ */
+class SourceProviderFactory(
+    val pluginNames: List<String>,
+    private val create: () -> SourceProvider<*>,
+) {
+    private var provider: SourceProvider<*>? = null
+
+    /**
+     * Create the provider or return the previously created provider.
+     * @throws IllegalStateException if the plugin names of the created provider differ from
+     *      [pluginNames].
+     */
+    @Synchronized
+    fun get(): SourceProvider<*> = provider
+        ?: create().also {
+            check(it.pluginNames.toSet() == pluginNames.toSet()) {
+                "Plugin names $pluginNames of factory differ from plugin names ${it.pluginNames} of provider ${it.javaClass.name}"
+            }
+            provider = it
+        }
+
+    override fun toString(): String = "SourceProviderFactory<${pluginNames.firstOrNull()}>"
+
+    companion object {
+        /** Factory for an existing provider. */
+        fun of(provider: SourceProvider<*>) = SourceProviderFactory(provider.pluginNames) { provider }
+    }
+}
@@ -6,16 +6,17 @@ import org.radarbase.android.util.ChangeApplier
 import org.slf4j.LoggerFactory
 import java.util.*
 
-class SourceProviderLoader(private var plugins: List<SourceProvider<*>>) {
+class SourceProviderLoader(factories: List<SourceProviderFactory>) {
     private val pluginCache = ChangeApplier<String, List<SourceProvider<*>>>(::loadProvidersFromNames)
+    private val factoriesByName: Map<String, SourceProviderFactory>
 
     init {
-        val pluginNames = plugins.map { it.pluginNames.toHashSet() }
-
-        for (i in pluginNames.indices) {
-            for (j in i + 1 until pluginNames.size) {
-                if (pluginNames[i].any { it in pluginNames[j] }) {
-                    logger.warn("Providers {} and {} have overlapping plugin names.", plugins[i], plugins[j])
+        factoriesByName = HashMap<String, SourceProviderFactory>().apply {
+            factories.forEach { factory ->
+                factory.pluginNames.forEach { name ->
+                    putIfAbsent(name, factory)?.let { existing ->
+                        logger.warn("Providers {} and {} have overlapping plugin name {}.", existing, factory, name)
+                    }
                 }
             }
         }
@@ -46,10 +47,11 @@ class SourceProviderLoader(private var plugins: List<SourceProvider<*>>) {
         return Scanner(pluginString)
             .asSequence()
             .mapNotNull { pluginName ->
-                plugins.find { pluginName in it.pluginNames }
+                factoriesByName[pluginName]
                         .also { if (it == null) logger.warn("Plugin {} not found", pluginName) }
             }
             .distinct()
+            .map { it.get() }
             .toList()
     }
 
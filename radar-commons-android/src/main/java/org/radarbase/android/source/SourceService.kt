@@ -28,6 +28,7 @@ import org.radarbase.android.RadarApplication.Companion.radarApp
 import org.radarbase.android.RadarApplication.Companion.radarConfig
 import org.radarbase.android.RadarConfiguration
 import org.radarbase.android.auth.*
+import org.radarbase.android.config.ConfigSubscription
 import org.radarbase.android.config.SingleRadarConfiguration
 import org.radarbase.android.data.DataHandler
 import org.radarbase.android.source.SourceProvider.Companion.MODEL_KEY
@@ -97,6 +98,8 @@ abstract class SourceService<T : BaseSourceState> : LifecycleService(), SourceSt
     private lateinit var sourceProducer: String
     private val name = javaClass.simpleName
     private var delayedStart: Set<String>? = null
+    private var configSubscription: ConfigSubscription? = null
+    private var configuredManager: SourceManager<T>? = null
 
     val state: T
         get() {
@@ -141,7 +144,7 @@ abstract class SourceService<T : BaseSourceState> : LifecycleService(), SourceSt
             }
         }
         radarConnection.bind()
-        handler = SafeHandler.getInstance("SourceService-$name", THREAD_PRIORITY_BACKGROUND)
+        handler = SafeHandler.getInstance("SourceService-$name", THREAD_PRIORITY_BACKGROUND, isPooled = true)
 
         radarConfig.config.observe(this, ::configure)
         config = radarConfig
@@ -165,7 +168,25 @@ abstract class SourceService<T : BaseSourceState> : LifecycleService(), SourceSt
 
     @CallSuper
     protected open fun configure(config: SingleRadarConfiguration) {
-        sourceManager?.let { configureSourceManager(it, config) }
+        sourceManager?.let { applyConfiguration(it, config) }
+    }
+
+    /**
+     * Apply the configuration to given manager, only if any of the configuration keys that it
+     * used were changed since the last time the configuration was applied to the same manager.
+     */
+    private fun applyConfiguration(manager: SourceManager<T>, config: SingleRadarConfiguration) {
+        val subscription = synchronized(this) {
+            configSubscription?.takeIf { configuredManager === manager }
+                ?: ConfigSubscription(name) { managerConfig ->
+                    (manager as? AbstractSourceManager<*, *>)?.configureSampling(managerConfig)
+                    configureSourceManager(manager, managerConfig)
+                }.also {
+                    configSubscription = it
+                    configuredManager = manager
+                }
+        }
+        subscription.update(config)
     }
 
     protected open fun configureSourceManager(manager: SourceManager<T>, config: SingleRadarConfiguration) {}
@@ -225,6 +246,8 @@ abstract class SourceService<T : BaseSourceState> : LifecycleService(), SourceSt
     private fun unsetSourceManager(): SourceManager<*>? {
         return sourceManager.also {
             sourceManager = null
+            configSubscription = null
+            configuredManager = null
         }
     }
 
@@ -274,7 +297,7 @@ abstract class SourceService<T : BaseSourceState> : LifecycleService(), SourceSt
                 logger.info("Starting recording now for {}", name)
                 val manager = createSourceManager()
                 sourceManager = manager
-                configureSourceManager(manager, radarConfig.latestConfig)
+                applyConfiguration(manager, radarConfig.latestConfig)
                 if (state.status == SourceStatusListener.Status.UNAVAILABLE) {
                     logger.info("Status is unavailable. Not starting manager yet.")
                 } else {
@@ -385,15 +408,31 @@ abstract class SourceService<T : BaseSourceState> : LifecycleService(), SourceSt
     /** Get the service local binder.  */
     private fun createBinder() = SourceServiceBinder(this)
 
-    private fun registerSource(existingSource: SourceMetadata, type: SourceType, attributes: Map<String, String>) {
-        logger.info("Registering source {} with attributes {}", type, attributes)
-
+    /**
+     * Register a source with the server, unless the same registration was already accepted.
+     * @param ignoredAttributes attribute keys that do not need to be updated when only they change.
+     */
+    private fun registerSource(
+        existingSource: SourceMetadata,
+        type: SourceType,
+        attributes: Map<String, String>,
+        ignoredAttributes: Set<String> = emptySet(),
+    ) {
         val source = SourceMetadata(type).apply {
             sourceId = existingSource.sourceId
             sourceName = existingSource.sourceName
             this.attributes = attributes
         }
 
+        val registrationCache = authConnection.binder?.registrationCache
+        if (registrationCache?.contains(key.userId, source, ignoredAttributes) == true) {
+            logger.debug("Source {} is already registered with attributes {}", type, attributes)
+            addPluginMetadata()
+            return
+        }
+
+        logger.info("Registering source {} with attributes {}", type, attributes)
+
         val onFail: (Exception?) -> Unit = {
             logger.warn("Failed to register source: {}", it.toString())
             if (registrationFuture == null) {
@@ -402,7 +441,7 @@ abstract class SourceService<T : BaseSourceState> : LifecycleService(), SourceSt
                         return@delay
                     }
                     registrationFuture = null
-                    registerSource(existingSource, type, attributes)
+                    registerSource(existingSource, type, attributes, ignoredAttributes)
                 }
             }
         }
@@ -416,6 +455,7 @@ abstract class SourceService<T : BaseSourceState> : LifecycleService(), SourceSt
                 source.sourceId = updatedSource.sourceId
                 source.sourceName = updatedSource.sourceName
                 source.expectedSourceName = updatedSource.expectedSourceName
+                registrationCache?.put(authState.userId, source, ignoredAttributes)
             },
             onFail,
         ) ?: onFail(null)
@@ -471,16 +511,23 @@ abstract class SourceService<T : BaseSourceState> : LifecycleService(), SourceSt
                 logger.warn("Cannot find matching source type for producer {} and model {}", sourceProducer, sourceModel)
             } else {
                 key.sourceId = matchingSource.sourceId
+                val hasTimestamp = pluginName !in attributes
                 val registeredAttributes = buildMap(attributes.size + 2) {
                     putAll(attributes)
                     put("physicalId", (id ?: ""))
-                    if (pluginName !in attributes) {
+                    if (hasTimestamp) {
                         val dateFormat = SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.ROOT)
                         put(pluginName, dateFormat.format(Date()))
                     }
                 }
                 if (registeredAttributes.any { (k, v) -> matchingSource.attributes[k] != v }) {
-                    registerSource(matchingSource, matchingSource.type!!, registeredAttributes)
+                    // the registration timestamp alone does not warrant a new registration
+                    registerSource(
+                        matchingSource,
+                        matchingSource.type!!,
+                        registeredAttributes,
+                        if (hasTimestamp) setOf(pluginName) else emptySet(),
+                    )
                 }
             }
             onMapping(matchingSource)
@@ -0,0 +1,158 @@
+package org.radarbase.android.util
+
+import org.radarbase.android.metrics.HistogramSnapshot
+import org.radarbase.android.metrics.PipelineMetrics
+import org.slf4j.LoggerFactory
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Task instrumentation of all [SafeHandler] instances with a given name. It records the number
+ * of queued tasks, the delay between posting and starting a task, and the task run duration as
+ * [PipelineMetrics] named `handler.<name>.*`. Tasks that run longer than the slow task threshold
+ * are counted and logged. Instrumentation is enabled per handler name with [configure].
+ */
+class HandlerInstrumentation private constructor(val handlerName: String) {
+    private val queueDepth = AtomicInteger(0)
+    private val queueDelay = PipelineMetrics.histogram("handler.$handlerName.queue_delay")
+    private val runDuration = PipelineMetrics.histogram("handler.$handlerName.run_duration")
+    private val slowTasks = PipelineMetrics.counter("handler.$handlerName.slow_tasks")
+
+    /**
+     * Nesting level of running tasks per thread. Handlers with the same name share this
+     * instrumentation, and may run tasks on different threads at the same time.
+     */
+    private val nesting: ThreadLocal<IntArray> = ThreadLocal.withInitial { IntArray(1) }
+    /** Start time of the outermost running task per thread. */
+    private val runningSince: MutableMap<Thread, Long> = ConcurrentHashMap()
+    @Volatile
+    private var lastSlowTask: String? = null
+
+    init {
+        PipelineMetrics.gauge("handler.$handlerName.queue_depth") { queueDepth.get().toLong() }
+    }
+
+    internal fun onPost() {
+        queueDepth.incrementAndGet()
+    }
+
+    internal fun onDequeue(delay: Long) {
+        queueDepth.decrementAndGet()
+        queueDelay.record(delay)
+    }
+
+    /** A posted task was not queued, because the handler was stopping. */
+    internal fun onDropped() {
+        queueDepth.decrementAndGet()
+    }
+
+    internal fun onDelayedStart(delay: Long) {
+        queueDelay.record(delay)
+    }
+
+    /** Queued tasks were removed without running. */
+    internal fun onClear() {
+        queueDepth.set(0)
+    }
+
+    /** @return start time of the task, or [NOT_RUNNING] if the task is nested in another task. */
+    internal fun onRunStart(): Long {
+        if (nesting.get()[0]++ > 0) return NOT_RUNNING
+        return System.nanoTime().also { runningSince[Thread.currentThread()] = it }
+    }
+
+    internal fun onRunEnd(startedAt: Long, task: Any) {
+        nesting.get()[0]--
+        if (startedAt == NOT_RUNNING) return
+        runningSince -= Thread.currentThread()
+        val duration = System.nanoTime() - startedAt
+        runDuration.record(duration)
+        if (duration >= slowTaskThreshold) {
+            slowTasks.increment()
+            val taskName = task.javaClass.name
+            lastSlowTask = taskName
+            logger.warn("Slow task {} blocked handler {} for {} ms",
+                taskName, handlerName, TimeUnit.NANOSECONDS.toMillis(duration))
+        }
+    }
+
+    private fun StringBuilder.appendDump() {
+        val delays = queueDelay.snapshot()
+        val durations = runDuration.snapshot()
+        append(handlerName).append(":\n")
+        append("  queue depth: ").append(queueDepth.get()).append('\n')
+        append("  queue delay (ms): ").appendPercentiles(delays).append('\n')
+        append("  run duration (ms): ").appendPercentiles(durations).append('\n')
+        append("  slow tasks: ").append(slowTasks.count)
+        lastSlowTask?.let { append(", last: ").append(it) }
+        append('\n')
+
+        runningSince.forEach { (thread, since) ->
+            val running = System.nanoTime() - since
+            append("  running task on ").append(thread.name)
+                .append(" for ").append(TimeUnit.NANOSECONDS.toMillis(running)).append(" ms\n")
+            if (running >= slowTaskThreshold) {
+                thread.stackTrace.forEach { append("    at ").append(it).append('\n') }
+            }
+        }
+    }
+
+    private fun StringBuilder.appendPercentiles(snapshot: HistogramSnapshot): StringBuilder {
+        append("n=").append(snapshot.count)
+        listOf("p50" to 0.5, "p90" to 0.9, "p99" to 0.99, "max" to 1.0).forEach { (label, fraction) ->
+            append(", ").append(label).append('=')
+                .append(TimeUnit.NANOSECONDS.toMillis(snapshot.percentile(fraction)))
+        }
+        return this
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(HandlerInstrumentation::class.java)
+        private const val NOT_RUNNING = Long.MIN_VALUE
+        private const val ALL_HANDLERS = "*"
+
+        private val instances: MutableMap<String, HandlerInstrumentation> = ConcurrentHashMap()
+
+        @Volatile
+        private var handlerNames: Set<String> = emptySet()
+
+        @Volatile
+        private var slowTaskThreshold: Long = TimeUnit.MILLISECONDS.toNanos(500L)
+
+        /** Incremented on every configuration change, so handlers can cheaply detect changes. */
+        @Volatile
+        internal var version: Int = 0
+            private set
+
+        /**
+         * Instrument the handlers with given names. Use `*` to instrument all handlers.
+         * @param slowTaskThreshold duration in milliseconds after which a task is considered slow.
+         */
+        @Synchronized
+        fun configure(names: Set<String>, slowTaskThreshold: Long) {
+            this.slowTaskThreshold = TimeUnit.MILLISECONDS.toNanos(slowTaskThreshold)
+            if (names != handlerNames) {
+                handlerNames = names
+                version++
+            }
+        }
+
+        /** Instrumentation for the handler with given name, or null if it is not instrumented. */
+        internal fun forHandler(name: String): HandlerInstrumentation? {
+            val names = handlerNames
+            return if (ALL_HANDLERS in names || name in names) {
+                instances.computeIfAbsent(name, ::HandlerInstrumentation)
+            } else null
+        }
+
+        /** Human-readable state of all instrumented handlers, for debugging. */
+        fun dump(): String = buildString {
+            val names = handlerNames
+            instances.values
+                .filter { ALL_HANDLERS in names || it.handlerName in names }
+                .sortedBy { it.handlerName }
+                .forEach { it.run { appendDump() } }
+        }
+    }
+}
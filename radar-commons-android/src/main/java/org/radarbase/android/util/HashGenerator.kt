@@ -18,7 +18,7 @@ package org.radarbase.android.util
 
 import android.content.Context
 import android.content.Context.MODE_PRIVATE
-import android.os.Build
+import android.content.SharedPreferences
 import android.security.keystore.KeyProperties.PURPOSE_SIGN
 import android.util.Base64
 import org.radarbase.util.Serialization
@@ -37,28 +37,53 @@ import javax.crypto.spec.SecretKeySpec
  * the SharedPreferences. As long as the key remains there, a given input string will always
  * return the same output hash.
  *
+ * Recently computed hashes are memoized in a least-recently-used cache of [cacheSize] entries,
+ * so repeatedly hashing the same targets does not recompute the HMAC. The cache is cleared when
+ * the hash key changes.
  *
- * HashGenerator must be used from a single thread or synchronized externally.
+ * HashGenerator is thread-safe: hashes are computed and the key is replaced while holding the
+ * cache lock, so concurrent callers of the same instance are serialized.
  * This persists the hash.key property in the given preferences.
  */
-class HashGenerator(
+class HashGenerator @JvmOverloads constructor(
         context: Context,
-        private val name: String
+        private val name: String,
+        private val cacheSize: Int = DEFAULT_CACHE_SIZE,
 ) {
     private val sha256: Mac
     private val hashBuffer = ByteArray(4)
     private val preferences = context.getSharedPreferences(name, MODE_PRIVATE)
+    private val cache = object : LinkedHashMap<Any, ByteBuffer>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Any, ByteBuffer>?): Boolean =
+            size > cacheSize
+    }
+
+    // Keep a strong reference, preferences only keep weak references to listeners.
+    private val keyListener = SharedPreferences.OnSharedPreferenceChangeListener { _, key ->
+        if (key == HASH_KEY) {
+            synchronized(cache) {
+                initKey()
+                cache.clear()
+            }
+        }
+    }
 
     init {
         try {
             sha256 = Mac.getInstance(HMAC_SHA256)
-            sha256.init(loadKey())
         } catch (ex: NoSuchAlgorithmException) {
             throw IllegalStateException("Cannot retrieve hashing algorithm", ex)
+        }
+        initKey()
+        preferences.registerOnSharedPreferenceChangeListener(keyListener)
+    }
+
+    private fun initKey() {
+        try {
+            sha256.init(loadKey())
         } catch (ex: InvalidKeyException) {
             throw IllegalStateException("Encoding is invalid", ex)
         }
-
     }
 
     private fun loadKey(): Key {
@@ -71,28 +96,44 @@ class HashGenerator(
     }
 
     /** Create a unique hash for a given target.  */
-    fun createHash(target: Int): ByteArray {
-        Serialization.intToBytes(target, hashBuffer, 0)
-        return sha256.doFinal(hashBuffer)
-    }
+    fun createHash(target: Int): ByteArray = createHashByteBuffer(target).toByteArray()
 
     /** Create a unique hash for a given target.  */
-    fun createHash(target: String): ByteArray = sha256.doFinal(target.toByteArray())
+    fun createHash(target: String): ByteArray = createHashByteBuffer(target).toByteArray()
 
     /**
-     * Create a unique hash for a given target. Internally this calls
-     * [.createHash].
+     * Create a unique hash for a given target. The returned buffer is read-only and shares its
+     * contents with other calls for the same target.
      */
-    fun createHashByteBuffer(target: Int): ByteBuffer = ByteBuffer.wrap(createHash(target))
+    fun createHashByteBuffer(target: Int): ByteBuffer = cachedHash(target) {
+        Serialization.intToBytes(target, hashBuffer, 0)
+        sha256.doFinal(hashBuffer)
+    }
 
     /**
-     * Create a unique hash for a given target. Internally this calls
-     * [.createHash].
+     * Create a unique hash for a given target. The returned buffer is read-only and shares its
+     * contents with other calls for the same target.
      */
-    fun createHashByteBuffer(target: String): ByteBuffer = ByteBuffer.wrap(createHash(target))
+    fun createHashByteBuffer(target: String): ByteBuffer = cachedHash(target) {
+        sha256.doFinal(target.toByteArray())
+    }
+
+    private inline fun cachedHash(target: Any, compute: () -> ByteArray): ByteBuffer {
+        val hash = synchronized(cache) {
+            cache.getOrPut(target) {
+                ByteBuffer.wrap(compute()).asReadOnlyBuffer()
+            }
+        }
+        // Independent position and limit for each caller
+        return hash.duplicate()
+    }
 
     companion object {
         private const val HASH_KEY = "hash.key"
         private const val HMAC_SHA256 = "HmacSHA256"
+        private const val DEFAULT_CACHE_SIZE = 256
+
+        private fun ByteBuffer.toByteArray(): ByteArray = ByteArray(remaining())
+            .also { get(it) }
     }
 }
@@ -31,11 +31,11 @@ class NetworkConnectedReceiver(context: Context, private val listener: ((Network
     private var isReceiverRegistered: Boolean = false
     private val callback = object : NetworkCallback() {
         override fun onAvailable(network: Network) {
-            state = NetworkState(isConnected = true, hasWifiOrEthernet = state.hasWifiOrEthernet)
+            state = state.copy(isConnected = true)
         }
 
         override fun onCapabilitiesChanged(network: Network, capabilities: NetworkCapabilities) {
-            state = NetworkState(state.isConnected, capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI) || capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET))
+            state = capabilities.toNetworkState(state.isConnected)
         }
 
         override fun onUnavailable() {
@@ -43,13 +43,13 @@ class NetworkConnectedReceiver(context: Context, private val listener: ((Network
         }
 
         override fun onLost(network: Network) {
-            state = NetworkState(isConnected = false, hasWifiOrEthernet = false)
+            state = NetworkState(isConnected = false, hasWifiOrEthernet = false, isMetered = true)
         }
     }
 
     constructor(context: Context, listener: NetworkConnectedListener) : this(context, listener::onNetworkConnectionChanged)
 
-    private val _state = ChangeRunner(NetworkState(isConnected = false, hasWifiOrEthernet = false))
+    private val _state = ChangeRunner(NetworkState(isConnected = false, hasWifiOrEthernet = false, isMetered = true))
 
     var state: NetworkState
         get() = _state.value
@@ -75,12 +75,10 @@ class NetworkConnectedReceiver(context: Context, private val listener: ((Network
         val network = cm.activeNetwork
         val networkInfo = network?.let { cm.getNetworkInfo(it) }
         state = if (networkInfo?.isConnected == true) {
-            val capabilities = cm.getNetworkCapabilities(network)
-            NetworkState(true,
-                    capabilities?.hasTransport(NetworkCapabilities.TRANSPORT_WIFI) == true
-                            || capabilities?.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET) == true)
+            cm.getNetworkCapabilities(network)?.toNetworkState(true)
+                ?: NetworkState(isConnected = true, hasWifiOrEthernet = false, isMetered = true)
         } else {
-            NetworkState(isConnected = false, hasWifiOrEthernet = false)
+            NetworkState(isConnected = false, hasWifiOrEthernet = false, isMetered = true)
         }
 
         cm.registerDefaultNetworkCallback(callback)
@@ -99,7 +97,16 @@ class NetworkConnectedReceiver(context: Context, private val listener: ((Network
         isReceiverRegistered = false
     }
 
-    data class NetworkState(val isConnected: Boolean, val hasWifiOrEthernet: Boolean) {
+    /**
+     * State of the default network.
+     * @param isMetered whether data usage on the network may be billed, for example on cellular
+     *                  networks or Wi-Fi hotspots.
+     */
+    data class NetworkState(
+        val isConnected: Boolean,
+        val hasWifiOrEthernet: Boolean,
+        val isMetered: Boolean = !hasWifiOrEthernet,
+    ) {
         fun hasConnection(wifiOrEthernetOnly: Boolean): Boolean =
             isConnected && (hasWifiOrEthernet || !wifiOrEthernetOnly)
     }
@@ -110,5 +117,12 @@ class NetworkConnectedReceiver(context: Context, private val listener: ((Network
 
     companion object {
         private val logger = LoggerFactory.getLogger(NetworkConnectedReceiver::class.java)
+
+        private fun NetworkCapabilities.toNetworkState(isConnected: Boolean) = NetworkState(
+            isConnected = isConnected,
+            hasWifiOrEthernet = hasTransport(NetworkCapabilities.TRANSPORT_WIFI)
+                    || hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET),
+            isMetered = !hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED),
+        )
     }
 }
@@ -173,11 +173,14 @@ class OfflineProcessor(
 
     private fun schedule() {
         val runImmediately = Debug.isDebuggerConnected()
-        val firstAlarm: Long = if (runImmediately) {
-            trigger()
-            SystemClock.elapsedRealtime() + config.intervalMillis
-        } else {
-            SystemClock.elapsedRealtime() + config.intervalMillis / 4
+        val firstAlarm: Long = when {
+            runImmediately -> {
+                trigger()
+                SystemClock.elapsedRealtime() + config.intervalMillis
+            }
+            config.alignToInterval -> SystemClock.elapsedRealtime() +
+                alignedDelay(System.currentTimeMillis(), config.intervalMillis)
+            else -> SystemClock.elapsedRealtime() + config.intervalMillis / 4
         }
         val type = if (config.wake) AlarmManager.ELAPSED_REALTIME_WAKEUP else AlarmManager.ELAPSED_REALTIME
         alarmManager.setInexactRepeating(type, firstAlarm, config.intervalMillis, pendingIntent)
@@ -230,6 +233,12 @@ class OfflineProcessor(
         @get:Synchronized
         var intervalMillis: Long = -1,
         var wake: Boolean = true,
+        /**
+         * Whether to align alarms with multiples of the interval in wall clock time. Processors
+         * with the same interval will then be triggered simultaneously, so the system can batch
+         * their wakeups.
+         */
+        var alignToInterval: Boolean = false,
         var handlerReference: CountedReference<SafeHandler> = DEFAULT_HANDLER_THREAD
     ) {
         @Synchronized
@@ -250,6 +259,14 @@ class OfflineProcessor(
         private val safeHandler = SafeHandler("OfflineProcessor", THREAD_PRIORITY_BACKGROUND)
         private val DEFAULT_HANDLER_THREAD = safeHandler.toCountedReference()
 
+        /**
+         * Time in milliseconds from [currentTimeMillis] until the next multiple of
+         * [intervalMillis] in wall clock time. If the current time is such a multiple, this is a
+         * full interval.
+         */
+        internal fun alignedDelay(currentTimeMillis: Long, intervalMillis: Long): Long =
+            intervalMillis - currentTimeMillis % intervalMillis
+
         private fun SafeHandler.toCountedReference() = CountedReference({
             apply { start() }
         }, {
@@ -4,24 +4,62 @@ import android.os.Handler
 import android.os.HandlerThread
 import android.os.Looper
 import androidx.annotation.Keep
+import org.radarbase.android.metrics.PipelineMetrics
 import org.radarbase.android.util.SafeHandler.Companion.getInstance
 import org.slf4j.LoggerFactory
 import java.lang.ref.WeakReference
+import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ExecutionException
 import java.util.concurrent.SynchronousQueue
 
 /**
  * A wrapper around Android Handler that makes some operations easier or safer in terms of exception
  * handling and multithreading.
+ *
+ * A pooled handler does not get its own thread, but shares one of a small number of threads with
+ * other pooled handlers of the same priority. Tasks of a single handler still run in order, one at
+ * a time. Only use a pooled handler for short tasks, since a blocking task also delays the tasks
+ * of other handlers on the same thread.
+ *
  * @constructor consider using [getInstance] instead for shared or reinitializing handlers.
+ * @param isPooled whether to share a thread with other pooled handlers.
  */
 @Suppress("unused", "MemberVisibilityCanBePrivate")
 class SafeHandler(
     val name: String,
     private val priority: Int,
+    val isPooled: Boolean = false,
 ) {
     private var handlerThread: HandlerThread? = null
 
+    /**
+     * Tasks posted to a pooled handler that have not run yet, in order. Keeping them here allows
+     * [compute] to run them before its own method when another handler on the shared thread
+     * waits for it.
+     */
+    private val pendingTasks = ArrayDeque<Runnable>()
+    /**
+     * Number of tasks of this pooled handler on the call stack of its thread. Only accessed from
+     * that thread.
+     */
+    private var runningDepth = 0
+
+    @Volatile
+    private var cachedInstrumentation: HandlerInstrumentation? = null
+    @Volatile
+    private var instrumentationVersion = -1
+
+    /** Task instrumentation of this handler, if enabled with [HandlerInstrumentation.configure]. */
+    private val instrumentation: HandlerInstrumentation?
+        get() {
+            val version = HandlerInstrumentation.version
+            if (version != instrumentationVersion) {
+                cachedInstrumentation = HandlerInstrumentation.forHandler(name)
+                instrumentationVersion = version
+            }
+            return cachedInstrumentation
+        }
+
     /** Whether the handler has been started. */
     @get:Synchronized
     val isStarted: Boolean
@@ -43,9 +81,82 @@ class SafeHandler(
             return
         }
 
-        handlerThread = HandlerThread(name, priority).apply {
-            start()
-            handler = Handler(looper)
+        handlerThread = if (isPooled) {
+            LooperPool.acquire(priority)
+        } else {
+            HandlerThread(name, priority).apply { start() }
+        }.also {
+            handler = Handler(it.looper)
+        }
+    }
+
+    /** Whether the current code is running as a task of this handler. */
+    private val isOnHandler: Boolean
+        get() = if (isPooled) {
+            runningHandler.get() === this
+        } else {
+            Thread.currentThread() == handlerThread
+        }
+
+    /** Post a task to run on given handler, recording how long it waits in the queue. */
+    private fun Handler.postTask(task: () -> Any?): Boolean {
+        val postedAt = System.nanoTime()
+        val instrumentation = instrumentation
+        instrumentation?.onPost()
+        val queuedTask = Runnable {
+            val delay = System.nanoTime() - postedAt
+            queueDelay.record(delay)
+            instrumentation?.onDequeue(delay)
+            runTask(task)
+        }
+        val didPost = if (isPooled) {
+            synchronized(pendingTasks) { pendingTasks.addLast(queuedTask) }
+            post { runPendingTask(queuedTask) }.also { didPost ->
+                if (!didPost) synchronized(pendingTasks) { pendingTasks.remove(queuedTask) }
+            }
+        } else {
+            post(queuedTask)
+        }
+        if (!didPost) instrumentation?.onDropped()
+        return didPost
+    }
+
+    /** Run a pending task of a pooled handler, unless [runPendingTasks] already ran it. */
+    private fun runPendingTask(task: Runnable) {
+        val isPending = synchronized(pendingTasks) { pendingTasks.remove(task) }
+        if (isPending) task.run()
+    }
+
+    /** Run all pending tasks of a pooled handler in order. */
+    private fun runPendingTasks() {
+        while (true) {
+            val task = synchronized(pendingTasks) { pendingTasks.removeFirstOrNull() } ?: return
+            task.run()
+        }
+    }
+
+    /** Run a task of this handler. */
+    private fun <T> runTask(task: () -> T): T? {
+        val instrumentation = instrumentation
+        val startedAt = instrumentation?.onRunStart() ?: 0L
+        try {
+            if (!isPooled) return task.tryRunOrNull()
+            return runAsPooledTask { task.tryRunOrNull() }
+        } finally {
+            instrumentation?.onRunEnd(startedAt, task)
+        }
+    }
+
+    /** Run [method] as a task of this pooled handler on the current thread. */
+    private inline fun <T> runAsPooledTask(method: () -> T): T {
+        val previous = runningHandler.get()
+        runningHandler.set(this)
+        runningDepth++
+        try {
+            return method()
+        } finally {
+            runningDepth--
+            runningHandler.set(previous)
         }
     }
 
@@ -64,17 +175,32 @@ class SafeHandler(
     fun await(runnable: () -> Unit) = compute(runnable)
 
     /**
-     * Compute a value the given handler, returning its value after it finishes.
+     * Compute a value the given handler, returning its value after it finishes. If it is called
+     * from another pooled handler that shares its thread, the tasks already queued on this handler
+     * and then [method] are run on the current thread, since waiting would deadlock.
      * @throws ExecutionException if any exception occurred in [method]
      */
     @Throws(InterruptedException::class, ExecutionException::class)
     fun <T> compute(method: () -> T): T {
-        if (Thread.currentThread() == handlerThread) {
+        if (isOnHandler) {
             try {
                 return method()
             } catch (ex: Exception) {
                 throw ExecutionException(ex)
             }
+        } else if (isPooled && Thread.currentThread() == handlerThread) {
+            // Another handler sharing this pooled thread is running, so waiting would deadlock.
+            // Run the tasks already queued on this handler first, so that they keep their order,
+            // and then the method itself. If a task of this handler is further up the call
+            // stack, its queued tasks must wait for it, so the call is treated as reentrant.
+            if (runningDepth == 0) {
+                runPendingTasks()
+            }
+            try {
+                return runAsPooledTask(method)
+            } catch (ex: Exception) {
+                throw ExecutionException(ex)
+            }
         } else {
             val queue = SynchronousQueue<Any>()
             execute {
@@ -94,6 +220,34 @@ class SafeHandler(
         }
     }
 
+    /**
+     * Compute a value on the given handler without waiting for it. If this is called from the
+     * handler itself, the value is computed immediately.
+     * @return future that completes with the value, or exceptionally if [method] throws or the
+     *      handler was stopped.
+     */
+    fun <T> computeAsync(method: () -> T): CompletableFuture<T> {
+        val future = CompletableFuture<T>()
+        val task = {
+            try {
+                future.complete(method())
+            } catch (ex: Exception) {
+                future.completeExceptionally(ex)
+            }
+        }
+        if (isOnHandler) {
+            task()
+        } else {
+            val didPost = synchronized(this) {
+                handler?.postTask(task)
+            } ?: false
+            if (!didPost) {
+                future.completeExceptionally(IllegalStateException("SafeHandler $name is not started"))
+            }
+        }
+        return future
+    }
+
     /**
      * Executes [runnable] on this handler. If the handler has already been stopped, this does not
      * get executed.
@@ -111,8 +265,8 @@ class SafeHandler(
      * runnable is executed immediately, instead of putting it in the queue.
      */
     fun executeReentrant(runnable: () -> Unit) {
-        if (Thread.currentThread() == handlerThread) {
-            runnable.tryRunOrNull()
+        if (isOnHandler) {
+            runTask(runnable)
         } else {
             execute(runnable)
         }
@@ -126,8 +280,8 @@ class SafeHandler(
      * will not be executed.
      */
     fun executeReentrant(defaultToCurrentThread: Boolean, runnable: () -> Unit) {
-        if (Thread.currentThread() == handlerThread) {
-            runnable.tryRunOrNull()
+        if (isOnHandler) {
+            runTask(runnable)
         } else {
             execute(defaultToCurrentThread, runnable)
         }
@@ -155,7 +309,7 @@ class SafeHandler(
      */
     fun execute(defaultToCurrentThread: Boolean, runnable: () -> Unit) {
         val didRun = synchronized(this) {
-            handler?.post { runnable.tryRunOrNull() }
+            handler?.postTask(runnable)
         } ?: false
 
         if (!didRun && defaultToCurrentThread) {
@@ -175,8 +329,12 @@ class SafeHandler(
     @Synchronized
     fun delay(delay: Long, runnable: () -> Unit): HandlerFuture? {
         val handler = handler ?: return null
+        val scheduledAt = System.nanoTime() + delay * 1_000_000L
         val r = Runnable {
-            runnable.tryRunOrNull()
+            val lateness = System.nanoTime() - scheduledAt
+            queueDelay.record(lateness)
+            instrumentation?.onDelayedStart(lateness)
+            runTask(runnable)
         }
         handler.postDelayed(r, delay)
         return HandlerFutureRef(r)
@@ -204,7 +362,13 @@ class SafeHandler(
     fun stop(finalization: Runnable) = stop(finalization::run)
 
     @Synchronized
-    fun interrupt() = handlerThread?.interrupt()
+    fun interrupt() {
+        if (isPooled) {
+            logger.warn("Cannot interrupt pooled SafeHandler {}", name)
+        } else {
+            handlerThread?.interrupt()
+        }
+    }
 
     /**
      * Stop the handler, running [finalization], if any, as the last operation. If the handler
@@ -221,12 +385,22 @@ class SafeHandler(
         if (oldHandler != null) {
             handler = null
             if (finalization != null) {
-                oldHandler.post { finalization.tryRunOrNull() }
+                oldHandler.post { runTask(finalization) }
             }
         } else {
             finalization?.tryRunOrNull()
         }
-        thread.quitSafely()
+        if (isPooled) {
+            // Like quitSafely, run already queued tasks but drop delayed ones.
+            oldHandler?.post {
+                oldHandler.removeCallbacksAndMessages(null)
+                synchronized(pendingTasks) { pendingTasks.clear() }
+                instrumentation?.onClear()
+                LooperPool.release(thread)
+            } ?: LooperPool.release(thread)
+        } else {
+            thread.quitSafely()
+        }
 
         handlerThread = null
     }
@@ -274,6 +448,11 @@ class SafeHandler(
         private val logger = LoggerFactory.getLogger(SafeHandler::class.java)
         private val nullMarker = Any()
         private val map: MutableMap<String, WeakReference<SafeHandler>> = HashMap()
+        private val runningHandler = ThreadLocal<SafeHandler?>()
+        private val queueDelay = PipelineMetrics.histogram("handler.queue_delay")
+
+        /** Maximum number of shared threads per thread priority. */
+        private const val POOL_SIZE = 2
 
         /**
          * Get a shared instance of a handler. Note that for this to be safe, the app should
@@ -284,16 +463,54 @@ class SafeHandler(
         fun getInstance(
             name: String,
             priority: Int,
+            isPooled: Boolean = false,
         ): SafeHandler {
             val handlerRef = map[name]?.get()
             return handlerRef
                 ?: run {
-                    val handler = SafeHandler(name, priority)
+                    val handler = SafeHandler(name, priority, isPooled)
                     map[name] = WeakReference(handler)
                     handler
                 }
         }
 
+        /**
+         * Threads shared by pooled handlers. Each handler is assigned to a single thread, so that
+         * its tasks stay ordered. Threads are stopped once no handler uses them anymore.
+         */
+        private object LooperPool {
+            private class Entry(val thread: HandlerThread) {
+                var numberOfHandlers = 0
+            }
+
+            private val entries: MutableMap<Int, MutableList<Entry>> = HashMap()
+
+            @Synchronized
+            fun acquire(priority: Int): HandlerThread {
+                val priorityEntries = entries.getOrPut(priority, ::ArrayList)
+                val entry = priorityEntries
+                    .takeIf { it.size >= POOL_SIZE }
+                    ?.minByOrNull { it.numberOfHandlers }
+                    ?: Entry(HandlerThread("SafeHandlerPool-$priority-${priorityEntries.size}", priority).apply { start() })
+                        .also { priorityEntries += it }
+                entry.numberOfHandlers++
+                return entry.thread
+            }
+
+            @Synchronized
+            fun release(thread: HandlerThread) {
+                entries.values.forEach { priorityEntries ->
+                    val entry = priorityEntries.find { it.thread === thread } ?: return@forEach
+                    entry.numberOfHandlers--
+                    if (entry.numberOfHandlers <= 0) {
+                        priorityEntries -= entry
+                        thread.quitSafely()
+                    }
+                    return
+                }
+            }
+        }
+
         private fun <T> (() -> T).tryRunOrNull(): T? = try {
             this()
         } catch (ex: Exception) {
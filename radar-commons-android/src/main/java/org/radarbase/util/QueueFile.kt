@@ -16,6 +16,7 @@
 
 package org.radarbase.util
 
+import org.radarbase.android.metrics.PipelineMetrics
 import org.radarbase.util.IO.requireIO
 import org.radarbase.util.QueueFileHeader.Companion.QUEUE_HEADER_LENGTH
 import org.slf4j.LoggerFactory
@@ -106,6 +107,12 @@ constructor(private val storage: QueueStorage) : Closeable, Iterable<InputStream
     val isEmpty: Boolean
         get() = size == 0
 
+    /**
+     * Called after every committed change, with the new number of elements and number of bytes
+     * used. It is called on the thread that made the change.
+     */
+    var commitListener: ((size: Int, usedBytes: Long) -> Unit)? = null
+
     var maximumFileSize: Long
         get() = storage.maximumLength
         set(newSize) {
@@ -303,6 +310,8 @@ constructor(private val storage: QueueStorage) : Closeable, Iterable<InputStream
                     "Cannot remove more elements (" + n + ") than present in queue (" + header.count + ").")
         }
 
+        val previousUsedBytes = usedBytes
+
         // Read the position and length of the new first element.
         var newFirst = QueueFileElement()
         val previous = QueueFileElement()
@@ -336,6 +345,12 @@ constructor(private val storage: QueueStorage) : Closeable, Iterable<InputStream
         header.count -= n
         truncateIfNeeded()
         header.write()
+        bytesRemoved.add(previousUsedBytes - usedBytes)
+        notifyCommit()
+    }
+
+    private fun notifyCommit() {
+        commitListener?.invoke(header.count, usedBytes)
     }
 
     /**
@@ -373,6 +388,7 @@ constructor(private val storage: QueueStorage) : Closeable, Iterable<InputStream
     fun clear() {
         requireNotClosed()
 
+        val previousUsedBytes = usedBytes
         firstElements.clear()
         last.reset()
         header.clear()
@@ -383,8 +399,10 @@ constructor(private val storage: QueueStorage) : Closeable, Iterable<InputStream
         }
 
         header.write()
+        bytesRemoved.add(previousUsedBytes - QUEUE_HEADER_LENGTH)
 
         modCount.incrementAndGet()
+        notifyCommit()
     }
 
     @Throws(IOException::class)
@@ -403,6 +421,7 @@ constructor(private val storage: QueueStorage) : Closeable, Iterable<InputStream
 
     @Throws(IOException::class)
     internal fun commitOutputStream(newFirst: QueueFileElement, newLast: QueueFileElement, count: Int) {
+        val previousUsedBytes = usedBytes
         if (!newLast.isEmpty) {
             last.update(newLast)
             header.lastPosition = newLast.position
@@ -413,7 +432,9 @@ constructor(private val storage: QueueStorage) : Closeable, Iterable<InputStream
         }
         header.count += count
         header.write()
+        bytesWritten.add((usedBytes - previousUsedBytes).coerceAtLeast(0L))
         modCount.incrementAndGet()
+        notifyCommit()
     }
 
     @Throws(IOException::class)
@@ -428,6 +449,7 @@ constructor(private val storage: QueueStorage) : Closeable, Iterable<InputStream
 
         storage.resize(size)
         header.length = size
+        grows.increment()
 
         compact(position, beginningOfFirstElement, oldLength)
 
@@ -441,6 +463,7 @@ constructor(private val storage: QueueStorage) : Closeable, Iterable<InputStream
             if (position > QUEUE_HEADER_LENGTH) {
                 val count = position - QUEUE_HEADER_LENGTH
                 storage.move(QUEUE_HEADER_LENGTH, newBufferPosition, count)
+                compactions.increment()
             }
             modCount.incrementAndGet()
 
@@ -455,6 +478,10 @@ constructor(private val storage: QueueStorage) : Closeable, Iterable<InputStream
 
     companion object {
         private val logger = LoggerFactory.getLogger(QueueFile::class.java)
+        private val bytesWritten = PipelineMetrics.counter("queue.bytes_written")
+        private val bytesRemoved = PipelineMetrics.counter("queue.bytes_removed")
+        private val grows = PipelineMetrics.counter("queue.grows")
+        private val compactions = PipelineMetrics.counter("queue.compactions")
 
         @Throws(IOException::class)
         fun newDirect(file: File, maxSize: Long): QueueFile {
@@ -0,0 +1,49 @@
+package org.radarbase.android.config
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.radarbase.android.RadarConfiguration.RemoteConfigStatus.FETCHED
+
+internal class ConfigSubscriptionTest {
+    private fun config(vararg values: Pair<String, String>) = SingleRadarConfiguration(FETCHED, mapOf(*values))
+
+    @Test
+    fun changedKeys() {
+        val previous = config("a" to "1", "b" to "2", "c" to "3")
+        val next = config("a" to "1", "b" to "3", "d" to "4")
+        assertEquals(setOf("b", "c", "d"), next.changedKeys(previous))
+        assertEquals(setOf("a", "b", "d"), next.changedKeys(null))
+    }
+
+    @Test
+    fun parsedValues() {
+        val config = config("a" to "10", "b" to "yes", "c" to "x")
+        assertEquals(10L, config.getLong("a"))
+        assertEquals(10L, config.getLong("a", 1L))
+        assertEquals(10, config.getInt("a"))
+        assertTrue(config.getBoolean("b"))
+        assertEquals(2L, config.getLong("c", 2L))
+        assertFalse(config.getBoolean("c", false))
+    }
+
+    @Test
+    fun onlyAppliesSubscribedChanges() {
+        var numberOfApplies = 0
+        val subscription = ConfigSubscription("test") {
+            numberOfApplies++
+            if (it.getBoolean("enabled", false)) {
+                it.getLong("interval", 1L)
+            }
+        }
+
+        assertTrue(subscription.update(config("enabled" to "false", "interval" to "5")))
+        assertEquals(setOf("enabled"), subscription.subscribedKeys)
+        assertFalse(subscription.update(config("enabled" to "false", "interval" to "6", "other" to "1")))
+        assertTrue(subscription.update(config("enabled" to "true", "interval" to "6")))
+        assertEquals(setOf("enabled", "interval"), subscription.subscribedKeys)
+        assertTrue(subscription.update(config("enabled" to "true", "interval" to "7")))
+        assertEquals(3, numberOfApplies)
+    }
+}
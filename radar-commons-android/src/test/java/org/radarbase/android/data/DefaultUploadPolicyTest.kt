@@ -0,0 +1,60 @@
+package org.radarbase.android.data
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.radarbase.android.util.NetworkConnectedReceiver.NetworkState
+
+internal class DefaultUploadPolicyTest {
+    private val config = DataHandlerConfiguration(
+        highPriorityTopics = setOf("a"),
+        meteredBacklogLimit = 100L,
+    )
+    private val wifi = NetworkState(isConnected = true, hasWifiOrEthernet = true)
+    private val cellular = NetworkState(isConnected = true, hasWifiOrEthernet = false)
+
+    private fun decide(
+        network: NetworkState,
+        batteryLevel: Float = 0.5f,
+        isCharging: Boolean = false,
+        backlog: Map<String, Long> = mapOf("a" to 10L, "b" to 10L),
+        config: DataHandlerConfiguration = this.config,
+    ) = DefaultUploadPolicy.decide(config, UploadConditions(network, batteryLevel, isCharging, backlog))
+
+    @Test
+    fun disabled() {
+        assertFalse(decide(NetworkState(isConnected = false, hasWifiOrEthernet = false)).isEnabled)
+        assertFalse(decide(wifi, batteryLevel = 0.05f).isEnabled)
+        assertTrue(decide(wifi, batteryLevel = 0.05f, isCharging = true).isEnabled)
+        assertFalse(decide(cellular, config = config.copy(sendOnlyWithWifi = true)).isEnabled)
+    }
+
+    @Test
+    fun battery() {
+        assertEquals(1, decide(wifi).uploadRateMultiplier)
+        assertEquals(5, decide(wifi, batteryLevel = 0.15f).uploadRateMultiplier)
+        assertEquals(3, decide(wifi, config = config.copy(batteryUploadMultiplier = 3)).uploadRateMultiplier)
+    }
+
+    @Test
+    fun drain() {
+        assertEquals(1, decide(wifi, isCharging = true).batchSizeMultiplier)
+        val draining = decide(wifi, isCharging = true, backlog = mapOf("a" to 10_000L))
+        assertEquals(4, draining.batchSizeMultiplier)
+        assertEquals(1, draining.uploadRateMultiplier)
+        assertNull(draining.topics)
+        val metered = wifi.copy(isMetered = true)
+        assertEquals(1, decide(metered, isCharging = true, backlog = mapOf("a" to 10_000L)).batchSizeMultiplier)
+    }
+
+    @Test
+    fun meteredTopics() {
+        val config = config.copy(sendOnlyWithWifi = false)
+        assertNull(decide(wifi, config = config).topics)
+        assertEquals(setOf("a"), decide(cellular, config = config).topics)
+        assertEquals(setOf("a", "b"), decide(cellular, backlog = mapOf("a" to 10L, "b" to 1000L), config = config).topics)
+        assertNull(decide(cellular, config = config.copy(sendOverDataHighPriority = false)).topics)
+    }
+}
@@ -0,0 +1,43 @@
+package org.radarbase.android.data
+
+import org.apache.avro.Schema
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+internal class DeprecatedCacheMigratorTest {
+    private fun record(vararg fields: String): Schema = Schema.Parser().parse(
+        """{"type": "record", "name": "Test", "fields": [${fields.joinToString(",")}]}"""
+    )
+
+    @Test
+    fun addedFieldWithDefault() {
+        val writer = record("""{"name": "a", "type": "int"}""")
+        val reader = record("""{"name": "a", "type": "int"}""", """{"name": "b", "type": ["null", "string"], "default": null}""")
+        assertTrue(DeprecatedCacheMigrator.isResolvable(writer, reader))
+        assertTrue(DeprecatedCacheMigrator.isResolvable(reader, writer))
+    }
+
+    @Test
+    fun promotedField() {
+        val writer = record("""{"name": "a", "type": "int"}""")
+        val reader = record("""{"name": "a", "type": "double"}""")
+        assertTrue(DeprecatedCacheMigrator.isResolvable(writer, reader))
+        assertFalse(DeprecatedCacheMigrator.isResolvable(reader, writer))
+    }
+
+    @Test
+    fun addedFieldWithoutDefault() {
+        val writer = record("""{"name": "a", "type": "int"}""")
+        val reader = record("""{"name": "a", "type": "int"}""", """{"name": "b", "type": "string"}""")
+        assertFalse(DeprecatedCacheMigrator.isResolvable(writer, reader))
+    }
+
+    @Test
+    fun removedEnumSymbol() {
+        val writer = record("""{"name": "a", "type": {"type": "enum", "name": "E", "symbols": ["X", "Y"]}}""")
+        val reader = record("""{"name": "a", "type": {"type": "enum", "name": "E", "symbols": ["X"]}}""")
+        assertFalse(DeprecatedCacheMigrator.isResolvable(writer, reader))
+        assertTrue(DeprecatedCacheMigrator.isResolvable(reader, writer))
+    }
+}
@@ -0,0 +1,49 @@
+package org.radarbase.android.kafka
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.zip.Deflater
+
+internal class CompressionLevelSelectorTest {
+    private var isMetered = false
+    private val selector = CompressionLevelSelector { isMetered }
+
+    /** Simulate requests of 1 MB over a link with given throughput in bytes per second. */
+    private fun measureLink(bytesPerSecond: Long) {
+        repeat(20) {
+            val level = selector.selectLevel()
+            val compressed = if (level == CompressionLevelSelector.NO_COMPRESSION) 1_000_000L else 300_000L
+            val cpuNanos = if (level == CompressionLevelSelector.NO_COMPRESSION) 0L else 30_000_000L
+            val durationNanos = compressed * 1_000_000_000L / bytesPerSecond + cpuNanos
+            selector.update(level, 1_000_000L, compressed, cpuNanos, durationNanos)
+        }
+    }
+
+    @Test
+    fun skipOnFastUnmeteredLink() {
+        measureLink(100_000_000L)
+        assertEquals(CompressionLevelSelector.NO_COMPRESSION, selector.selectLevel())
+    }
+
+    @Test
+    fun maximumOnSlowMeteredLink() {
+        isMetered = true
+        measureLink(50_000L)
+        assertEquals(Deflater.BEST_COMPRESSION, selector.selectLevel())
+    }
+
+    @Test
+    fun ignoreSmallRequests() {
+        repeat(20) {
+            selector.update(CompressionLevelSelector.NO_COMPRESSION, 100L, 100L, 0L, 1_000L)
+        }
+        assertEquals(Deflater.BEST_SPEED, selector.selectLevel())
+    }
+
+    @Test
+    fun bestSpeedForKnownSmallRequests() {
+        measureLink(100_000_000L)
+        assertEquals(Deflater.BEST_SPEED, selector.selectLevel(1_000L))
+        assertEquals(CompressionLevelSelector.NO_COMPRESSION, selector.selectLevel(1_000_000L))
+    }
+}
@@ -0,0 +1,86 @@
+package org.radarbase.android.kafka
+
+import okio.Buffer
+import org.apache.avro.Schema
+import org.apache.avro.generic.GenericData
+import org.apache.avro.generic.GenericDatumWriter
+import org.apache.avro.generic.GenericRecordBuilder
+import org.apache.avro.io.EncoderFactory
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+
+internal class JsonRecordWriterTest {
+    private val schema = Schema.Parser().parse("""
+        {"type":"record","name":"Test","namespace":"org.radarbase.test","fields":[
+          {"name":"time","type":"double"},
+          {"name":"count","type":"int"},
+          {"name":"total","type":"long"},
+          {"name":"value","type":"float"},
+          {"name":"isValid","type":"boolean"},
+          {"name":"label","type":"string"},
+          {"name":"data","type":"bytes"},
+          {"name":"status","type":{"type":"enum","name":"Status","symbols":["OK","FAILED"]}},
+          {"name":"tags","type":{"type":"array","items":"string"}},
+          {"name":"counts","type":{"type":"map","values":"int"}},
+          {"name":"optional","type":["null","string"],"default":null},
+          {"name":"nested","type":["null",{"type":"record","name":"Nested","fields":[
+            {"name":"id","type":"string"}
+          ]}],"default":null}
+        ]}
+    """.trimIndent())
+
+    private fun avroJson(value: Any): String {
+        val out = ByteArrayOutputStream()
+        val encoder = EncoderFactory.get().jsonEncoder(schema, out)
+        GenericDatumWriter<Any>(schema).write(value, encoder)
+        encoder.flush()
+        return out.toString("UTF-8")
+    }
+
+    private fun streamingJson(value: Any): String {
+        val buffer = Buffer()
+        JsonRecordWriter(schema, GenericData.get()).write(buffer, value)
+        return buffer.readUtf8()
+    }
+
+    @Test
+    fun sameAsJsonEncoder() {
+        val nestedSchema = schema.getField("nested").schema().types[1]
+        val record = GenericRecordBuilder(schema)
+            .set("time", 1.5)
+            .set("count", -3)
+            .set("total", 12345678901L)
+            .set("value", 0.25f)
+            .set("isValid", true)
+            .set("label", "quote \" slash / tab \t control \u0001 unicode é")
+            .set("data", ByteBuffer.wrap(byteArrayOf(0, 65, -1)))
+            .set("status", GenericData.EnumSymbol(schema.getField("status").schema(), "FAILED"))
+            .set("tags", listOf("a", "b"))
+            .set("counts", linkedMapOf("x" to 1, "y" to 2))
+            .set("optional", "present")
+            .set("nested", GenericRecordBuilder(nestedSchema).set("id", "n1").build())
+            .build()
+
+        assertEquals(avroJson(record), streamingJson(record))
+    }
+
+    @Test
+    fun nullUnionsAndEmptyContainers() {
+        val record = GenericRecordBuilder(schema)
+            .set("time", 0.0)
+            .set("count", 0)
+            .set("total", 0L)
+            .set("value", 0f)
+            .set("isValid", false)
+            .set("label", "")
+            .set("data", ByteBuffer.allocate(0))
+            .set("status", GenericData.EnumSymbol(schema.getField("status").schema(), "OK"))
+            .set("tags", emptyList<String>())
+            .set("counts", emptyMap<String, Int>())
+            .build()
+
+        assertEquals(avroJson(record), streamingJson(record))
+    }
+}
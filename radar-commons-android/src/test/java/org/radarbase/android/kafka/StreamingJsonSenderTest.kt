@@ -0,0 +1,159 @@
+package org.radarbase.android.kafka
+
+import okhttp3.Headers
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.apache.avro.Schema
+import org.apache.avro.generic.GenericRecord
+import org.apache.avro.generic.GenericRecordBuilder
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import org.radarbase.config.ServerConfig
+import org.radarbase.data.AvroRecordData
+import org.radarbase.data.RecordData
+import org.radarbase.producer.rest.ParsedSchemaMetadata
+import org.radarbase.producer.rest.RestClient
+import org.radarbase.producer.rest.SchemaRetriever
+import org.radarbase.topic.AvroTopic
+import java.io.IOException
+
+internal class StreamingJsonSenderTest {
+    private lateinit var server: MockWebServer
+    private lateinit var retriever: FakeSchemaRetriever
+    private lateinit var client: RestClient
+
+    private val keySchema = Schema.Parser().parse("""
+        {"type":"record","name":"Key","namespace":"org.radarbase.test","fields":[
+          {"name":"id","type":"string"}
+        ]}
+    """.trimIndent())
+    private val valueSchema = Schema.Parser().parse("""
+        {"type":"record","name":"Value","namespace":"org.radarbase.test","fields":[
+          {"name":"time","type":"double"},
+          {"name":"count","type":"int"}
+        ]}
+    """.trimIndent())
+    private val otherValueSchema = Schema.Parser().parse("""
+        {"type":"record","name":"Value","namespace":"org.radarbase.test","fields":[
+          {"name":"time","type":"double"}
+        ]}
+    """.trimIndent())
+
+    private val topic = AvroTopic("test", keySchema, valueSchema, GenericRecord::class.java, GenericRecord::class.java)
+
+    @Before
+    fun setUp() {
+        server = MockWebServer().apply { start() }
+        retriever = FakeSchemaRetriever(ServerConfig(server.url("/registry/").toUrl()))
+        client = RestClient.global()
+            .server(ServerConfig(server.url("/").toUrl()))
+            .build()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    private fun records(): RecordData<Any, Any> {
+        val key = GenericRecordBuilder(keySchema).set("id", "a").build()
+        val values = listOf(
+            GenericRecordBuilder(valueSchema).set("time", 1.5).set("count", 1).build(),
+            GenericRecordBuilder(valueSchema).set("time", 2.5).set("count", 2).build(),
+        )
+        @Suppress("UNCHECKED_CAST")
+        return AvroRecordData(topic, key, values) as RecordData<Any, Any>
+    }
+
+    @Test
+    fun sendsEnvelope() {
+        retriever.valueSchema = valueSchema
+        server.enqueue(MockResponse().setBody("{}"))
+        val sender = StreamingJsonSender(client, retriever, Headers.headersOf())
+
+        assertTrue(sender.send(records()))
+
+        val request = server.takeRequest()
+        assertEquals("/topics/test", request.path)
+        assertEquals(
+            """{"key_schema_id":1,"value_schema_id":2,"records":[""" +
+                """{"key":{"id":"a"},"value":{"time":1.5,"count":1}},""" +
+                """{"key":{"id":"a"},"value":{"time":2.5,"count":2}}]}""",
+            request.body.readUtf8(),
+        )
+    }
+
+    @Test
+    fun fallsBackOnDifferentSchema() {
+        retriever.valueSchema = otherValueSchema
+        val sender = StreamingJsonSender(client, retriever, Headers.headersOf())
+
+        assertFalse(sender.send(records()))
+        assertFalse(sender.send(records()))
+        assertEquals(0, server.requestCount)
+        // the fallback is remembered
+        assertEquals(2, retriever.calls)
+
+        sender.resetTopics()
+        retriever.valueSchema = valueSchema
+        server.enqueue(MockResponse().setBody("{}"))
+        assertTrue(sender.send(records()))
+        assertEquals(4, retriever.calls)
+    }
+
+    @Test
+    fun rechecksFallbackAfterInterval() {
+        retriever.valueSchema = otherValueSchema
+        val sender = StreamingJsonSender(client, retriever, Headers.headersOf(), fallbackRecheckInterval = 0L)
+
+        assertFalse(sender.send(records()))
+        retriever.valueSchema = valueSchema
+        server.enqueue(MockResponse().setBody("{}"))
+        assertTrue(sender.send(records()))
+        assertEquals(1, server.requestCount)
+    }
+
+    @Test
+    fun rechecksSchemaAfterUnprocessableEntity() {
+        retriever.valueSchema = valueSchema
+        server.enqueue(MockResponse().setResponseCode(422).setBody("{}"))
+        val sender = StreamingJsonSender(client, retriever, Headers.headersOf())
+
+        try {
+            sender.send(records())
+            fail("Expected IOException")
+        } catch (ex: IOException) {
+            // expected
+        }
+        assertEquals(2, retriever.calls)
+
+        server.enqueue(MockResponse().setBody("{}"))
+        assertTrue(sender.send(records()))
+        assertEquals(4, retriever.calls)
+    }
+
+    /** Schema retriever that returns fixed schemas without contacting a registry. */
+    private inner class FakeSchemaRetriever(config: ServerConfig) : SchemaRetriever(config, 30L) {
+        var valueSchema: Schema = this@StreamingJsonSenderTest.valueSchema
+        var calls = 0
+
+        override fun getOrSetSchemaMetadata(
+            topic: String,
+            ofValue: Boolean,
+            schema: Schema,
+            version: Int,
+        ): ParsedSchemaMetadata {
+            calls++
+            return if (ofValue) {
+                ParsedSchemaMetadata(2, 1, valueSchema)
+            } else {
+                ParsedSchemaMetadata(1, 1, keySchema)
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.radarbase.android.metrics
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+internal class HistogramTest {
+    @Test
+    fun bucketBounds() {
+        var previousIndex = -1
+        for (value in listOf(0L, 1L, 7L, 8L, 9L, 15L, 16L, 17L, 1000L, 123_456_789L, Long.MAX_VALUE)) {
+            val index = Histogram.bucketIndex(value)
+            assertTrue(index >= previousIndex)
+            assertTrue(Histogram.lowerBound(index) <= value)
+            assertTrue(Histogram.upperBound(index) >= value)
+            previousIndex = index
+        }
+        assertEquals(Histogram.NUMBER_OF_BUCKETS - 1, Histogram.bucketIndex(Long.MAX_VALUE))
+    }
+
+    @Test
+    fun percentiles() {
+        val histogram = Histogram("test")
+        (1L..100L).forEach { histogram.record(it * 1000L) }
+        val snapshot = histogram.snapshot()
+        assertEquals(100L, snapshot.count)
+        assertEquals(50_500.0, snapshot.mean, 0.001)
+        assertEquals(50_000.0, snapshot.percentile(0.5).toDouble(), 50_000.0 / Histogram.SUB_BUCKETS)
+        assertEquals(99_000.0, snapshot.percentile(0.99).toDouble(), 99_000.0 / Histogram.SUB_BUCKETS)
+        assertEquals(100_000.0, snapshot.max.toDouble(), 100_000.0 / Histogram.SUB_BUCKETS)
+    }
+
+    @Test
+    fun interval() {
+        val histogram = Histogram("test")
+        histogram.record(10L)
+        val first = histogram.snapshot()
+        histogram.record(20L)
+        histogram.record(-5L)
+        val interval = histogram.snapshot() - first
+        assertEquals(2L, interval.count)
+        assertEquals(20L, interval.sum)
+        assertEquals(0L, interval.percentile(0.5))
+    }
+}
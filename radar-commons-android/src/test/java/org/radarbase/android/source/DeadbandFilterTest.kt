@@ -0,0 +1,69 @@
+package org.radarbase.android.source
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.radarbase.android.RadarConfiguration
+import org.radarbase.android.config.SingleRadarConfiguration
+
+internal class DeadbandFilterTest {
+    private fun createFilter() = DeadbandFilter<Pair<Double, Double>>(
+        "test", { it.first }, { it.second },
+    )
+
+    @Test
+    fun disabledByDefault() {
+        val filter = createFilter()
+        assertTrue(filter.accept(Pair(1.0, 1.0)))
+        assertTrue(filter.accept(Pair(2.0, 1.0)))
+        assertEquals(0L, filter.numberOfSuppressed)
+    }
+
+    @Test
+    fun absoluteThreshold() {
+        val filter = createFilter()
+        filter.config = DeadbandFilter.Configuration(absoluteThreshold = 0.5, heartbeatInterval = 0L)
+        assertTrue(filter.accept(Pair(1.0, 1.0)))
+        assertFalse(filter.accept(Pair(2.0, 1.0)))
+        assertFalse(filter.accept(Pair(3.0, 1.4)))
+        assertTrue(filter.accept(Pair(4.0, 1.6)))
+        assertFalse(filter.accept(Pair(5.0, 1.2)))
+        assertEquals(3L, filter.numberOfSuppressed)
+    }
+
+    @Test
+    fun relativeThreshold() {
+        val filter = createFilter()
+        filter.config = DeadbandFilter.Configuration(relativeThreshold = 0.1, heartbeatInterval = 0L)
+        assertTrue(filter.accept(Pair(1.0, 100.0)))
+        assertFalse(filter.accept(Pair(2.0, 109.0)))
+        assertTrue(filter.accept(Pair(3.0, 111.0)))
+    }
+
+    @Test
+    fun heartbeat() {
+        val filter = createFilter()
+        filter.config = DeadbandFilter.Configuration(absoluteThreshold = 0.0, heartbeatInterval = 10_000L)
+        assertTrue(filter.accept(Pair(1.0, 1.0)))
+        assertFalse(filter.accept(Pair(5.0, 1.0)))
+        assertTrue(filter.accept(Pair(11.0, 1.0)))
+        assertFalse(filter.accept(Pair(12.0, 1.0)))
+    }
+
+    @Test
+    fun configure() {
+        val filter = createFilter()
+        filter.config = DeadbandFilter.Configuration().apply {
+            configure(SingleRadarConfiguration(RadarConfiguration.RemoteConfigStatus.READY, mapOf(
+                "test_deadband_absolute" to "0",
+                "test_deadband_heartbeat_seconds" to "60",
+            )), "test")
+        }
+        assertTrue(filter.config.isEnabled)
+        assertEquals(60_000L, filter.config.heartbeatInterval)
+        assertTrue(filter.accept(Pair(1.0, 1.0)))
+        assertFalse(filter.accept(Pair(30.0, 1.0)))
+        assertTrue(filter.accept(Pair(61.0, 1.0)))
+    }
+}
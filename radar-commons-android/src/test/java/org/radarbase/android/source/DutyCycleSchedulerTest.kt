@@ -0,0 +1,34 @@
+package org.radarbase.android.source
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.radarbase.android.RadarConfiguration
+import org.radarbase.android.config.SingleRadarConfiguration
+
+internal class DutyCycleSchedulerTest {
+    @Test
+    fun disabledByDefault() {
+        assertFalse(DutyCycleScheduler.Configuration().isEnabled)
+    }
+
+    @Test
+    fun disabledIfSampleCoversPeriod() {
+        assertFalse(DutyCycleScheduler.Configuration(sampleDuration = 60_000L, period = 60_000L).isEnabled)
+        assertTrue(DutyCycleScheduler.Configuration(sampleDuration = 10_000L, period = 60_000L).isEnabled)
+    }
+
+    @Test
+    fun configure() {
+        val config = DutyCycleScheduler.Configuration().apply {
+            configure(SingleRadarConfiguration(RadarConfiguration.RemoteConfigStatus.READY, mapOf(
+                "polar${DutyCycleScheduler.SAMPLE_DURATION_SUFFIX}" to "30",
+                "polar${DutyCycleScheduler.PERIOD_SUFFIX}" to "300",
+                "other${DutyCycleScheduler.PERIOD_SUFFIX}" to "600",
+            )), "polar")
+        }
+        assertEquals(DutyCycleScheduler.Configuration(30_000L, 300_000L), config)
+        assertTrue(config.isEnabled)
+    }
+}
@@ -0,0 +1,17 @@
+package org.radarbase.android.util
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+internal class OfflineProcessorTest {
+    @Test
+    fun alignedDelay() {
+        assertEquals(40_000L, OfflineProcessor.alignedDelay(1_700_000_000_000L, 60_000L))
+        assertEquals(1L, OfflineProcessor.alignedDelay(1_700_000_039_999L, 60_000L))
+    }
+
+    @Test
+    fun alignedDelayAtMultiple() {
+        assertEquals(60_000L, OfflineProcessor.alignedDelay(1_700_000_040_000L, 60_000L))
+    }
+}